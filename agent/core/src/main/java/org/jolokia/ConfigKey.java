@@ -29,6 +29,14 @@ public enum ConfigKey {
     // Maximum number of history entries to keep
     HISTORY_MAX_ENTRIES("historyMaxEntries",true, false, "10"),
 
+    // Maximum number of history entries to keep for all keys in total.
+    // The least recently used keys are evicted if exceeded, 0 means no limit.
+    HISTORY_MAX_TOTAL_ENTRIES("historyMaxTotalEntries",true, false, "0"),
+
+    // Directory for keeping the history in files, so that it survives
+    // a restart. If not set, the history is kept in memory only.
+    HISTORY_DIRECTORY("historyDirectory",true, false),
+
     // Whether debug is switched on or not
     DEBUG("debug",true, false, "false"),
 
@@ -61,9 +69,88 @@ public enum ConfigKey {
     // This works only for certain operations like pattern reads.
     IGNORE_ERRORS("ignoreErrors", false, true),
 
+    // Runtime configuration for adding the difference and the per second rate
+    // to the last value stored in the history. Meant for counters, it works only
+    // for values for which history tracking is switched on.
+    HISTORY_RATE("historyRate", false, true),
+
     // Optional domain name for registering own MBeans
     MBEAN_QUALIFIER("mbeanQualifier", true, false),
 
+    // Whether to write the JSON response directly to the response stream
+    // instead of creating the complete answer as a string first. Values of
+    // list and read answers are converted only while they are written.
+    STREAMING("streaming", true, false, "true"),
+
+    // Compression level (1-9) for answers which are compressed with gzip or deflate
+    // if the client accepts it. 0 switches compression off.
+    COMPRESSION_LEVEL("compressionLevel", true, false, "6"),
+
+    // Answers smaller than this number of bytes are never compressed
+    COMPRESSION_THRESHOLD("compressionThreshold", true, false, "1024"),
+
+    // Number of threads used for executing the requests of a bulk
+    // request in parallel. If 0, bulk requests are executed sequentially.
+    BULK_THREADS("bulkThreads", true, false, "0"),
+
+    // Maximum time in milliseconds to wait for a single request of a parallel
+    // executed bulk request. 0 means no timeout.
+    BULK_REQUEST_TIMEOUT("bulkRequestTimeout", true, false, "0"),
+
+    // Maximum time in milliseconds a parallel executed bulk request may take
+    // as a whole. 0 means no timeout.
+    BULK_TIMEOUT("bulkTimeout", true, false, "0"),
+
+    // Maximum number of requests of parallel executed bulk requests waiting
+    // for a free thread. If the queue is full, the thread handling the bulk
+    // request waits for a free place until the bulk or request timeout. A request
+    // which doesn't get a place in time is answered with an error (503).
+    BULK_QUEUE_SIZE("bulkQueueSize", true, false, "100"),
+
+    // Number of threads for executing operations asynchronously (requested with
+    // the "async" option). 0 switches asynchronous execution off.
+    ASYNC_THREADS("asyncThreads", true, false, "2"),
+
+    // Maximum number of asynchronous jobs which are either queued, running
+    // or finished but not yet expired
+    ASYNC_MAX_JOBS("asyncMaxJobs", true, false, "100"),
+
+    // Time in seconds for which the result of a finished asynchronous job is kept
+    ASYNC_RESULT_TIMEOUT("asyncResultTimeout", true, false, "300"),
+
+    // Maximum time in milliseconds a "wait" request for a job may block
+    ASYNC_MAX_WAIT("asyncMaxWait", true, false, "30000"),
+
+    // Time in seconds after which a running asynchronous job gets cancelled. A job still waiting
+    // for a thread is cancelled when this time has passed since its submission. Cancelling only
+    // interrupts the thread, an operation which hangs keeps its thread. (0 for no limit)
+    ASYNC_MAX_RUNTIME("asyncMaxRuntime", true, false, "600"),
+
+    // Runtime configuration for executing an operation asynchronously. The answer
+    // contains a job id which can be used with a "job" request for fetching the result.
+    ASYNC("async", false, true),
+
+    // Time in milliseconds to wait for the result of a job in a "job" request with
+    // the "wait" action (limited by "asyncMaxWait")
+    WAIT_TIMEOUT("waitTimeout", false, true),
+
+    // Token identifying a polling client. Values which haven't changed since the
+    // last request of the client with the same token are left out of the answer.
+    POLL_TOKEN("pollToken", false, true),
+
+    // Time in seconds after which the values remembered for an unused poll token expire
+    POLL_TOKEN_TIMEOUT("pollTokenTimeout", true, false, "300"),
+
+    // Maximum number of poll tokens for which values are remembered
+    POLL_TOKEN_MAX_CLIENTS("pollTokenMaxClients", true, false, "100"),
+
+    // Maximum number of value fingerprints remembered for all poll tokens together
+    POLL_TOKEN_MAX_FINGERPRINTS("pollTokenMaxFingerprints", true, false, "100000"),
+
+    // Format of the answer, either "json" (default) or "binary" for the compact
+    // binary format. The binary format can also be selected with the Accept header.
+    RESPONSE_FORMAT("responseFormat", false, true),
+
     // Option which can be given to a request to speficy a JSONP callback.
     // The generated answer will be of type text/javascript and it will
     // contain a JSON function to be called.
@@ -64,6 +64,7 @@ public class JmxRequest {
         EXEC("exec"),
         VERSION("version"),
         SEARCH("search"),
+        JOB("job"),
 
         // Unsupported:
         REGNOTIF("regnotif"),
@@ -113,8 +114,11 @@ public class JmxRequest {
     private List<String> attributeNames;
     private boolean multiAttributeMode = false;
     private String value;
+    private Object rawValue;
     private List<String> extraArgs;
+    private List<Object> arguments;
     private String operation;
+    private String jobId;
     private Type type;
     private TargetConfig targetConfig = null;
 
@@ -168,8 +172,9 @@ public class JmxRequest {
         initAttribute(pMap.get("attribute"));
         initPath((String) pMap.get("path"));
         initArguments((List) pMap.get("arguments"));
-        value = (String) pMap.get("value");
+        initValue(pMap.get("value"));
         operation = (String) pMap.get("operation");
+        jobId = (String) pMap.get("id");
         initTargetConfig((Map) pMap.get("target"));
 
         initProcessingConfig((Map<String,?>) pMap.get("config"));
@@ -228,6 +233,29 @@ public class JmxRequest {
         return value;
     }
 
+    /**
+     * Get the value as given in the request. For POST requests this can be any
+     * JSON value (string, number, boolean, array or object), for GET requests it's
+     * always the string returned by {@link #getValue()}.
+     *
+     * @return the value to set or <code>null</code>
+     */
+    public Object getRawValue() {
+        return rawValue;
+    }
+
+    /**
+     * Get the arguments for an operation as given in a POST request. The arguments
+     * are kept as JSON values, so that they can be converted without going through
+     * a string representation. For GET requests, the arguments are part of the
+     * extra arguments (see {@link #getExtraArgs()}) and this method returns <code>null</code>.
+     *
+     * @return list of arguments or <code>null</code>
+     */
+    public List<Object> getArguments() {
+        return arguments;
+    }
+
     public Type getType() {
         return type;
     }
@@ -236,6 +264,15 @@ public class JmxRequest {
         return operation;
     }
 
+    /**
+     * Id of the asynchronous job a {@link Type#JOB} request refers to
+     *
+     * @return job id or <code>null</code>
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
     /**
      * Get a processing configuration or null if not set
      * @param pConfigKey configuration key to fetch
@@ -327,12 +364,17 @@ public class JmxRequest {
 
     void setValue(String pValue) {
         value = pValue;
+        rawValue = pValue;
     }
 
     void setOperation(String pOperation) {
         operation = pOperation;
     }
 
+    void setJobId(String pJobId) {
+        jobId = pJobId;
+    }
+
     void setExtraArgs(List<String> pExtraArgs) {
         extraArgs = pExtraArgs;
     }
@@ -363,6 +405,11 @@ public class JmxRequest {
                     .append(", value=").append(value);
         } else if (type == Type.EXEC) {
             ret.append("EXEC mbean=").append(objectNameS).append(", operation=").append(operation);
+            if (arguments != null) {
+                ret.append(", arguments=").append(arguments);
+            }
+        } else if (type == Type.JOB) {
+            ret.append("JOB id=").append(jobId).append(", action=").append(operation);
         } else {
             ret.append(type).append(" mbean=").append(objectNameS);
         }
@@ -411,6 +458,9 @@ public class JmxRequest {
         if (operation != null) {
             ret.put("operation", operation);
         }
+        if (jobId != null) {
+            ret.put("id", jobId);
+        }
 
         if (targetConfig != null) {
             ret.put("target", targetConfig.toJSON());
@@ -432,10 +482,13 @@ public class JmxRequest {
         if (extraArgs != null && extraArgs.size() > 0) {
             if (type == Type.READ || type == Type.WRITE) {
                 pJsonObject.put("path",getExtraArgsAsPath());
-            } else if (type == Type.EXEC) {
+            } else if (type == Type.EXEC && arguments == null) {
                 pJsonObject.put("arguments",extraArgs);
             }
         }
+        if (type == Type.EXEC && arguments != null) {
+            pJsonObject.put("arguments",arguments);
+        }
     }
 
     // =====================================================================================================
@@ -470,16 +523,23 @@ public class JmxRequest {
         }
     }
 
+    // Arguments are kept as given, they replace any path
     private void initArguments(List pArguments) {
         if (pArguments != null && pArguments.size() > 0) {
+            arguments = new ArrayList<Object>(pArguments);
             extraArgs = new ArrayList<String>();
-            for (Object val : pArguments) {
-                if (val instanceof List) {
-                    extraArgs.add(listToString((List) val));
-                } else {
-                    extraArgs.add(val != null ? val.toString() : null);
-                }
-            }
+        }
+    }
+
+    // Keep the value as given and as string for setting inner values via a path
+    private void initValue(Object pValue) {
+        rawValue = pValue;
+        if (pValue == null || pValue instanceof String) {
+            value = (String) pValue;
+        } else if (pValue instanceof List) {
+            value = listToString((List) pValue);
+        } else {
+            value = pValue.toString();
         }
     }
 
@@ -80,6 +80,9 @@ public final class JmxRequestFactory {
      *        Parameters: none
      *    <li>Type: <b>search</b> ({@link Type#SEARCH}<br/>
      *        Parameters: <code>param1</code> = MBean name pattern
+     *    <li>Type: <b>job</b> ({@link Type#JOB}<br/>
+     *        Parameters: <code>param1</code> = job id as returned for an asynchronous request,
+     *        <code>param2</code> = optional action, either "poll" (default), "wait" or "cancel"
      * </ul>
      * @param pPathInfo path info of HTTP request
      * @param pParameterMap HTTP Query parameters
@@ -357,6 +360,16 @@ public final class JmxRequestFactory {
                 return new JmxRequest(Type.SEARCH,e.pop());
             }
         });
+        PROCESSOR_MAP.put(Type.JOB,new Processor() {
+            public JmxRequest process(Stack<String> e) throws MalformedObjectNameException {
+                JmxRequest req = new JmxRequest(Type.JOB);
+                req.setJobId(e.pop());
+                if (!e.isEmpty()) {
+                    req.setOperation(e.pop());
+                }
+                return req;
+            }
+        });
     }
 
 }
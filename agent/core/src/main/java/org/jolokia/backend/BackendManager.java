@@ -10,6 +10,7 @@ import org.jolokia.LogHandler;
 import org.json.simple.JSONObject;
 
 import javax.management.*;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -67,6 +68,9 @@ public class BackendManager {
     // List of RequestDispatchers to consult
     private List<RequestDispatcher> requestDispatchers;
 
+    // Whether the values of list and read answers are converted only when they are written
+    private boolean streaming;
+
     public BackendManager(Map<ConfigKey,String> pConfig, LogHandler pLogHandler) {
 
 
@@ -80,6 +84,8 @@ public class BackendManager {
         // Log handler for putting out debug
         logHandler = pLogHandler;
 
+        streaming = Boolean.valueOf(STREAMING.getValue(pConfig));
+
         // Create and remember request dispatchers
         localDispatcher = new LocalRequestDispatcher(objectToJsonConverter,
                                                      stringToObjectConverter,
@@ -88,7 +94,8 @@ public class BackendManager {
                                                      logHandler);
         ServerHandle serverHandle = localDispatcher.getServerInfo();
         requestDispatchers = createRequestDispatchers(DISPATCHER_CLASSES.getValue(pConfig),
-                                                      objectToJsonConverter,stringToObjectConverter, serverHandle,restrictor);
+                                                      objectToJsonConverter,stringToObjectConverter, serverHandle,restrictor,
+                                                      pConfig.get(ConfigKey.MBEAN_QUALIFIER));
         requestDispatchers.add(localDispatcher);
 
         // Backendstore for remembering agent state
@@ -100,21 +107,39 @@ public class BackendManager {
     private List<RequestDispatcher> createRequestDispatchers(String pClasses,
                                                              ObjectToJsonConverter pObjectToJsonConverter,
                                                              StringToObjectConverter pStringToObjectConverter,
-                                                             ServerHandle pServerHandle, Restrictor pRestrictor) {
+                                                             ServerHandle pServerHandle, Restrictor pRestrictor,
+                                                             String pQualifier) {
         List<RequestDispatcher> ret = new ArrayList<RequestDispatcher>();
         if (pClasses != null && pClasses.length() > 0) {
             String[] names = pClasses.split("\\s*,\\s*");
             for (String name : names) {
-                ret.add(createDispatcher(name, pObjectToJsonConverter, pStringToObjectConverter, pServerHandle, pRestrictor));
+                ret.add(createDispatcher(name, pObjectToJsonConverter, pStringToObjectConverter, pServerHandle, pRestrictor,
+                                         pQualifier));
             }
         }
         return ret;
     }
 
-    // Create a single dispatcher
-    private RequestDispatcher createDispatcher(String pDispatcherClass, ObjectToJsonConverter pObjectToJsonConverter, StringToObjectConverter pStringToObjectConverter, ServerHandle pServerHandle, Restrictor pRestrictor) {
+    // Create a single dispatcher. If the dispatcher has a constructor taking the MBean qualifier
+    // as additional argument, this one is used.
+    private RequestDispatcher createDispatcher(String pDispatcherClass, ObjectToJsonConverter pObjectToJsonConverter, StringToObjectConverter pStringToObjectConverter, ServerHandle pServerHandle, Restrictor pRestrictor, String pQualifier) {
         try {
             Class clazz = this.getClass().getClassLoader().loadClass(pDispatcherClass);
+            try {
+                Constructor constructor = clazz.getConstructor(ObjectToJsonConverter.class,
+                                                               StringToObjectConverter.class,
+                                                               ServerHandle.class,
+                                                               Restrictor.class,
+                                                               String.class);
+                return (RequestDispatcher)
+                        constructor.newInstance(pObjectToJsonConverter,
+                                                pStringToObjectConverter,
+                                                pServerHandle,
+                                                pRestrictor,
+                                                pQualifier);
+            } catch (NoSuchMethodException e) {
+                // Dispatcher without support for a qualifier
+            }
             Constructor constructor = clazz.getConstructor(ObjectToJsonConverter.class,
                                                            StringToObjectConverter.class,
                                                            ServerHandle.class,
@@ -187,7 +212,17 @@ public class BackendManager {
         if (!found) {
             throw new IllegalStateException("Internal error: No dispatcher found for handling " + pJmxReq);
         }
-        return objectToJsonConverter.convertToJson(retValue,pJmxReq,useValueWithPath);
+        return objectToJsonConverter.convertToJson(retValue,pJmxReq,useValueWithPath,isStreamable(pJmxReq));
+    }
+
+    // Only the potentially large answers of list and read requests are streamed. A streamed value
+    // is not available as JSON object, so it can't be used for the history or for polling clients.
+    private boolean isStreamable(JmxRequest pJmxReq) {
+        JmxRequest.Type type = pJmxReq.getType();
+        return streaming &&
+               (type == JmxRequest.Type.LIST || type == JmxRequest.Type.READ) &&
+               historyStore.getKeyCount() == 0 &&
+               pJmxReq.getProcessingConfig(POLL_TOKEN) == null;
     }
 
     // init various application wide stores for handling history and debug output.
@@ -202,7 +237,8 @@ public class BackendManager {
         }
 
 
-        historyStore = new HistoryStore(maxEntries);
+        historyStore = createHistoryStore(maxEntries, HISTORY_DIRECTORY.getValue(pConfig));
+        historyStore.setMaxTotalEntries(getIntConfigValue(pConfig,HISTORY_MAX_TOTAL_ENTRIES));
         debugStore = new DebugStore(maxDebugEntries,debug);
 
         try {
@@ -218,6 +254,18 @@ public class BackendManager {
         }
     }
 
+    // Create a history store, which is file backed if a directory is given
+    private HistoryStore createHistoryStore(int pMaxEntries, String pDirectory) {
+        if (pDirectory != null && pDirectory.length() > 0) {
+            try {
+                return new HistoryStore(pMaxEntries, new File(pDirectory));
+            } catch (IOException e) {
+                error("Cannot open history in " + pDirectory + ", keeping history in memory only: " + e,e);
+            }
+        }
+        return new HistoryStore(pMaxEntries);
+    }
+
     private int getIntConfigValue(Map<ConfigKey, String> pConfig, ConfigKey pKey) {
         int maxDebugEntries;
         try {
@@ -230,16 +278,37 @@ public class BackendManager {
 
     // Remove MBeans again.
     public void destroy() {
-        try {
-            localDispatcher.destroy();
-        } catch (JMException e) {
-            error("Cannot unregister MBean: " + e,e);
+        for (RequestDispatcher dispatcher : requestDispatchers) {
+            try {
+                dispatcher.destroy();
+            } catch (JMException e) {
+                error("Cannot unregister MBean: " + e,e);
+            }
         }
+        historyStore.destroy();
+    }
+
+
+    public boolean isRemoteAccessAllowed(String ... pHostOrAddress) {
+        return restrictor.isRemoteAccessAllowed(pHostOrAddress);
     }
 
+    public boolean isTypeAllowed(JmxRequest.Type pType) {
+        return restrictor.isTypeAllowed(pType);
+    }
 
-    public boolean isRemoteAccessAllowed(String pRemoteHost, String pRemoteAddr) {
-        return restrictor.isRemoteAccessAllowed(pRemoteHost,pRemoteAddr);
+    /**
+     * Check whether the host name of a client is needed by the restrictor for deciding
+     * about remote access, so that a reverse name lookup can be avoided otherwise.
+     *
+     * @return true if the host name is required
+     */
+    public boolean isRemoteHostNameRequired() {
+        if (restrictor instanceof PolicyBasedRestrictor) {
+            return ((PolicyBasedRestrictor) restrictor).isRemoteHostNameRequired();
+        }
+        // Other restrictors than our own might check the host name
+        return !(restrictor instanceof AllowAllRestrictor);
     }
 
     public void info(String msg) {
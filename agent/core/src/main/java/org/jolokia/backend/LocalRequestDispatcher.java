@@ -42,6 +42,9 @@ public class LocalRequestDispatcher implements RequestDispatcher {
 
     private RequestHandlerManager requestHandlerManager;
 
+    // Cache for MBeanInfos of the local MBeanServers
+    private MBeanInfoCache mBeanInfoCache;
+
     // An (optional) qualifier for registering MBeans.
     private String qualifier;
 
@@ -62,9 +65,14 @@ public class LocalRequestDispatcher implements RequestDispatcher {
         mBeanServerHandler = new MBeanServerHandler(pQualifier,pLogHandler);
         qualifier = pQualifier;
 
+        // MBeanInfos expire after the default time to live, since the MBeanInfo of a DynamicMBean
+        // can change at any time. They are also invalidated on (un)registration.
+        mBeanInfoCache = new MBeanInfoCache();
+
         // Request handling manager 
         requestHandlerManager =
-                new RequestHandlerManager(objectToJsonConverter,stringToObjectConverter,mBeanServerHandler.getServerHandle(),restrictor);
+                new RequestHandlerManager(objectToJsonConverter,stringToObjectConverter,mBeanServerHandler.getServerHandle(),
+                                          restrictor,mBeanInfoCache);
     }
 
 
@@ -97,9 +105,15 @@ public class LocalRequestDispatcher implements RequestDispatcher {
         // jmx4perl version < 0.80
         Config legacyConfig = new Config(pHistoryStore,pDebugStore,qualifier,Config.LEGACY_OBJECT_NAME);
         mBeanServerHandler.registerMBean(legacyConfig,legacyConfig.getObjectName());
+
+        // Statistics of the MBeanInfo cache
+        mBeanServerHandler.registerMBean(mBeanInfoCache,
+                                         MBeanInfoCacheMBean.OBJECT_NAME + (qualifier != null ? "," + qualifier : ""));
     }
 
     public void destroy() throws JMException {
+        requestHandlerManager.destroy();
+        mBeanInfoCache.destroy();
         mBeanServerHandler.unregisterMBeans();
     }
 
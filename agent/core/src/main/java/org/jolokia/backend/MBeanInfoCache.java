@@ -0,0 +1,280 @@
+package org.jolokia.backend;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.*;
+
+/**
+ * Cache for {@link MBeanInfo}s, which can be expensive to obtain on some
+ * platforms (e.g. WebLogic or WebSphere).
+ *
+ * Cached infos expire after a certain time to live, so that changes in the
+ * MBeanInfo of a DynamicMBean get picked up eventually. For local
+ * {@link MBeanServer}s, a listener on the {@link MBeanServerDelegate} additionally
+ * removes the cached info as soon as an MBean gets registered or unregistered.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class MBeanInfoCache implements MBeanInfoCacheMBean {
+
+    // Default time to live (ms) for cached MBeanInfos
+    public static final long DEFAULT_TTL = 60 * 1000L;
+
+    // Cache entries per server. The servers are weakly referenced so that
+    // connections which are not used anymore can be collected. All access
+    // is synchronized on this map.
+    private final Map<MBeanServerConnection,ServerCache> serverCaches =
+            new WeakHashMap<MBeanServerConnection, ServerCache>();
+
+    private volatile long ttl;
+
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache with the default time to live
+     */
+    public MBeanInfoCache() {
+        this(DEFAULT_TTL);
+    }
+
+    /**
+     * Create a cache
+     *
+     * @param pTtl time in ms after which a cached MBeanInfo expires
+     *        (0 if MBeanInfos should not be cached at all)
+     */
+    public MBeanInfoCache(long pTtl) {
+        ttl = pTtl;
+    }
+
+    /**
+     * Get the MBeanInfo for a given MBean, either from the cache or from the server.
+     *
+     * @param pServer server to query
+     * @param pName name of the MBean
+     * @return the MBean's meta data
+     * @throws InstanceNotFoundException if the MBean is not registered at the given server
+     * @throws IntrospectionException if an exception occurs during introspection
+     * @throws ReflectionException if an exception occurs when trying to invoke the getMBeanInfo of a Dynamic MBean
+     * @throws IOException for errors when communicating with a remote server
+     */
+    public MBeanInfo getMBeanInfo(MBeanServerConnection pServer, ObjectName pName)
+            throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+        ServerCache cache = getServerCache(pServer);
+        if (cache == null) {
+            misses.incrementAndGet();
+            return pServer.getMBeanInfo(pName);
+        }
+        MBeanInfo info = cache.get(pName);
+        if (info != null) {
+            hits.incrementAndGet();
+            return info;
+        }
+        misses.incrementAndGet();
+        long generation = cache.getGeneration();
+        info = pServer.getMBeanInfo(pName);
+        cache.put(pName, info, generation);
+        return info;
+    }
+
+    /**
+     * Remove all listeners registered at local MBeanServers and clear the cache.
+     * Should be called when the cache is not used anymore.
+     */
+    public void destroy() {
+        synchronized (serverCaches) {
+            for (Map.Entry<MBeanServerConnection,ServerCache> entry : serverCaches.entrySet()) {
+                NotificationListener listener = entry.getValue().listener;
+                if (listener != null) {
+                    try {
+                        entry.getKey().removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener);
+                    } catch (JMException e) {
+                        // Ok, already gone
+                    } catch (IOException e) {
+                        // Cannot happen for local servers
+                    }
+                }
+            }
+            serverCaches.clear();
+        }
+    }
+
+    // ==================================================================================
+    // MBean interface
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0.0;
+    }
+
+    public int getSize() {
+        synchronized (serverCaches) {
+            int ret = 0;
+            for (ServerCache cache : serverCaches.values()) {
+                ret += cache.infos.size();
+            }
+            return ret;
+        }
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long pTtl) {
+        ttl = pTtl;
+    }
+
+    public void clear() {
+        synchronized (serverCaches) {
+            for (ServerCache cache : serverCaches.values()) {
+                cache.clear();
+            }
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    // ==================================================================================
+
+    // Lookup the cache for a server, creating it if necessary. Returns null if MBeanInfos
+    // from this server should not be cached
+    private ServerCache getServerCache(MBeanServerConnection pServer) {
+        if (ttl <= 0) {
+            return null;
+        }
+        synchronized (serverCaches) {
+            ServerCache cache = serverCaches.get(pServer);
+            if (cache == null) {
+                if (pServer instanceof MBeanServer) {
+                    cache = createLocalCache((MBeanServer) pServer);
+                }
+                if (cache == null) {
+                    cache = new ServerCache(null);
+                }
+                serverCaches.put(pServer, cache);
+            }
+            return cache;
+        }
+    }
+
+    // Create a cache which gets invalidated by registration notifications of the
+    // given server. Returns null if no listener could be registered.
+    private ServerCache createLocalCache(MBeanServer pServer) {
+        ServerCache cache = new ServerCache(new RegistrationListener());
+        NotificationFilterSupport filter = new NotificationFilterSupport();
+        filter.enableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+        filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+        try {
+            pServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, cache.listener, filter, cache);
+            return cache;
+        } catch (InstanceNotFoundException e) {
+            // No delegate ? Fall back to expiration
+            return null;
+        } catch (RuntimeException e) {
+            // E.g. a SecurityException. Same as above.
+            return null;
+        }
+    }
+
+    // ==================================================================================
+
+    // Cached MBeanInfos of a single server
+    private final class ServerCache {
+        private final Map<ObjectName,CachedInfo> infos = new ConcurrentHashMap<ObjectName, CachedInfo>();
+
+        // Listener for invalidating entries, null for remote servers
+        private final RegistrationListener listener;
+
+        // Incremented whenever an entry is invalidated, so that an info fetched
+        // concurrently to a (un-)registration doesn't get cached
+        private long generation;
+
+        private ServerCache(RegistrationListener pListener) {
+            listener = pListener;
+        }
+
+        private MBeanInfo get(ObjectName pName) {
+            CachedInfo cached = infos.get(pName);
+            if (cached == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - cached.timestamp > ttl) {
+                infos.remove(pName);
+                return null;
+            }
+            return cached.info;
+        }
+
+        private synchronized long getGeneration() {
+            return generation;
+        }
+
+        private synchronized void put(ObjectName pName, MBeanInfo pInfo, long pGeneration) {
+            if (pGeneration == generation) {
+                infos.put(pName, new CachedInfo(pInfo));
+            }
+        }
+
+        private synchronized void invalidate(ObjectName pName) {
+            generation++;
+            infos.remove(pName);
+        }
+
+        private synchronized void clear() {
+            generation++;
+            infos.clear();
+        }
+    }
+
+    // Listener on the MBeanServerDelegate. The cache to invalidate is given as handback
+    // so that the listener doesn't need to refer to its server.
+    private static final class RegistrationListener implements NotificationListener {
+        public void handleNotification(Notification pNotification, Object pHandback) {
+            if (pNotification instanceof MBeanServerNotification) {
+                ((ServerCache) pHandback).invalidate(((MBeanServerNotification) pNotification).getMBeanName());
+            }
+        }
+    }
+
+    private static final class CachedInfo {
+        private final MBeanInfo info;
+        private final long timestamp;
+
+        private CachedInfo(MBeanInfo pInfo) {
+            info = pInfo;
+            timestamp = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.jolokia.backend;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * MBean interface for monitoring the {@link MBeanInfoCache}
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public interface MBeanInfoCacheMBean {
+
+    // Name under which the cache gets registered
+    String OBJECT_NAME = "jolokia:type=MBeanInfoCache";
+
+    /**
+     * Number of lookups which could be served from the cache
+     *
+     * @return number of cache hits
+     */
+    long getHits();
+
+    /**
+     * Number of lookups for which the MBeanInfo had to be fetched from the MBeanServer
+     *
+     * @return number of cache misses
+     */
+    long getMisses();
+
+    /**
+     * Ratio of hits to all lookups (between 0 and 1)
+     *
+     * @return hit ratio
+     */
+    double getHitRatio();
+
+    /**
+     * Number of MBeanInfos currently cached
+     *
+     * @return number of cached entries
+     */
+    int getSize();
+
+    /**
+     * Time in milliseconds after which a cached MBeanInfo gets refetched. MBeanInfos
+     * of local MBeanServers are additionally invalidated when the MBean gets unregistered.
+     *
+     * @return time to live for cached entries in ms, 0 if MBeanInfos are not cached.
+     */
+    long getTtl();
+
+    /**
+     * Set the time to live for cached entries
+     *
+     * @param pTtl time to live in ms, 0 for switching off caching
+     */
+    void setTtl(long pTtl);
+
+    /**
+     * Remove all cached MBeanInfos and reset the statistics
+     */
+    void clear();
+}
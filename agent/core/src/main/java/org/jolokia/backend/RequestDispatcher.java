@@ -62,4 +62,12 @@ public interface RequestDispatcher {
      *         the request should be respected.
      */
     boolean useReturnValueWithPath(JmxRequest pJmxRequest);
+
+    /**
+     * Release all resources held by this dispatcher. Called when the agent
+     * is shut down.
+     *
+     * @throws JMException if cleaning up fails
+     */
+    void destroy() throws JMException;
 }
@@ -5,6 +5,7 @@ import java.io.*;
 import javax.management.*;
 
 import org.jolokia.history.HistoryKey;
+import org.jolokia.history.HistoryRetention;
 import org.jolokia.history.HistoryStore;
 
 /*
@@ -57,6 +58,18 @@ public class Config implements ConfigMBean,MBeanRegistration {
         historyStore.configure(key,pMaxEntries);
     }
 
+    public void setHistoryRetentionForAttribute(String pMBean, String pAttribute, String pPath, String pTarget,
+                                                int pMaxEntries, String pRetention) throws MalformedObjectNameException {
+        HistoryKey key = new HistoryKey(pMBean,pAttribute,pPath,pTarget);
+        historyStore.configure(key,pMaxEntries,HistoryRetention.parse(pRetention));
+    }
+
+    public void setHistoryRetentionForOperation(String pMBean, String pOperation, String pTarget,
+                                                int pMaxEntries, String pRetention) throws MalformedObjectNameException {
+        HistoryKey key = new HistoryKey(pMBean,pOperation,pTarget);
+        historyStore.configure(key,pMaxEntries,HistoryRetention.parse(pRetention));
+    }
+
     public void resetHistoryEntries() {
         historyStore.reset();
     }
@@ -77,6 +90,26 @@ public class Config implements ConfigMBean,MBeanRegistration {
         historyStore.setGlobalMaxEntries(pLimit);
     }
 
+    public int getHistoryMaxTotalEntries() {
+        return historyStore.getMaxTotalEntries();
+    }
+
+    public void setHistoryMaxTotalEntries(int pLimit) {
+        historyStore.setMaxTotalEntries(pLimit);
+    }
+
+    public long getHistoryTotalEntries() {
+        return historyStore.getTotalEntries();
+    }
+
+    public int getHistoryKeyCount() {
+        return historyStore.getKeyCount();
+    }
+
+    public long getHistoryEvictions() {
+        return historyStore.getEvictions();
+    }
+
     public boolean isDebug() {
         return debugStore.isDebug();
     }
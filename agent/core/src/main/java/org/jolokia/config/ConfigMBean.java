@@ -57,6 +57,36 @@ public interface ConfigMBean {
      */
     void setHistoryEntriesForOperation(String pMBean,String pOperation,String pTarget,int pMaxEntries) throws MalformedObjectNameException;
 
+    /**
+     * Switch on history tracking for an attribute with a time based retention. Raw values are
+     * kept for a maximum age and numeric values are aggregated into min/max/average rollups
+     * which are returned under the key <code>rollups</code>. The retention is given as comma separated
+     * list like <code>raw=5m,1m=1h,10m=1d</code> (see {@link org.jolokia.history.HistoryRetention}).
+     *
+     * @param pMBean MBean object name
+     * @param pAttribute attribute name
+     * @param pPath path for inner attribute values
+     * @param pTarget remote target or null for a local mbean
+     * @param pMaxEntries max last raw entries to remember, if 0 history tracking is switched off.
+     * @param pRetention retention specification or null for a count based history only
+     */
+    void setHistoryRetentionForAttribute(String pMBean,String pAttribute,String pPath,String pTarget,
+                                         int pMaxEntries,String pRetention) throws MalformedObjectNameException;
+
+    /**
+     * Switch on history tracking for an operation with a time based retention. See
+     * {@link #setHistoryRetentionForAttribute(String, String, String, String, int, String)} for
+     * the format of the retention.
+     *
+     * @param pMBean MBean object name
+     * @param pOperation operation to track
+     * @param pTarget remote target or null for a local mbean
+     * @param pMaxEntries max last raw entries to remember, if 0 history tracking is switched off.
+     * @param pRetention retention specification or null for a count based history only
+     */
+    void setHistoryRetentionForOperation(String pMBean,String pOperation,String pTarget,
+                                         int pMaxEntries,String pRetention) throws MalformedObjectNameException;
+
     /**
      * Remove all history entries and switch off history tracking globally.
      */
@@ -100,6 +130,43 @@ public interface ConfigMBean {
      */
     void setHistoryMaxEntries(int pLimit);
 
+    /**
+     * Limit for the number of history entries of all attributes and operations in total. The number
+     * counted for an attribute or operation is its maximum number of entries. If this limit is
+     * exceeded, the least recently updated histories are removed.
+     *
+     * @return the total limit or 0 if there is no limit
+     */
+    int getHistoryMaxTotalEntries();
+
+    /**
+     * Set the limit for the number of history entries in total
+     * @param pLimit limit to set, 0 for no limit
+     */
+    void setHistoryMaxTotalEntries(int pLimit);
+
+    /**
+     * Number of history entries reserved by all attributes and operations, which is
+     * checked against {@link #getHistoryMaxTotalEntries()}
+     *
+     * @return number of entries in use
+     */
+    long getHistoryTotalEntries();
+
+    /**
+     * Number of attributes and operations for which a history is kept
+     *
+     * @return number of history keys
+     */
+    int getHistoryKeyCount();
+
+    /**
+     * Number of histories removed because the total limit was exceeded
+     *
+     * @return number of evicted histories
+     */
+    long getHistoryEvictions();
+
     /**
      * Check, whether debugging is switched on
      * @return state of debugging
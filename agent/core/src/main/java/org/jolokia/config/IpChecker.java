@@ -23,8 +23,9 @@ package org.jolokia.config;
  *
  * @author roland
  * @since Oct 8, 2009
+ * @deprecated use {@link IpPrefixTrie}, which checks against many subnets at once
  */
-
+@Deprecated
 public final class IpChecker {
 
     private IpChecker() { }
@@ -37,78 +38,15 @@ public final class IpChecker {
      * @param pToCheck the ip address to check
      * @return true if either the address to check is the same as the address expected
      *         of falls within the subnet if a netmask is given
+     * @throws IllegalArgumentException if one of the given addresses is not valid
      */
     public static boolean matches(String pExpected, String pToCheck) {
-        String[] parts = pExpected.split("/",2);
-        if (parts.length == 1) {
-            // No Net part given, check for equality ...
-            // Check for valid ips;
-            convertToIntTuple(pExpected);
-            convertToIntTuple(pToCheck);
-            return pExpected.equals(pToCheck);
-        } else if (parts.length == 2) {
-            int ipToCheck[] = convertToIntTuple(pToCheck);
-            int ipPattern[] = convertToIntTuple(parts[0]);
-            int netmask[];
-            if (parts[1].length() <= 2) {
-                netmask = transformCidrToNetmask(parts[1]);
-            } else {
-                netmask = convertToIntTuple(parts[1]);
-            }
-            for (int i = 0; i<ipToCheck.length; i++) {
-                if ((ipPattern[i] & netmask[i]) != (ipToCheck[i] & netmask[i])) {
-                    return false;
-                }
-            }
-            return true;
-        } else {
-            throw new IllegalArgumentException("Invalid IP adress specification " + pExpected);
-        }
-	}
-
-	private static int[] transformCidrToNetmask(String pCidrString) {
-        try {
-            int pCidr = Integer.parseInt(pCidrString);
-            if (pCidr < 0 || pCidr > 32) {
-                throw new IllegalArgumentException("Invalid netmask specification " + pCidr);
-            }
-            StringBuffer buf = new StringBuffer();
-            for (int i=0;i<pCidr;i++) {
-                buf.append("1");
-            }
-            for (int i=pCidr;i<32;i++) {
-                buf.append("0");
-            }
-            int[] ret = new int[4];
-            int start = 0,end = 8;
-
-            for (int j=0;j<4;j++) {
-                ret[j] = (Integer.parseInt(buf.substring(start,end), 2));
-                start += 8; end += 8;
-            }
-            return ret;
-        } catch (NumberFormatException exp) {
-            throw new IllegalArgumentException("Invalid netmask specification " + pCidrString,exp);
-        }
-    }
-
-
-    private static int[] convertToIntTuple(String pAddress) {
-        String[] parts = pAddress.split("\\.");
-        if (parts.length != 4) {
-            throw new IllegalArgumentException("Invalid IP-Adresse " + pAddress);
-        }
-        int ret[] = new int[4];
-        for (int i = 0; i < 4; i++) {
-            try {
-                ret[i] = Integer.parseInt(parts[i]);
-                if (ret[i] < 0 || ret[i] > 255) {
-                    throw new IllegalArgumentException("Invalid IP-Adresse " + pAddress);
-                }
-            } catch (NumberFormatException exp) {
-                throw new IllegalArgumentException("Invalid IP-Adresse " + pAddress,exp);
-            }
+        IpPrefixTrie trie = new IpPrefixTrie();
+        trie.add(pExpected);
+        byte[] address = IpPrefixTrie.parseAddress(pToCheck);
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid IP-Adresse " + pToCheck);
         }
-        return ret;
+        return trie.matches(address);
     }
 }
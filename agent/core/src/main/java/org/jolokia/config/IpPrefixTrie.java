@@ -0,0 +1,269 @@
+package org.jolokia.config;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Set of IP addresses and subnets, stored as binary prefix trie. Each bit of a network
+ * prefix is a level in the trie, so checking an address takes at most 32 (IPv4) or
+ * 128 (IPv6) steps, regardless of the number of subnets added.
+ *
+ * Subnets are given either in CIDR notation ("10.0.0.0/8", "fe80::/10") or with
+ * a netmask ("192.168.15.0/255.255.255.0"). A plain address is the same as a subnet
+ * containing only this address. Netmasks which are not contiguous (like "255.255.1.0")
+ * cannot be stored in the trie. Such subnets are kept in a list and checked one by one.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public final class IpPrefixTrie {
+
+    private final Node ipv4 = new Node();
+    private final Node ipv6 = new Node();
+
+    // Subnets with non-contiguous netmasks as pairs of masked address and netmask
+    private final List<byte[][]> maskedNets = new ArrayList<byte[][]>();
+
+    private boolean empty = true;
+
+    /**
+     * Add an address or a subnet
+     *
+     * @param pSpec address or subnet specification
+     * @throws IllegalArgumentException if the specification is not valid
+     */
+    public void add(String pSpec) {
+        String[] parts = pSpec.trim().split("/", 2);
+        byte[] address = parseAddress(parts[0]);
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid IP address " + pSpec);
+        }
+        if (parts.length == 2 && isNetmask(parts[1])) {
+            byte[] mask = parseNetmask(parts[1], address.length);
+            if (getPrefixLength(mask) < 0) {
+                maskedNets.add(new byte[][] { applyMask(address, mask), mask });
+                empty = false;
+                return;
+            }
+        }
+        int bits = parts.length == 1 ? address.length * 8 : parsePrefixLength(parts[1], address.length);
+        Node node = address.length == 4 ? ipv4 : ipv6;
+        for (int i = 0; i < bits; i++) {
+            node = node.child(bit(address, i), true);
+        }
+        node.terminal = true;
+        empty = false;
+    }
+
+    /**
+     * Check whether an address is contained in one of the subnets added
+     *
+     * @param pAddress address to check (4 or 16 bytes)
+     * @return true if the address is contained
+     */
+    public boolean matches(byte[] pAddress) {
+        return matchesPrefix(pAddress) || matchesMaskedNet(pAddress);
+    }
+
+    /**
+     * Check whether an address given as string is contained in one of the subnets added
+     *
+     * @param pAddress address to check
+     * @return true if the address is contained, false if not or if the string is not an IP address
+     */
+    public boolean matches(String pAddress) {
+        byte[] address = parseAddress(pAddress);
+        return address != null && matches(address);
+    }
+
+    /**
+     * Whether no address has been added yet
+     *
+     * @return true if this trie is empty
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Convert a textual IPv4 or IPv6 address into its bytes. No name service is involved,
+     * for everything which is not an address literal <code>null</code> is returned.
+     * IPv4 addresses mapped into IPv6 are returned as IPv4 addresses.
+     *
+     * @param pAddress address to convert
+     * @return the address as 4 or 16 bytes, or <code>null</code> if the given string is not an IP address
+     */
+    public static byte[] parseAddress(String pAddress) {
+        if (pAddress == null || pAddress.length() == 0) {
+            return null;
+        }
+        if (pAddress.indexOf(':') >= 0) {
+            return parseIpv6(pAddress);
+        }
+        return parseIpv4(pAddress);
+    }
+
+    // ====================================================================================
+
+    private boolean matchesPrefix(byte[] pAddress) {
+        Node node = pAddress.length == 4 ? ipv4 : ipv6;
+        for (int i = 0; i < pAddress.length * 8; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            node = node.child(bit(pAddress, i), false);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+
+    private boolean matchesMaskedNet(byte[] pAddress) {
+        for (byte[][] net : maskedNets) {
+            byte[] mask = net[1];
+            if (mask.length == pAddress.length && Arrays.equals(applyMask(pAddress, mask), net[0])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] applyMask(byte[] pAddress, byte[] pMask) {
+        byte[] ret = new byte[pAddress.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = (byte) (pAddress[i] & pMask[i]);
+        }
+        return ret;
+    }
+
+    private static byte[] parseIpv4(String pAddress) {
+        String[] parts = pAddress.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        byte[] ret = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            String part = parts[i];
+            if (part.length() == 0 || part.length() > 3) {
+                return null;
+            }
+            int value = 0;
+            for (int j = 0; j < part.length(); j++) {
+                char c = part.charAt(j);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (value > 255) {
+                return null;
+            }
+            ret[i] = (byte) value;
+        }
+        return ret;
+    }
+
+    private static byte[] parseIpv6(String pAddress) {
+        String address = pAddress;
+        if (address.startsWith("[") && address.endsWith("]")) {
+            address = address.substring(1, address.length() - 1);
+        }
+        int zone = address.indexOf('%');
+        if (zone >= 0) {
+            address = address.substring(0, zone);
+        }
+        try {
+            // Literals containing a colon are never looked up by InetAddress
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException exp) {
+            return null;
+        }
+    }
+
+    private static boolean isNetmask(String pPrefix) {
+        return pPrefix.indexOf('.') >= 0 || pPrefix.indexOf(':') >= 0;
+    }
+
+    private static byte[] parseNetmask(String pPrefix, int pAddressLength) {
+        byte[] mask = parseAddress(pPrefix);
+        if (mask == null || mask.length != pAddressLength) {
+            throw new IllegalArgumentException("Invalid netmask specification " + pPrefix);
+        }
+        return mask;
+    }
+
+    private static int parsePrefixLength(String pPrefix, int pAddressLength) {
+        int maxBits = pAddressLength * 8;
+        if (isNetmask(pPrefix)) {
+            return getPrefixLength(parseNetmask(pPrefix, pAddressLength));
+        }
+        try {
+            int bits = Integer.parseInt(pPrefix);
+            if (bits < 0 || bits > maxBits) {
+                throw new IllegalArgumentException("Invalid netmask specification " + pPrefix);
+            }
+            return bits;
+        } catch (NumberFormatException exp) {
+            throw new IllegalArgumentException("Invalid netmask specification " + pPrefix, exp);
+        }
+    }
+
+    // Only contiguous netmasks can be stored as prefix, for all others -1 is returned
+    private static int getPrefixLength(byte[] pMask) {
+        int bits = 0;
+        while (bits < pMask.length * 8 && bit(pMask, bits) == 1) {
+            bits++;
+        }
+        for (int i = bits; i < pMask.length * 8; i++) {
+            if (bit(pMask, i) == 1) {
+                return -1;
+            }
+        }
+        return bits;
+    }
+
+    private static int bit(byte[] pAddress, int pIndex) {
+        return (pAddress[pIndex >> 3] >> (7 - (pIndex & 7))) & 1;
+    }
+
+    // A node in the trie. If it is terminal, all addresses below are contained.
+    private static final class Node {
+        private Node zero;
+        private Node one;
+        private boolean terminal;
+
+        Node child(int pBit, boolean pCreate) {
+            Node child = pBit == 0 ? zero : one;
+            if (child == null && pCreate) {
+                child = new Node();
+                if (pBit == 0) {
+                    zero = child;
+                } else {
+                    one = child;
+                }
+            }
+            return child;
+        }
+    }
+}
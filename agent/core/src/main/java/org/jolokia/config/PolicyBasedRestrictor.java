@@ -3,6 +3,8 @@ package org.jolokia.config;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 import javax.management.MalformedObjectNameException;
@@ -11,6 +13,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.jolokia.JmxRequest;
+import org.jolokia.util.ObjectNamePatternIndex;
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
 
@@ -43,18 +46,35 @@ public class PolicyBasedRestrictor implements Restrictor {
 
     private Set<String> httpMethodsSet;
 
+    // Allowed host names and allowed addresses and subnets. If the host names are null,
+    // there is no restriction on the remote host at all.
     private Set<String> allowedHostsSet;
-    private Set<String> allowedSubnetsSet;
-
-    // Simple patterns, could be mor specific
-    private static final Pattern IP_PATTERN = Pattern.compile("^[\\d.]+$");
-    private static final Pattern SUBNET_PATTERN = Pattern.compile("^[\\d.]+/[\\d.]+$");
+    private IpPrefixTrie allowedAddresses;
 
     // Configuration for allowed and denied MBean attributes and operations.
     private MBeanPolicyConfig allow;
     private MBeanPolicyConfig deny;
 
+    // Default number of access decisions to remember
+    static final int DEFAULT_DECISION_CACHE_SIZE = 10000;
+
+    // Access decisions for attributes and operations already checked
+    private final int maxDecisions;
+    private final ConcurrentMap<Decision,Boolean> decisions = new ConcurrentHashMap<Decision, Boolean>();
+
     public PolicyBasedRestrictor(InputStream pInput) {
+        this(pInput,DEFAULT_DECISION_CACHE_SIZE);
+    }
+
+    /**
+     * Restrictor which remembers up to the given number of decisions about attributes
+     * and operations
+     *
+     * @param pInput policy to read
+     * @param pMaxDecisions number of decisions to cache, 0 for no caching
+     */
+    PolicyBasedRestrictor(InputStream pInput, int pMaxDecisions) {
+        maxDecisions = pMaxDecisions;
         Exception exp = null;
         if (pInput == null) {
             throw new SecurityException("No policy file given");
@@ -102,6 +122,22 @@ public class PolicyBasedRestrictor implements Restrictor {
     }
 
     private boolean check(JmxRequest.Type pType, ObjectName pName, String pValue) {
+        if (maxDecisions <= 0) {
+            return decide(pType, pName, pValue);
+        }
+        Decision key = new Decision(pType, pName, pValue);
+        Boolean ret = decisions.get(key);
+        if (ret == null) {
+            ret = decide(pType, pName, pValue);
+            if (decisions.size() >= maxDecisions) {
+                decisions.clear();
+            }
+            decisions.put(key, ret);
+        }
+        return ret;
+    }
+
+    private boolean decide(JmxRequest.Type pType, ObjectName pName, String pValue) {
         if (isTypeAllowed(pType)) {
             // Its allowed in general, so we only need to check
             // the denied section, whether its forbidded
@@ -118,41 +154,39 @@ public class PolicyBasedRestrictor implements Restrictor {
             return true;
         }
         for (String addr : pHostOrAddress) {
-            if (allowedHostsSet.contains(addr)) {
-                return true;
+            if (addr == null) {
+                continue;
             }
-            if (allowedSubnetsSet != null && IP_PATTERN.matcher(addr).matches()) {
-                for (String subnet : allowedSubnetsSet) {
-                    if (IpChecker.matches(subnet,addr)) {
-                        return true;
-                    }
-                }
+            byte[] ip = IpPrefixTrie.parseAddress(addr);
+            if (ip != null ? allowedAddresses.matches(ip) : allowedHostsSet.contains(addr.toLowerCase())) {
+                return true;
             }
         }
         return false;
     }
 
+    /**
+     * Check whether the host name of a client is needed for deciding about remote access.
+     * If not, a client is checked by its IP address alone and no reverse name lookup
+     * is required.
+     *
+     * @return true if access is restricted to certain host names
+     */
+    public boolean isRemoteHostNameRequired() {
+        return allowedHostsSet != null && !allowedHostsSet.isEmpty();
+    }
+
     // ===============================================================================
     // Lookup methods
     private boolean matches(MBeanPolicyConfig pConfig, JmxRequest.Type pType, ObjectName pName, String pValue) {
-        Set<String> values = pConfig.getValues(pType,pName);
+        ValueMatcher values = pConfig.getValues(pType,pName);
         if (values == null) {
             ObjectName pattern = pConfig.findMatchingMBeanPattern(pName);
             if (pattern != null) {
                 values = pConfig.getValues(pType,pattern);
             }
         }
-        return values != null && (values.contains(pValue) || wildcardMatch(values,pValue));
-    }
-
-    // Check whether a value matches patterns in pValues
-    private boolean wildcardMatch(Set<String> pValues, String pValue) {
-        for (String pattern : pValues) {
-            if (pattern.contains("*") && pValue.matches(pattern.replaceAll("\\*",".*"))) {
-                return true;
-            }
-        }
-        return false;
+        return values != null && values.matches(pValue);
     }
 
 
@@ -294,6 +328,7 @@ public class PolicyBasedRestrictor implements Restrictor {
         }
 
         allowedHostsSet = new HashSet<String>();
+        allowedAddresses = new IpPrefixTrie();
         for (int i = 0;i<nodes.getLength();i++) {
             Node node = nodes.item(i);
             NodeList childs = node.getChildNodes();
@@ -304,11 +339,12 @@ public class PolicyBasedRestrictor implements Restrictor {
                 }
                 assertNodeName(hostNode,"host");
                 String host = hostNode.getTextContent().trim().toLowerCase();
-                if (SUBNET_PATTERN.matcher(host).matches()) {
-                    if (allowedSubnetsSet == null) {
-                        allowedSubnetsSet = new HashSet<String>();
+                if (host.indexOf('/') >= 0 || IpPrefixTrie.parseAddress(host) != null) {
+                    try {
+                        allowedAddresses.add(host);
+                    } catch (IllegalArgumentException exp) {
+                        throw new SecurityException("Invalid <host> " + host + ": " + exp.getMessage(),exp);
                     }
-                    allowedSubnetsSet.add(host);
                 } else {
                     allowedHostsSet.add(host);
                 }
@@ -338,25 +374,25 @@ public class PolicyBasedRestrictor implements Restrictor {
 
     // Class combining various maps for attributes, operations and name patterns
     private static class MBeanPolicyConfig {
-        private Set<ObjectName> patterns = new HashSet<ObjectName>();
-        private Map<ObjectName,Set<String>> readAttributes = new HashMap<ObjectName, Set<String>>();
-        private Map<ObjectName,Set<String>> writeAttributes = new HashMap<ObjectName, Set<String>>();
-        private Map<ObjectName,Set<String>> operations = new HashMap<ObjectName, Set<String>>();
+        private ObjectNamePatternIndex<ObjectName> patterns = new ObjectNamePatternIndex<ObjectName>();
+        private Map<ObjectName,ValueMatcher> readAttributes = new HashMap<ObjectName, ValueMatcher>();
+        private Map<ObjectName,ValueMatcher> writeAttributes = new HashMap<ObjectName, ValueMatcher>();
+        private Map<ObjectName,ValueMatcher> operations = new HashMap<ObjectName, ValueMatcher>();
 
         public void addPattern(ObjectName pObjectName) {
-            patterns.add(pObjectName);
+            patterns.add(pObjectName,pObjectName);
         }
 
         void addValues(ObjectName pOName, Set<String> pReadAttributes, Set<String> pWriteAttributes, Set<String> pOperations) {
-            readAttributes.put(pOName,pReadAttributes);
-            writeAttributes.put(pOName,pWriteAttributes);
-            operations.put(pOName,pOperations);
+            readAttributes.put(pOName,new ValueMatcher(pReadAttributes));
+            writeAttributes.put(pOName,new ValueMatcher(pWriteAttributes));
+            operations.put(pOName,new ValueMatcher(pOperations));
             if (pOName.isPattern()) {
                 addPattern(pOName);
             }
         }
 
-        Set<String> getValues(JmxRequest.Type pType, ObjectName pName) {
+        ValueMatcher getValues(JmxRequest.Type pType, ObjectName pName) {
             if (JmxRequest.Type.READ == pType) {
                 return readAttributes.get(pName);
             } else if (JmxRequest.Type.WRITE == pType) {
@@ -369,13 +405,70 @@ public class PolicyBasedRestrictor implements Restrictor {
         }
 
         ObjectName findMatchingMBeanPattern(ObjectName pName) {
-            // Check all stored patterns for a match and return the pattern if one is found
-            for (ObjectName pattern : patterns) {
-                if (pattern.apply(pName)) {
-                    return pattern;
+            // Check the stored patterns for a match and return the pattern if one is found
+            return patterns.find(pName);
+        }
+    }
+
+    // Attribute or operation names of a single MBean. Names with wildcards are compiled
+    // into regular expressions when the policy is loaded.
+    private static final class ValueMatcher {
+        private final Set<String> names = new HashSet<String>();
+        private final List<Pattern> wildcards = new ArrayList<Pattern>();
+
+        ValueMatcher(Set<String> pValues) {
+            for (String value : pValues) {
+                if (value.contains("*")) {
+                    wildcards.add(Pattern.compile(value.replaceAll("\\*",".*")));
+                } else {
+                    names.add(value);
+                }
+            }
+        }
+
+        boolean matches(String pValue) {
+            if (names.contains(pValue)) {
+                return true;
+            }
+            for (Pattern pattern : wildcards) {
+                if (pattern.matcher(pValue).matches()) {
+                    return true;
                 }
             }
-            return null;
+            return false;
+        }
+    }
+
+    // Key for a cached access decision
+    private static final class Decision {
+        private final JmxRequest.Type type;
+        private final ObjectName name;
+        private final String value;
+        private final int hash;
+
+        Decision(JmxRequest.Type pType, ObjectName pName, String pValue) {
+            type = pType;
+            name = pName;
+            value = pValue;
+            hash = 31 * (31 * type.hashCode() + name.hashCode()) + (value != null ? value.hashCode() : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof Decision)) {
+                return false;
+            }
+            Decision other = (Decision) pOther;
+            return type == other.type && name.equals(other.name) &&
+                   (value != null ? value.equals(other.value) : other.value == null);
         }
     }
 }
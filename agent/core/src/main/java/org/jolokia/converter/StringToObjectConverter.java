@@ -1,8 +1,8 @@
 package org.jolokia.converter;
 
 import java.lang.reflect.Array;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -35,6 +35,7 @@ public class StringToObjectConverter {
 
     private static final Map<String,Extractor> EXTRACTOR_MAP = new HashMap<String,Extractor>();
     private static final Map<String,Class> TYPE_SIGNATURE_MAP = new HashMap<String, Class>();
+    private static final Map<String,Class> VALUE_CLASS_MAP = new HashMap<String, Class>();
 
     static {
         EXTRACTOR_MAP.put(Byte.class.getName(),new ByteExtractor());
@@ -58,6 +59,22 @@ public class StringToObjectConverter {
         EXTRACTOR_MAP.put(JSONObject.class.getName(), jsonExtractor);
         EXTRACTOR_MAP.put(JSONArray.class.getName(), jsonExtractor);
 
+        Class[] valueClasses = new Class[] {
+                Byte.class, Integer.class, Long.class, Short.class, Double.class, Float.class,
+                Boolean.class, String.class, JSONObject.class, JSONArray.class
+        };
+        for (Class valueClass : valueClasses) {
+            VALUE_CLASS_MAP.put(valueClass.getName(),valueClass);
+        }
+        VALUE_CLASS_MAP.put("byte",Byte.class);
+        VALUE_CLASS_MAP.put("int",Integer.class);
+        VALUE_CLASS_MAP.put("long",Long.class);
+        VALUE_CLASS_MAP.put("short",Short.class);
+        VALUE_CLASS_MAP.put("double",Double.class);
+        VALUE_CLASS_MAP.put("float",Float.class);
+        VALUE_CLASS_MAP.put("boolean",Boolean.class);
+        VALUE_CLASS_MAP.put("char",Character.class);
+
         TYPE_SIGNATURE_MAP.put("Z",boolean.class);
         TYPE_SIGNATURE_MAP.put("B",byte.class);
         TYPE_SIGNATURE_MAP.put("C",char.class);
@@ -68,58 +85,95 @@ public class StringToObjectConverter {
         TYPE_SIGNATURE_MAP.put("D",double.class);
     }
 
+    // Converters for types which don't depend on a class loader
+    private final Map<String,Converter> converterCache = new ConcurrentHashMap<String, Converter>();
+
+    /**
+     * Convert a string to an object of the given type
+     *
+     * @param pType type as returned by {@link javax.management.MBeanParameterInfo#getType()}
+     * @param pValue value to convert
+     * @return the converted value
+     */
     public Object convertFromString(String pType, String pValue) {
-        // TODO: Look for an external solution or support more types
-        if ("[null]".equals(pValue)) {
-            return null;
-        }
-        if (pType.startsWith("[") && pType.length() >= 2) {
-            return convertToArray(pType, pValue);
-        }
+        return getConverter(pType).convert(pValue);
+    }
+
+    /**
+     * Convert a value as given in a JSON request to an object of the given type. Besides strings,
+     * JSON numbers, booleans, arrays and objects are converted directly without going through
+     * their string representation.
+     *
+     * @param pType type as returned by {@link javax.management.MBeanParameterInfo#getType()}
+     * @param pValue value to convert
+     * @return the converted value
+     */
+    public Object convertFromJson(String pType, Object pValue) {
+        return getConverter(pType).convert(pValue);
+    }
 
-        // Special string value
-        if ("\"\"".equals(pValue)) {
-            if (matchesType(pType,String.class)) {
-                return "";
+    /**
+     * Get a converter for values of a given type. The type is resolved only once, so the
+     * converter should be kept if many values of the same type are to be converted.
+     * Errors for types which can't be converted are reported when a value gets converted.
+     *
+     * @param pType type as returned by {@link javax.management.MBeanParameterInfo#getType()}
+     * @return converter for this type
+     */
+    public Converter getConverter(String pType) {
+        Converter converter = converterCache.get(pType);
+        if (converter == null) {
+            converter = createConverter(pType);
+            // Object arrays are resolved with the context class loader, so they are not cached.
+            // Unknown types are not cached either, their number is not bounded.
+            if (!pType.startsWith("[L") && (EXTRACTOR_MAP.containsKey(pType) || pType.startsWith("["))) {
+                converterCache.put(pType,converter);
             }
-            throw new IllegalArgumentException("Cannot convert empty string tag to type " + pType);
         }
+        return converter;
+    }
+
+    /**
+     * Converter for values of a single type
+     */
+    public interface Converter {
+
+        /**
+         * Convert a value. Strings are parsed, other values (as obtained from a JSON
+         * request) are converted directly if possible.
+         *
+         * @param pValue value to convert, either a string representation or a JSON value
+         * @return the converted value
+         */
+        Object convert(Object pValue);
+    }
 
-        Extractor extractor = EXTRACTOR_MAP.get(pType);
-        if (extractor == null) {
-            throw new IllegalArgumentException(
-                    "Cannot convert string " + pValue + " to type " +
-                            pType + " because no converter could be found");
+    private Converter createConverter(String pType) {
+        // TODO: Look for an external solution or support more types
+        if (pType.startsWith("[") && pType.length() >= 2) {
+            return new ArrayConverter(pType);
         }
-        return extractor.extract(pValue);
+        return new SimpleConverter(pType, EXTRACTOR_MAP.get(pType), VALUE_CLASS_MAP.get(pType));
     }
 
-    // Convert an array
-    private Object convertToArray(String pType, String pValue) {
-        // It's an array
+    // Lookup the element type of an array
+    private Class getArrayComponentType(String pType) {
         String t = pType.substring(1,2);
-        Class valueType;
         if (t.equals("L")) {
             // It's an object-type
             String oType = pType.substring(2,pType.length()-1).replace('/','.');
             try {
-                valueType = Class.forName(oType,true,Thread.currentThread().getContextClassLoader());
+                return Class.forName(oType,true,Thread.currentThread().getContextClassLoader());
             } catch (ClassNotFoundException e) {
                 throw new IllegalArgumentException("No class of type " + oType + "found: " + e,e);
             }
         } else {
-            valueType = TYPE_SIGNATURE_MAP.get(t);
+            Class valueType = TYPE_SIGNATURE_MAP.get(t);
             if (valueType == null) {
                 throw new IllegalArgumentException("Cannot convert to unknown array type " + t);
             }
+            return valueType;
         }
-        String[] values = split(pValue);
-        Object ret = Array.newInstance(valueType,values.length);
-        int i = 0;
-        for (String value : values) {
-            Array.set(ret,i++,value.equals("[null]") ? null : convertFromString(valueType.getCanonicalName(),value));
-        }
-        return ret;
     }
 
     private String[] split(String pValue) {
@@ -129,10 +183,6 @@ public class StringToObjectConverter {
         return pValue.split("\\s*,\\s*");
     }
 
-    private boolean matchesType(String pType, Class pClass) {
-        return pClass.getName().equals(pType);
-    }
-
     // ===========================================================================
     // Extractor interface
     private interface Extractor {
@@ -167,6 +217,146 @@ public class StringToObjectConverter {
         public Object extract(String pValue) { return Short.parseShort(pValue); }
     }
 
+    // ===========================================================================
+    // Converters
+
+    // Converter for a single value
+    private static final class SimpleConverter implements Converter {
+        private final String type;
+        private final Extractor extractor;
+        // Class of converted values (the wrapper class for primitive types)
+        private final Class valueClass;
+
+        private SimpleConverter(String pType, Extractor pExtractor, Class pValueClass) {
+            type = pType;
+            extractor = pExtractor;
+            valueClass = pValueClass;
+        }
+
+        public Object convert(Object pValue) {
+            if (pValue == null) {
+                return null;
+            }
+            if (pValue instanceof String) {
+                return convertString((String) pValue);
+            }
+            if (valueClass != null) {
+                if (valueClass.isInstance(pValue)) {
+                    return pValue;
+                }
+                if (pValue instanceof Number) {
+                    Object ret = convertNumber((Number) pValue);
+                    if (ret != null) {
+                        return ret;
+                    }
+                }
+            }
+            if (pValue instanceof List && extractor != null && !(extractor instanceof JSONExtractor)) {
+                // Same as for the string representation of an array
+                return convertString(join((List) pValue));
+            }
+            // JSON objects and arrays return their JSON representation
+            return convertString(pValue.toString());
+        }
+
+        private String join(List pList) {
+            StringBuilder ret = new StringBuilder();
+            for (int i = 0; i < pList.size(); i++) {
+                ret.append(pList.get(i) != null ? pList.get(i).toString() : "[null]");
+                if (i < pList.size() - 1) {
+                    ret.append(",");
+                }
+            }
+            return ret.toString();
+        }
+
+        // Convert a number without loss, null is returned if this is not possible
+        private Object convertNumber(Number pValue) {
+            if (valueClass == Double.class) {
+                return pValue.doubleValue();
+            } else if (valueClass == Float.class) {
+                return pValue.floatValue();
+            }
+            if (!(pValue instanceof Long || pValue instanceof Integer ||
+                  pValue instanceof Short || pValue instanceof Byte)) {
+                return null;
+            }
+            long value = pValue.longValue();
+            if (valueClass == Long.class) {
+                return value;
+            } else if (valueClass == Integer.class && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            } else if (valueClass == Short.class && value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return (short) value;
+            } else if (valueClass == Byte.class && value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                return (byte) value;
+            }
+            return null;
+        }
+
+        private Object convertString(String pValue) {
+            if ("[null]".equals(pValue)) {
+                return null;
+            }
+            // Special string value
+            if ("\"\"".equals(pValue)) {
+                if (String.class.getName().equals(type)) {
+                    return "";
+                }
+                throw new IllegalArgumentException("Cannot convert empty string tag to type " + type);
+            }
+            if (extractor == null) {
+                throw new IllegalArgumentException(
+                        "Cannot convert string " + pValue + " to type " +
+                                type + " because no converter could be found");
+            }
+            return extractor.extract(pValue);
+        }
+    }
+
+    // Converter for an array, given as JSON array or as comma separated list
+    private final class ArrayConverter implements Converter {
+        private Class componentType;
+        private Converter elementConverter;
+
+        // Error when resolving the element type, raised when a value is converted
+        private IllegalArgumentException error;
+
+        private ArrayConverter(String pType) {
+            try {
+                componentType = getArrayComponentType(pType);
+                elementConverter = getConverter(componentType.getCanonicalName());
+            } catch (IllegalArgumentException exp) {
+                error = exp;
+            }
+        }
+
+        public Object convert(Object pValue) {
+            if (pValue == null || "[null]".equals(pValue)) {
+                return null;
+            }
+            if (error != null) {
+                throw new IllegalArgumentException(error.getMessage(),error.getCause());
+            }
+            if (pValue instanceof List) {
+                List values = (List) pValue;
+                Object ret = Array.newInstance(componentType,values.size());
+                int i = 0;
+                for (Object value : values) {
+                    Array.set(ret,i++,elementConverter.convert(value));
+                }
+                return ret;
+            }
+            String[] values = split(pValue.toString());
+            Object ret = Array.newInstance(componentType,values.length);
+            int i = 0;
+            for (String value : values) {
+                Array.set(ret,i++,elementConverter.convert(value));
+            }
+            return ret;
+        }
+    }
+
     private static class JSONExtractor implements Extractor {
         public Object extract(String pValue) {
             try {
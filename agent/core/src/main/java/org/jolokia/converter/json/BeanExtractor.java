@@ -6,12 +6,16 @@ import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
 
 import javax.management.AttributeNotFoundException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -54,6 +58,15 @@ public class BeanExtractor implements Extractor {
     ));
     private static final String[] GETTER_PREFIX = new String[] { "get", "is", "has"};
 
+    // Cache of the resolved getters per class. Classes are weakly referenced so that
+    // classes of undeployed applications can be garbage collected. For this, the values must
+    // not refer to classes from other class loaders, so their getter methods are kept only weakly.
+    private final ConcurrentMap<ClassKey,BeanProperties> propertiesCache =
+            new ConcurrentHashMap<ClassKey, BeanProperties>();
+
+    // Keys of collected classes, which are removed from the cache on the next lookup
+    private final ReferenceQueue<Class> collectedClasses = new ReferenceQueue<Class>();
+
 
     public Class getType() {
         return Object.class;
@@ -91,7 +104,7 @@ public class BeanExtractor implements Extractor {
             return pValue;
         } else {
             // For the rest we build up a JSON map with the attributes as keys and the value are
-            List<String> attributes = extractBeanAttributes(pValue);
+            List<String> attributes = getBeanProperties(pValue.getClass()).getAttributes();
             if (attributes != null && attributes.size() > 0) {
                 Map ret = new JSONObject();
                 for (String attribute : attributes) {
@@ -121,10 +134,56 @@ public class BeanExtractor implements Extractor {
         }
     }
 
+    // Get the (cached) properties of a class
+    private BeanProperties getBeanProperties(Class pClass) {
+        removeCollectedClasses();
+        BeanProperties properties = propertiesCache.get(new ClassKey(pClass, null));
+        if (properties == null) {
+            properties = new BeanProperties(pClass, livesAsLongAsAgent(pClass));
+            BeanProperties other = propertiesCache.putIfAbsent(new ClassKey(pClass, collectedClasses), properties);
+            if (other != null) {
+                properties = other;
+            }
+        }
+        return properties;
+    }
+
+    // Get the getter for an attribute. Package local for testing.
+    Method getGetter(Class pClass, String pAttribute) {
+        return getBeanProperties(pClass).getGetter(pClass, pAttribute);
+    }
+
+    private void removeCollectedClasses() {
+        Object key;
+        while ((key = collectedClasses.poll()) != null) {
+            propertiesCache.remove(key);
+        }
+    }
+
+    // Whether the class is loaded by the agent's class loader or one of its parents. Such a class
+    // cannot be unloaded before the agent itself, so its getters can be kept strongly.
+    private static boolean livesAsLongAsAgent(Class pClass) {
+        ClassLoader loader = pClass.getClassLoader();
+        if (loader == null) {
+            return true;
+        }
+        try {
+            for (ClassLoader agentLoader = BeanExtractor.class.getClassLoader();
+                 agentLoader != null; agentLoader = agentLoader.getParent()) {
+                if (agentLoader == loader) {
+                    return true;
+                }
+            }
+        } catch (SecurityException exp) {
+            // Not allowed to look at the parents
+        }
+        return false;
+    }
+
     // Extract all attributes from a given bean
-    private List<String> extractBeanAttributes(Object pValue) {
+    private static List<String> extractBeanAttributes(Class pClass) {
         List<String> attrs = new ArrayList<String>();
-        for (Method method : pValue.getClass().getMethods()) {
+        for (Method method : pClass.getMethods()) {
             if (!Modifier.isStatic(method.getModifiers()) && !IGNORE_METHODS.contains(method.getName())) {
                 addAttributes(attrs, method);
             }
@@ -134,7 +193,7 @@ public class BeanExtractor implements Extractor {
 
     // Add attributes, which are taken from get methods to the given list
     @SuppressWarnings("PMD.UnnecessaryCaseChange")
-    private void addAttributes(List<String> pAttrs, Method pMethod) {
+    private static void addAttributes(List<String> pAttrs, Method pMethod) {
         String name = pMethod.getName();
         for (String pref : GETTER_PREFIX) {
             if (name.startsWith(pref) && name.length() > pref.length()
@@ -152,17 +211,15 @@ public class BeanExtractor implements Extractor {
         }
     }
 
-    private Object extractBeanPropertyValue(Object pValue, String pAttribute, JmxRequest.ValueFaultHandler pFaultHandler)
-            throws AttributeNotFoundException {
-        Class clazz = pValue.getClass();
-
+    // Lookup the getter for an attribute, returns null if none could be found.
+    private static Method lookupGetter(Class pClass, String pAttribute) {
         Method method = null;
 
         String suffix = new StringBuilder(pAttribute.substring(0,1).toUpperCase()).append(pAttribute.substring(1)).toString();
         for (String pref : GETTER_PREFIX) {
             try {
                 String methodName = new StringBuilder(pref).append(suffix).toString();
-                method = clazz.getMethod(methodName);
+                method = pClass.getMethod(methodName);
             } catch (NoSuchMethodException e) {
                 // Try next one
                 continue;
@@ -173,18 +230,38 @@ public class BeanExtractor implements Extractor {
         // Finally, try the attribute name directly
         if (method == null) {
             try {
-                method = clazz.getMethod(new StringBuilder(pAttribute.substring(0,1).toLowerCase())
+                method = pClass.getMethod(new StringBuilder(pAttribute.substring(0,1).toLowerCase())
                         .append(pAttribute.substring(1)).toString());
             } catch (NoSuchMethodException exp) {
                 method = null;
             }
         }
+        if (method != null) {
+            AccessController.doPrivileged(new SetMethodAccessibleAction(method));
+        }
+        return method;
+    }
+
+    // Lookup a getter whose name is already known
+    private static Method lookupGetterByName(Class pClass, String pMethodName) {
+        try {
+            Method method = pClass.getMethod(pMethodName);
+            AccessController.doPrivileged(new SetMethodAccessibleAction(method));
+            return method;
+        } catch (NoSuchMethodException exp) {
+            // Cannot happen, the method was found before
+            return null;
+        }
+    }
+
+    private Object extractBeanPropertyValue(Object pValue, String pAttribute, JmxRequest.ValueFaultHandler pFaultHandler)
+            throws AttributeNotFoundException {
+        Method method = getGetter(pValue.getClass(),pAttribute);
         if (method == null) {
             return pFaultHandler.handleException(new AttributeNotFoundException(
                     "No getter known for attribute " + pAttribute + " for class " + pValue.getClass().getName()));
         }
         try {
-            method.setAccessible(true);
             return method.invoke(pValue);
         } catch (IllegalAccessException e) {
             return pFaultHandler.handleException(new IllegalStateException("Error while extracting " + pAttribute
@@ -240,6 +317,88 @@ public class BeanExtractor implements Extractor {
         return true;
     }
 
+    // Bean attributes of a class along with their getters. The getters are searched only
+    // once, afterwards they are looked up by name if a weakly held method has been collected.
+    // Nothing in here refers to a class which could be unloaded before the agent.
+    private static final class BeanProperties {
+        private final List<String> attributes;
+        private final Map<String,Getter> getters = new ConcurrentHashMap<String, Getter>();
+
+        // Whether the getters can be held strongly
+        private final boolean strong;
+
+        private BeanProperties(Class pClass, boolean pStrong) {
+            attributes = Collections.unmodifiableList(extractBeanAttributes(pClass));
+            strong = pStrong;
+        }
+
+        List<String> getAttributes() {
+            return attributes;
+        }
+
+        // Get the getter for an attribute. Only found getters are cached, since
+        // the attribute names can come from the outside (e.g. via a path)
+        Method getGetter(Class pClass, String pAttribute) {
+            Getter getter = getters.get(pAttribute);
+            Method method = getter != null ? getter.getMethod() : null;
+            if (method == null) {
+                method = getter != null ?
+                        lookupGetterByName(pClass, getter.name) :
+                        lookupGetter(pClass, pAttribute);
+                if (method != null) {
+                    getters.put(pAttribute,new Getter(method, strong));
+                }
+            }
+            return method;
+        }
+    }
+
+    // Name of a getter along with the method, which is held either strongly or weakly.
+    // The methods returned by Class.getMethod() are copies referenced by nobody else, so a
+    // weakly held method is gone with the next garbage collection.
+    private static final class Getter {
+        private final String name;
+        private final Method strongMethod;
+        private final WeakReference<Method> weakMethod;
+
+        private Getter(Method pMethod, boolean pStrong) {
+            name = pMethod.getName();
+            strongMethod = pStrong ? pMethod : null;
+            weakMethod = pStrong ? null : new WeakReference<Method>(pMethod);
+        }
+
+        private Method getMethod() {
+            return strongMethod != null ? strongMethod : weakMethod.get();
+        }
+    }
+
+    // Weak key for a class, compared by identity
+    private static final class ClassKey extends WeakReference<Class> {
+        private final int hash;
+
+        private ClassKey(Class pClass, ReferenceQueue<Class> pQueue) {
+            super(pClass, pQueue);
+            hash = System.identityHashCode(pClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (pOther == this) {
+                return true;
+            }
+            if (!(pOther instanceof ClassKey)) {
+                return false;
+            }
+            Class clazz = get();
+            return clazz != null && clazz == ((ClassKey) pOther).get();
+        }
+    }
+
     // Privileged action for setting the accesibility mode for a method to true
     private static class SetMethodAccessibleAction implements PrivilegedAction<Void> {
         private final Method getMethod;
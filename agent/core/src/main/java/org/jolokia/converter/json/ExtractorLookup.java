@@ -0,0 +1,190 @@
+package org.jolokia.converter.json;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Dispatch table from concrete classes to the extractor responsible for them.
+ *
+ * The first extractor (in the given order) whose type is assignable from a class is
+ * looked up only once per class and then remembered. Classes are weakly referenced,
+ * so that they can be unloaded. A lookup works on a fixed list of extractors, so a new
+ * lookup must be created whenever the extractors change.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+final class ExtractorLookup {
+
+    private final Extractor[] extractors;
+
+    // Extractors for serialization and for setting values
+    private final ClassMap extractorsByClass = new ClassMap();
+    private final ClassMap settersByClass = new ClassMap();
+
+    /**
+     * Create a lookup for the given extractors
+     *
+     * @param pExtractors extractors in the order in which they should be tried
+     */
+    ExtractorLookup(List<Extractor> pExtractors) {
+        extractors = pExtractors.toArray(new Extractor[pExtractors.size()]);
+    }
+
+    /**
+     * Get the extractor for serializing objects of the given class
+     *
+     * @param pClass class to lookup
+     * @return the extractor or <code>null</code> if no extractor is responsible
+     */
+    Extractor getExtractor(Class pClass) {
+        Extractor ret = extractorsByClass.get(pClass);
+        if (ret == null) {
+            ret = find(pClass, false);
+            if (ret != null) {
+                extractorsByClass.put(pClass, ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the extractor for setting a value on objects of the given class
+     *
+     * @param pClass class to lookup
+     * @return the extractor or <code>null</code> if no extractor can set values on this class
+     */
+    Extractor getSetter(Class pClass) {
+        Extractor ret = settersByClass.get(pClass);
+        if (ret == null) {
+            ret = find(pClass, true);
+            if (ret != null) {
+                settersByClass.put(pClass, ret);
+            }
+        }
+        return ret;
+    }
+
+    private Extractor find(Class pClass, boolean pSetter) {
+        for (Extractor extractor : extractors) {
+            if (extractor.getType() != null && extractor.getType().isAssignableFrom(pClass) &&
+                (!pSetter || extractor.canSetValue())) {
+                return extractor;
+            }
+        }
+        return null;
+    }
+
+    // ========================================================================================
+
+    // Concurrent map with weakly referenced classes as keys
+    private static final class ClassMap {
+
+        private final ConcurrentMap<ClassKey,Extractor> map = new ConcurrentHashMap<ClassKey, Extractor>();
+        private final ReferenceQueue<Class> queue = new ReferenceQueue<Class>();
+
+        Extractor get(Class pClass) {
+            return map.get(new LookupKey(pClass));
+        }
+
+        void put(Class pClass, Extractor pExtractor) {
+            // Remove entries for classes which have been garbage collected
+            Reference<? extends Class> stale;
+            while ((stale = queue.poll()) != null) {
+                map.remove(((KeyReference) stale).key);
+            }
+            map.put(new WeakKey(pClass, queue), pExtractor);
+        }
+    }
+
+    // Common part of the keys: Equal if they refer to the same class
+    private abstract static class ClassKey {
+
+        private final int hash;
+
+        ClassKey(Class pClass) {
+            hash = System.identityHashCode(pClass);
+        }
+
+        abstract Class getKeyClass();
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof ClassKey)) {
+                return false;
+            }
+            Class clazz = getKeyClass();
+            return clazz != null && clazz == ((ClassKey) pOther).getKeyClass();
+        }
+    }
+
+    // Key used for lookups only
+    private static final class LookupKey extends ClassKey {
+
+        private final Class clazz;
+
+        LookupKey(Class pClass) {
+            super(pClass);
+            clazz = pClass;
+        }
+
+        Class getKeyClass() {
+            return clazz;
+        }
+    }
+
+    // Key stored in the map
+    private static final class WeakKey extends ClassKey {
+
+        private final KeyReference ref;
+
+        WeakKey(Class pClass, ReferenceQueue<Class> pQueue) {
+            super(pClass);
+            ref = new KeyReference(pClass, pQueue, this);
+        }
+
+        Class getKeyClass() {
+            return ref.get();
+        }
+    }
+
+    // Reference which knows its key so that the key can be removed when the class is gone
+    private static final class KeyReference extends WeakReference<Class> {
+
+        private final WeakKey key;
+
+        KeyReference(Class pClass, ReferenceQueue<Class> pQueue, WeakKey pKey) {
+            super(pClass, pQueue);
+            key = pKey;
+        }
+    }
+}
@@ -8,9 +8,12 @@ import org.jolokia.converter.StringToObjectConverter;
 import static org.jolokia.ConfigKey.*;
 
 import org.jolokia.util.ServiceObjectFactory;
-import org.json.simple.JSONObject;
+import org.json.simple.*;
 import javax.management.AttributeNotFoundException;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 
@@ -47,9 +50,17 @@ public final class ObjectToJsonConverter {
     // List of dedicated handlers used for delegation in serialization/deserializatin
     private List<Extractor> handlers;
 
+    // Dispatch table for the handlers, must be recreated when the handlers change
+    private ExtractorLookup handlerLookup;
+
+    // Types which are serialized directly without asking a handler
+    private Set<Class> directTypes;
+
     private ArrayExtractor arrayExtractor;
 
-    // Thread-Local set in order to prevent infinite recursions
+    // Thread-Local set in order to prevent infinite recursions. The context is kept
+    // and reused for the next request of the same thread. It is cleared after each
+    // request, so that it doesn't keep any serialized object alive
     private ThreadLocal<StackContext> stackContextLocal = new ThreadLocal<StackContext>();
 
     // Used for converting string to objects when setting attributes
@@ -81,6 +92,7 @@ public final class ObjectToJsonConverter {
 
         // Must be last in handlers, used default algorithm
         handlers.add(new BeanExtractor());
+        updateHandlerLookup();
 
         arrayExtractor = new ArrayExtractor();
 
@@ -100,8 +112,36 @@ public final class ObjectToJsonConverter {
      */
     public JSONObject convertToJson(Object pValue, JmxRequest pRequest, boolean pUseValueWithPath)
             throws AttributeNotFoundException {
+        return convertToJson(pValue, pRequest, pUseValueWithPath, false);
+    }
+
+    /**
+     * Convert the return value to a JSON object. If streaming is requested and the value is a map
+     * (like for list requests or for reading multiple attributes), the value is not converted
+     * here. Instead, it is converted entry by entry when the answer gets written via
+     * {@link JSONStreamAware#writeJSONString(Writer)} or {@link ValueSink.Source#writeTo(ValueSink)},
+     * so that the representation of the value is never kept as a whole. The value must not change
+     * until the answer is written.
+     *
+     * @param pValue the value to convert
+     * @param pRequest the original request
+     * @param pUseValueWithPath if set, use the path given within the request to extract the inner value.
+     *        Otherwise, use the path directly
+     * @param pStreaming whether the conversion of the value can be deferred until it is written
+     * @return the converted value
+     * @throws AttributeNotFoundException if within an path an attribute could not be found
+     */
+    public JSONObject convertToJson(Object pValue, JmxRequest pRequest, boolean pUseValueWithPath, boolean pStreaming)
+            throws AttributeNotFoundException {
         Stack<String> extraStack = pUseValueWithPath ? reverseArgs(pRequest) : new Stack<String>();
 
+        if (pStreaming && extraStack.isEmpty() && isStreamable(pValue)) {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("value",new StreamedValue(pValue,pRequest));
+            jsonObject.put("request",pRequest.toJSON());
+            return jsonObject;
+        }
+
         setupContext(pRequest);
 
         try {
@@ -167,7 +207,7 @@ public final class ObjectToJsonConverter {
         } else {
             // Return the objectified value
             return new Object[] {
-                    stringToObjectConverter.convertFromString(pType,pRequest.getValue()),
+                    stringToObjectConverter.convertFromJson(pType,pRequest.getRawValue()),
                     pCurrentValue
             };
         }
@@ -243,7 +283,7 @@ public final class ObjectToJsonConverter {
             return pValue.toString();
         }
         if (pValue != null && pStackContext.alreadyVisited(pValue)) {
-            return "[Reference " + pValue.getClass().getName() + "@" + Integer.toHexString(pValue.hashCode()) + "]";
+            return "[Reference " + pValue.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(pValue)) + "]";
         }
         if (exceededMaxObjects()) {
             return "[Object limit exceeded]";
@@ -254,10 +294,13 @@ public final class ObjectToJsonConverter {
     private Object callHandler(Object pValue, Stack<String> pExtraArgs, boolean pJsonify)
             throws AttributeNotFoundException {
         Class pClazz = pValue.getClass();
-        for (Extractor handler : handlers) {
-            if (handler.getType() != null && handler.getType().isAssignableFrom(pClazz)) {
-                return handler.extractObject(this,pValue,pExtraArgs,pJsonify);
-            }
+        if (pExtraArgs.isEmpty() && directTypes.contains(pClazz)) {
+            // Shortcut for the most common leaf values
+            return pJsonify ? pValue.toString() : pValue;
+        }
+        Extractor handler = handlerLookup.getExtractor(pClazz);
+        if (handler != null) {
+            return handler.extractObject(this,pValue,pExtraArgs,pJsonify);
         }
         throw new IllegalStateException(
                 "Internal error: No handler found for class " + pClazz +
@@ -274,10 +317,9 @@ public final class ObjectToJsonConverter {
         if (clazz.isArray()) {
             return arrayExtractor.setObjectValue(stringToObjectConverter,pInner,pAttribute,pValue);
         }
-        for (Extractor handler : handlers) {
-            if (handler.getType() != null && handler.getType().isAssignableFrom(clazz) && handler.canSetValue()) {
-                return handler.setObjectValue(stringToObjectConverter,pInner,pAttribute,pValue);
-            }
+        Extractor handler = handlerLookup.getSetter(clazz);
+        if (handler != null) {
+            return handler.setObjectValue(stringToObjectConverter,pInner,pAttribute,pValue);
         }
 
         throw new IllegalStateException(
@@ -287,6 +329,45 @@ public final class ObjectToJsonConverter {
 
        }
 
+    // Maps which are serialized by the MapExtractor can be streamed
+    private boolean isStreamable(Object pValue) {
+        return pValue instanceof Map && handlerLookup.getExtractor(pValue.getClass()) instanceof MapExtractor;
+    }
+
+    // Write a value, maps are written entry by entry in the same way as the MapExtractor
+    // converts them. All other values are converted as a whole and written.
+    private void writeValue(Object pValue, Stack<String> pEmptyStack, ValueSink pSink)
+            throws IOException, AttributeNotFoundException {
+        if (!isStreamable(pValue)) {
+            pSink.value(extractObject(pValue,pEmptyStack,true));
+            return;
+        }
+        StackContext stackContext = stackContextLocal.get();
+        String limitReached = checkForLimits(pValue,stackContext);
+        if (limitReached != null) {
+            pSink.value(limitReached);
+            return;
+        }
+        try {
+            stackContext.push(pValue);
+            stackContext.incObjectCount();
+
+            Map<Object,Object> map = (Map<Object,Object>) pValue;
+            // Same number of entries as written by the MapExtractor
+            int size = Math.min(map.size(),getCollectionLength(map.size()) + 1);
+            pSink.startMap(size);
+            Iterator<Map.Entry<Object,Object>> it = map.entrySet().iterator();
+            for (int i = 0; i < size; i++) {
+                Map.Entry entry = it.next();
+                pSink.key(String.valueOf(entry.getKey()));
+                writeValue(entry.getValue(),pEmptyStack,pSink);
+            }
+            pSink.endMap();
+        } finally {
+            stackContext.pop();
+        }
+    }
+
     // Used for testing only. Hence final and package local
     ThreadLocal<StackContext> getStackContextLocal() {
         return stackContextLocal;
@@ -342,7 +423,10 @@ public final class ObjectToJsonConverter {
     }
 
     void clearContext() {
-        stackContextLocal.remove();
+        StackContext stackContext = stackContextLocal.get();
+        if (stackContext != null) {
+            stackContext.clear();
+        }
     }
 
     void setupContext(JmxRequest pRequest) {
@@ -355,8 +439,12 @@ public final class ObjectToJsonConverter {
 
     void setupContext(Integer pMaxDepth, Integer pMaxCollectionSize, Integer pMaxObjects,
                       JmxRequest.ValueFaultHandler pValueFaultHandler) {
-        StackContext stackContext = new StackContext(pMaxDepth,pMaxCollectionSize,pMaxObjects,pValueFaultHandler);
-        stackContextLocal.set(stackContext);
+        StackContext stackContext = stackContextLocal.get();
+        if (stackContext == null) {
+            stackContext = new StackContext();
+            stackContextLocal.set(stackContext);
+        }
+        stackContext.reset(pMaxDepth,pMaxCollectionSize,pMaxObjects,pValueFaultHandler);
     }
 
     private Integer getLimit(Integer pReqValue, Integer pHardLimit) {
@@ -382,6 +470,113 @@ public final class ObjectToJsonConverter {
     }
 
 
+    // Rebuild the dispatch table for the current handlers. Strings and wrapper types are serialized
+    // directly with their string representation, as long as no simplifier takes care of them
+    private void updateHandlerLookup() {
+        handlerLookup = new ExtractorLookup(handlers);
+        directTypes = new HashSet<Class>();
+        for (Class type : DIRECT_TYPE_CANDIDATES) {
+            if (handlerLookup.getExtractor(type) instanceof BeanExtractor) {
+                directTypes.add(type);
+            }
+        }
+    }
+
+    private static final Class[] DIRECT_TYPE_CANDIDATES = new Class[] {
+            String.class,
+            Long.class,
+            Integer.class,
+            Short.class,
+            Byte.class,
+            Double.class,
+            Float.class,
+            Boolean.class
+    };
+
+    // =============================================================================
+
+    /**
+     * Value which is converted when it gets written. The conversion happens with the
+     * limits of the request for which the value was obtained.
+     */
+    private final class StreamedValue implements JSONStreamAware, JSONAware, ValueSink.Source {
+        private final Object value;
+        private final JmxRequest request;
+
+        private StreamedValue(Object pValue, JmxRequest pRequest) {
+            value = pValue;
+            request = pRequest;
+        }
+
+        public void writeTo(ValueSink pSink) throws IOException {
+            setupContext(request);
+            try {
+                writeValue(value,new Stack<String>(),pSink);
+            } catch (AttributeNotFoundException exp) {
+                // Cannot happen, no path is used
+                throw new IllegalStateException("Internal error while serializing " + request + ": " + exp,exp);
+            } finally {
+                clearContext();
+            }
+        }
+
+        public void writeJSONString(Writer pWriter) throws IOException {
+            writeTo(new JsonWriterSink(pWriter));
+        }
+
+        public String toJSONString() {
+            StringWriter writer = new StringWriter();
+            try {
+                writeJSONString(writer);
+            } catch (IOException exp) {
+                throw new IllegalStateException("Cannot write to a StringWriter: " + exp,exp);
+            }
+            return writer.toString();
+        }
+
+        @Override
+        public String toString() {
+            return toJSONString();
+        }
+    }
+
+    /**
+     * Sink writing JSON text
+     */
+    private static final class JsonWriterSink implements ValueSink {
+        private final Writer writer;
+
+        // Whether the next key is the first one of the current map
+        private boolean firstKey;
+
+        private JsonWriterSink(Writer pWriter) {
+            writer = pWriter;
+        }
+
+        public void startMap(int pSize) throws IOException {
+            writer.write('{');
+            firstKey = true;
+        }
+
+        public void key(String pKey) throws IOException {
+            if (!firstKey) {
+                writer.write(',');
+            }
+            firstKey = false;
+            writer.write('"');
+            writer.write(JSONValue.escape(pKey));
+            writer.write("\":");
+        }
+
+        public void endMap() throws IOException {
+            writer.write('}');
+        }
+
+        public void value(Object pValue) throws IOException {
+            JSONValue.writeJSONString(pValue,writer);
+        }
+    }
+
     // =============================================================================
     // Context used for detecting call loops and the like
 
@@ -394,10 +589,24 @@ public final class ObjectToJsonConverter {
             Date.class
     ));
 
+    /**
+     * Context of a single serialization. It holds the objects on the current path, which are
+     * compared by identity for detecting cycles, and the limits for the serialization.
+     * A context is bound to a thread and reused for subsequent serializations, so that
+     * no bookkeeping objects need to be allocated once the context has grown to the
+     * depth of the serialized objects. Between two serializations, a context holds
+     * no references to serialized objects or to the request.
+     */
     static class StackContext {
 
-        private Set objectsInCallStack = new HashSet();
-        private Stack callStack = new Stack();
+        // Path of the objects currently being serialized
+        private Object[] callStack = new Object[16];
+        private int depth;
+
+        // Objects on the path which are checked for cycles. IdentityHashMap doesn't
+        // allocate any entry objects and keeps its table on clear()
+        private final Map<Object,Boolean> objectsInCallStack = new IdentityHashMap<Object, Boolean>();
+
         private Integer maxDepth;
         private Integer maxCollectionSize;
         private Integer maxObjects;
@@ -405,23 +614,56 @@ public final class ObjectToJsonConverter {
         private int objectCount = 0;
         private JmxRequest.ValueFaultHandler valueFaultHandler;
 
-        public StackContext(Integer pMaxDepth, Integer pMaxCollectionSize, Integer pMaxObjects, JmxRequest.ValueFaultHandler pValueFaultHandler) {
+        /**
+         * Prepare this context for a new serialization
+         *
+         * @param pMaxDepth maximum depth or <code>null</code> if not limited
+         * @param pMaxCollectionSize maximum size of collections or <code>null</code> if not limited
+         * @param pMaxObjects maximum number of objects or <code>null</code> if not limited
+         * @param pValueFaultHandler fault handler to use
+         */
+        void reset(Integer pMaxDepth, Integer pMaxCollectionSize, Integer pMaxObjects, JmxRequest.ValueFaultHandler pValueFaultHandler) {
+            clear();
             maxDepth = pMaxDepth;
             maxCollectionSize = pMaxCollectionSize;
             maxObjects = pMaxObjects;
             valueFaultHandler = pValueFaultHandler;
+            objectCount = 0;
+        }
+
+        /**
+         * Release all references to serialized objects and to the request's settings
+         */
+        void clear() {
+            while (depth > 0) {
+                callStack[--depth] = null;
+            }
+            if (!objectsInCallStack.isEmpty()) {
+                objectsInCallStack.clear();
+            }
+            maxDepth = null;
+            maxCollectionSize = null;
+            maxObjects = null;
+            objectCount = 0;
+            valueFaultHandler = null;
         }
 
         void push(Object object) {
-            callStack.push(object);
+            if (depth == callStack.length) {
+                Object[] newStack = new Object[depth * 2];
+                System.arraycopy(callStack, 0, newStack, 0, depth);
+                callStack = newStack;
+            }
+            callStack[depth++] = object;
 
             if (object != null && !SIMPLE_TYPES.contains(object.getClass())) {
-                objectsInCallStack.add(object);
+                objectsInCallStack.put(object, Boolean.TRUE);
             }
         }
 
         Object pop() {
-            Object ret = callStack.pop();
+            Object ret = callStack[--depth];
+            callStack[depth] = null;
             if (ret != null && !SIMPLE_TYPES.contains(ret.getClass())) {
                 objectsInCallStack.remove(ret);
             }
@@ -429,11 +671,11 @@ public final class ObjectToJsonConverter {
         }
 
         boolean alreadyVisited(Object object) {
-            return objectsInCallStack.contains(object);
+            return objectsInCallStack.containsKey(object);
         }
 
         int stackLevel() {
-            return callStack.size();
+            return depth;
         }
 
         public int size() {
@@ -0,0 +1,80 @@
+package org.jolokia.converter.json;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Receiver for a value which is converted while it gets written. This allows
+ * response writers to encode a streamed value directly in their own format,
+ * without going through its JSON text.
+ *
+ * A map is announced with {@link #startMap(int)} and followed by exactly the given
+ * number of {@link #key(String)} calls, each followed by its value. All other values
+ * are already converted and given to {@link #value(Object)}.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public interface ValueSink {
+
+    /**
+     * Start a map
+     *
+     * @param pSize number of entries which will follow
+     * @throws IOException if writing fails
+     */
+    void startMap(int pSize) throws IOException;
+
+    /**
+     * Key of the next map entry. The value of the entry follows.
+     *
+     * @param pKey key of the entry
+     * @throws IOException if writing fails
+     */
+    void key(String pKey) throws IOException;
+
+    /**
+     * End of the map started last
+     *
+     * @throws IOException if writing fails
+     */
+    void endMap() throws IOException;
+
+    /**
+     * A converted value, i.e. <code>null</code>, a string, number, boolean or a
+     * map or list made of these.
+     *
+     * @param pValue value to write
+     * @throws IOException if writing fails
+     */
+    void value(Object pValue) throws IOException;
+
+    /**
+     * A value which can write itself into a sink
+     */
+    interface Source {
+
+        /**
+         * Write this value into the given sink
+         *
+         * @param pSink sink to write to
+         * @throws IOException if writing fails
+         */
+        void writeTo(ValueSink pSink) throws IOException;
+    }
+}
@@ -1,6 +1,7 @@
 package org.jolokia.handler;
 
 import org.jolokia.JmxRequest;
+import org.jolokia.backend.MBeanInfoCache;
 import org.jolokia.config.Restrictor;
 import org.jolokia.converter.StringToObjectConverter;
 
@@ -9,6 +10,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,8 +39,25 @@ import java.util.regex.Pattern;
 public class ExecHandler extends JsonRequestHandler {
     private StringToObjectConverter stringToObjectConverter;
 
+    // Operation with optional signature, e.g. "getText(java.lang.String,int)"
+    private static final Pattern OPERATION_PATTERN = Pattern.compile("^(.*)\\((.*)\\)$");
+
+    // Maximum number of resolved operations to remember
+    private static final int MAX_RESOLVED_OPERATIONS = 1000;
+
+    // Operations already resolved, by MBean name and operation as given in the request. An entry
+    // is valid as long as the MBeanInfo it was resolved from is returned for the MBean. When using
+    // the MBeanInfo cache, this is the case until the MBean gets unregistered.
+    private final ConcurrentMap<OperationKey,OperationAndParamType> resolvedOperations =
+            new ConcurrentHashMap<OperationKey, OperationAndParamType>();
+
     public ExecHandler(Restrictor pRestrictor,StringToObjectConverter pStringToObjectConverter) {
-        super(pRestrictor);
+        this(pRestrictor, pStringToObjectConverter, null);
+    }
+
+    public ExecHandler(Restrictor pRestrictor, StringToObjectConverter pStringToObjectConverter,
+                       MBeanInfoCache pMBeanInfoCache) {
+        super(pRestrictor, pMBeanInfoCache);
         stringToObjectConverter = pStringToObjectConverter;
     }
 
@@ -68,49 +88,81 @@ public class ExecHandler extends JsonRequestHandler {
     @Override
     public Object doHandleRequest(MBeanServerConnection server, JmxRequest request)
             throws InstanceNotFoundException, AttributeNotFoundException, ReflectionException, MBeanException, IOException {
-        OperationAndParamType types = extractOperationTypes(server,request);
+        OperationAndParamType types = getOperationTypes(server,request);
         Object[] params = new Object[types.paramClasses.length];
-        List<String> args = request.getExtraArgs();
+        // Arguments of POST requests are given as JSON values, for GET requests
+        // they are the leading extra arguments
+        List<Object> arguments = request.getArguments();
+        List<?> args = arguments != null ? arguments : request.getExtraArgs();
         if (args.size() != types.paramClasses.length) {
             throw new IllegalArgumentException("Invalid operation parameters. Operation " +
                     request.getOperation() + " on " + request.getObjectName() + " requires " + types.paramClasses.length +
                     " parameters, not " + args.size() + " as given");
         }
         for (int i = 0;i <  types.paramClasses.length; i++) {
-            params[i] = stringToObjectConverter.convertFromString(types.paramClasses[i],args.get(i));
+            params[i] = types.converters[i].convert(args.get(i));
         }
 
         // Remove args from request, so that the rest can be interpreted as path for the return
         // value
-        for (int i = 0; i < types.paramClasses.length; i++) {
-            // Remove from front
-            args.remove(0);
+        if (arguments == null) {
+            for (int i = 0; i < types.paramClasses.length; i++) {
+                // Remove from front
+                args.remove(0);
+            }
         }
 
         return server.invoke(request.getObjectName(),types.operationName,params,types.paramClasses);
     }
 
     /**
-     * Extract the operation and type list from a given request
+     * Lookup the operation and type list for a given request, resolving it if it is not known
+     * yet or if the MBean has changed.
      *
      * @param pServer server from which obtain the MBean type info
      * @param pRequest the exec request
-     * @return combined object containing the operation name and parameter classes
+     * @return combined object containing the operation name, parameter classes and converters
      */
-    private OperationAndParamType extractOperationTypes(MBeanServerConnection pServer, JmxRequest pRequest)
+    private OperationAndParamType getOperationTypes(MBeanServerConnection pServer, JmxRequest pRequest)
             throws ReflectionException, InstanceNotFoundException, IOException {
         if (pRequest.getOperation() == null) {
             throw new IllegalArgumentException("No operation given for exec Request on MBean " + pRequest.getObjectName());
         }
+        MBeanInfo mBeanInfo;
+        try {
+            mBeanInfo = getMBeanInfo(pServer, pRequest.getObjectName());
+        } catch (IntrospectionException e) {
+            throw new IllegalStateException("Cannot extract MBeanInfo for " + pRequest.getObjectNameAsString());
+        }
+        OperationKey key = new OperationKey(pRequest.getObjectName(),pRequest.getOperation());
+        OperationAndParamType types = resolvedOperations.get(key);
+        if (types == null || types.mBeanInfo != mBeanInfo) {
+            types = extractOperationTypes(mBeanInfo,pRequest);
+            if (resolvedOperations.size() >= MAX_RESOLVED_OPERATIONS) {
+                resolvedOperations.clear();
+            }
+            resolvedOperations.put(key,types);
+        }
+        return types;
+    }
+
+    /**
+     * Extract the operation and type list from a given request
+     *
+     * @param pMBeanInfo meta data of the MBean on which the operation is called
+     * @param pRequest the exec request
+     * @return combined object containing the operation name and parameter classes
+     */
+    private OperationAndParamType extractOperationTypes(MBeanInfo pMBeanInfo, JmxRequest pRequest) {
         List<String> opArgs = splitOperation(pRequest.getOperation());
         String operation = opArgs.get(0);
         List<String> types;
         if (opArgs.size() > 1) {
             types = opArgs.subList(1,opArgs.size());
         } else {
-            List<MBeanParameterInfo[]> paramInfos = extractMBeanParameterInfos(pServer, pRequest, operation);
+            List<MBeanParameterInfo[]> paramInfos = extractMBeanParameterInfos(pMBeanInfo, pRequest, operation);
             if (paramInfos.size() == 1) {
-                return new OperationAndParamType(operation,paramInfos.get(0));
+                return new OperationAndParamType(operation,toTypes(paramInfos.get(0)),pMBeanInfo);
             } else {
                 // type requested from the operation
                 throw new IllegalArgumentException(
@@ -118,44 +170,38 @@ public class ExecHandler extends JsonRequestHandler {
             }
         }
 
-        List<MBeanParameterInfo[]> paramInfos = extractMBeanParameterInfos(pServer, pRequest, operation);
+        List<MBeanParameterInfo[]> paramInfos = extractMBeanParameterInfos(pMBeanInfo, pRequest, operation);
         if (!hasMatchingSignature(types, paramInfos)) {
             throw new IllegalArgumentException(
                     "No operation " + pRequest.getOperation() + " on MBean " + pRequest.getObjectNameAsString() + " exists. " +
                             "Known signatures: " + signatureToString(paramInfos));
         }
-        return new OperationAndParamType(operation,types);
+        return new OperationAndParamType(operation,types.toArray(new String[types.size()]),pMBeanInfo);
     }
 
     /**
      * Extract a list of operation signatures which match a certain operation name. The returned list
      * can contain multiple signature in case of overloaded JMX operations.
      *
-     * @param pServer server from where to fetch the MBean info for a given request's object name
+     * @param pMBeanInfo meta data of the MBean given in the request
      * @param pRequest the JMX request
      * @param pOperation the operation whose signature should be extracted
      * @return a list of signature. If the operation is overloaded, this contains mutliple entries,
      *         otherwise only a single entry is contained
      */
-    private List<MBeanParameterInfo[]> extractMBeanParameterInfos(MBeanServerConnection pServer, JmxRequest pRequest,
-                                                                  String pOperation)
-            throws InstanceNotFoundException, ReflectionException, IOException {
-        try {
-            MBeanInfo mBeanInfo = pServer.getMBeanInfo(pRequest.getObjectName());
-            List<MBeanParameterInfo[]> paramInfos = new ArrayList<MBeanParameterInfo[]>();
-            for (MBeanOperationInfo opInfo : mBeanInfo.getOperations()) {
-                if (opInfo.getName().equals(pOperation)) {
-                    paramInfos.add(opInfo.getSignature());
-                }
-            }
-            if (paramInfos.size() == 0) {
-                throw new IllegalArgumentException("No operation " + pOperation +
-                        " found on MBean " + pRequest.getObjectNameAsString());
+    private List<MBeanParameterInfo[]> extractMBeanParameterInfos(MBeanInfo pMBeanInfo, JmxRequest pRequest,
+                                                                  String pOperation) {
+        List<MBeanParameterInfo[]> paramInfos = new ArrayList<MBeanParameterInfo[]>();
+        for (MBeanOperationInfo opInfo : pMBeanInfo.getOperations()) {
+            if (opInfo.getName().equals(pOperation)) {
+                paramInfos.add(opInfo.getSignature());
             }
-            return paramInfos;
-        }  catch (IntrospectionException e) {
-            throw new IllegalStateException("Cannot extract MBeanInfo for " + pRequest.getObjectNameAsString());
         }
+        if (paramInfos.size() == 0) {
+            throw new IllegalArgumentException("No operation " + pOperation +
+                    " found on MBean " + pRequest.getObjectNameAsString());
+        }
+        return paramInfos;
     }
 
     /**
@@ -189,8 +235,7 @@ public class ExecHandler extends JsonRequestHandler {
     // Extract operation and optional type parameters
     private List<String> splitOperation(String pOperation) {
         List<String> ret = new ArrayList<String>();
-        Pattern p = Pattern.compile("^(.*)\\((.*)\\)$");
-        Matcher m = p.matcher(pOperation);
+        Matcher m = OPERATION_PATTERN.matcher(pOperation);
         if (m.matches()) {
             ret.add(m.group(1));
             String[] args = m.group(2).split("\\s*,\\s*");
@@ -226,24 +271,61 @@ public class ExecHandler extends JsonRequestHandler {
         return ret.toString();
     }
 
+    private String[] toTypes(MBeanParameterInfo[] pParameterInfos) {
+        String[] ret = new String[pParameterInfos.length];
+        int i=0;
+        for (MBeanParameterInfo info : pParameterInfos) {
+            ret[i++] = info.getType();
+        }
+        return ret;
+    }
+
     // ==================================================================================
     // Used for parsing
-    private static final class OperationAndParamType {
-        private OperationAndParamType(String pOperationName, List<String> pParamClazzes) {
+    private final class OperationAndParamType {
+        private OperationAndParamType(String pOperationName, String[] pParamClazzes, MBeanInfo pMBeanInfo) {
             operationName = pOperationName;
-            paramClasses = new ArrayList<String>(pParamClazzes).toArray(new String[pParamClazzes.size()]);
+            paramClasses = pParamClazzes;
+            mBeanInfo = pMBeanInfo;
+            converters = new StringToObjectConverter.Converter[paramClasses.length];
+            for (int i = 0; i < paramClasses.length; i++) {
+                converters[i] = stringToObjectConverter.getConverter(paramClasses[i]);
+            }
         }
 
-        private OperationAndParamType(String pOperationName, MBeanParameterInfo[] pParameterInfos) {
-            operationName = pOperationName;
-            paramClasses = new String[pParameterInfos.length];
-            int i=0;
-            for (MBeanParameterInfo info : pParameterInfos) {
-                paramClasses[i++] = info.getType();
-            }
+        private final String operationName;
+        private final String paramClasses[];
+        private final StringToObjectConverter.Converter converters[];
+
+        // Meta data from which the operation was resolved
+        private final MBeanInfo mBeanInfo;
+    }
+
+    // Key for a resolved operation
+    private static final class OperationKey {
+        private final ObjectName name;
+        private final String operation;
+
+        private OperationKey(ObjectName pName, String pOperation) {
+            name = pName;
+            operation = pOperation;
         }
 
-        private String operationName;
-        private String paramClasses[];
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + operation.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof OperationKey)) {
+                return false;
+            }
+            OperationKey other = (OperationKey) pOther;
+            return name.equals(other.name) && operation.equals(other.operation);
+        }
     }
 }
@@ -1,6 +1,7 @@
 package org.jolokia.handler;
 
 import org.jolokia.JmxRequest;
+import org.jolokia.backend.MBeanInfoCache;
 import org.jolokia.config.Restrictor;
 
 import javax.management.*;
@@ -34,8 +35,16 @@ public abstract class JsonRequestHandler {
 
     private final Restrictor restrictor;
 
+    // Cache for MBeanInfos (null if MBeanInfos should always be fetched from the server)
+    private final MBeanInfoCache mBeanInfoCache;
+
     protected JsonRequestHandler(Restrictor pRestrictor) {
+        this(pRestrictor,null);
+    }
+
+    protected JsonRequestHandler(Restrictor pRestrictor, MBeanInfoCache pMBeanInfoCache) {
         restrictor = pRestrictor;
+        mBeanInfoCache = pMBeanInfoCache;
     }
 
 
@@ -162,6 +171,13 @@ public abstract class JsonRequestHandler {
         return true;
     }
 
+    /**
+     * Called when the handler is not used anymore. Override this if the handler
+     * holds resources (like registered listeners) which need to be released.
+     */
+    public void destroy() {
+    }
+
     /**
      * Get the restrictor which is currently active
      *
@@ -171,4 +187,22 @@ public abstract class JsonRequestHandler {
         return restrictor;
     }
 
+    /**
+     * Get the meta data of an MBean, using the MBeanInfo cache if one is configured.
+     *
+     * @param pServer server to query
+     * @param pName MBean name
+     * @return the MBean's meta data
+     * @throws InstanceNotFoundException if the MBean is not registered at the server
+     * @throws IntrospectionException
+     * @throws ReflectionException
+     * @throws IOException
+     */
+    protected MBeanInfo getMBeanInfo(MBeanServerConnection pServer, ObjectName pName)
+            throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+        return mBeanInfoCache != null ?
+                mBeanInfoCache.getMBeanInfo(pServer, pName) :
+                pServer.getMBeanInfo(pName);
+    }
+
 }
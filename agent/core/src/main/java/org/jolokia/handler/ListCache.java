@@ -0,0 +1,343 @@
+package org.jolokia.handler;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.util.*;
+
+import javax.management.*;
+
+import org.jolokia.backend.MBeanInfoCache;
+
+/**
+ * Materialized result of a <code>list</code> request for local MBeanServers.
+ *
+ * The tree (domain -> key property list -> MBean meta data) is built once per
+ * MBeanServer and then kept up to date from the registration notifications of the
+ * {@link MBeanServerDelegate}. Changes are collected when they occur and applied
+ * lazily on the next lookup. A tree returned by a lookup is never modified afterwards
+ * (changes are applied copy-on-write per domain), so it can be serialized without
+ * further locking.
+ *
+ * Since the MBeanInfo of a DynamicMBean can change without any notification, each
+ * MBean's entry expires after the time to live of the {@link MBeanInfoCache} and is
+ * then introspected again.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+class ListCache {
+
+    // Trees per server, servers are weakly referenced. All access is synchronized on this map.
+    private final Map<MBeanServer,ServerTree> trees = new WeakHashMap<MBeanServer, ServerTree>();
+
+    // Cache whose time to live is used for the MBean entries (can be null)
+    private final MBeanInfoCache mBeanInfoCache;
+
+    /**
+     * Create a list cache
+     *
+     * @param pMBeanInfoCache cache whose time to live applies to the MBean entries, too. If null,
+     *        {@link MBeanInfoCache#DEFAULT_TTL} is used.
+     */
+    ListCache(MBeanInfoCache pMBeanInfoCache) {
+        mBeanInfoCache = pMBeanInfoCache;
+    }
+
+    /**
+     * Get the list tree of an MBeanServer, possibly restricted to a domain or a single
+     * MBean.
+     *
+     * @param pServer server to lookup
+     * @param pDomain domain to restrict the tree to or <code>null</code> for all domains
+     * @param pProps canonical key property list to restrict the tree to or <code>null</code> for all
+     *        MBeans within the domain
+     * @return the (restricted) tree or <code>null</code> if the tree for this server cannot be kept
+     *         up to date, since no listener could be registered. <code>null</code> is also returned
+     *         for a restricted lookup as long as the tree has not been built by an unrestricted
+     *         lookup, so that browsing a single domain or MBean doesn't introspect all MBeans.
+     *         Finally, <code>null</code> is returned if MBeanInfos should not be cached at all.
+     * @throws IntrospectionException if an MBean couldn't be introspected
+     * @throws ReflectionException if getting the meta data from a Dynamic MBean fails
+     */
+    Map<String,Map<String,Map>> getTree(MBeanServer pServer, String pDomain, String pProps)
+            throws IntrospectionException, ReflectionException {
+        long ttl = mBeanInfoCache != null ? mBeanInfoCache.getTtl() : MBeanInfoCache.DEFAULT_TTL;
+        if (ttl <= 0) {
+            return null;
+        }
+        ServerTree tree = getServerTree(pServer);
+        if (tree == null || (pDomain != null && !tree.isBuilt())) {
+            return null;
+        }
+        Map<String,Map<String,Map>> full = tree.getSnapshot(pServer, ttl);
+        if (pDomain == null) {
+            return full;
+        }
+        Map<String,Map<String,Map>> ret = new HashMap<String, Map<String, Map>>();
+        Map<String,Map> domain = full.get(pDomain);
+        if (domain != null) {
+            if (pProps == null) {
+                ret.put(pDomain, domain);
+            } else {
+                Map mBean = domain.get(pProps);
+                if (mBean != null) {
+                    ret.put(pDomain, Collections.singletonMap(pProps, mBean));
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Remove all listeners and throw away the cached trees.
+     */
+    void destroy() {
+        synchronized (trees) {
+            for (Map.Entry<MBeanServer,ServerTree> entry : trees.entrySet()) {
+                try {
+                    entry.getKey().removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, entry.getValue());
+                } catch (JMException e) {
+                    // Ok, already gone
+                }
+            }
+            trees.clear();
+        }
+    }
+
+    // Get the tree for a server, registering a listener on first access.
+    private ServerTree getServerTree(MBeanServer pServer) {
+        synchronized (trees) {
+            ServerTree tree = trees.get(pServer);
+            if (tree == null) {
+                tree = new ServerTree();
+                NotificationFilterSupport filter = new NotificationFilterSupport();
+                filter.enableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+                filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+                try {
+                    pServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, tree, filter, null);
+                } catch (InstanceNotFoundException e) {
+                    return null;
+                } catch (RuntimeException e) {
+                    // E.g. a SecurityException
+                    return null;
+                }
+                trees.put(pServer, tree);
+            }
+            return tree;
+        }
+    }
+
+    // ================================================================================
+
+    // Tree for a single server. Must not refer to its server, since it is
+    // the value of a weak map.
+    private static final class ServerTree implements NotificationListener {
+
+        // Published tree, never changed after publication
+        private volatile Map<String,Map<String,Map>> snapshot;
+
+        // Whether changes need to be recorded. Switched on with the first build,
+        // before that there is nothing to update.
+        private volatile boolean tracking;
+
+        // Changes not yet applied to the snapshot. Notifications are delivered
+        // within the registering thread, so only this lock is held there.
+        private final Object changeLock = new Object();
+        private Set<ObjectName> registered = new HashSet<ObjectName>();
+        private Set<ObjectName> unregistered = new HashSet<ObjectName>();
+
+        // Time when each MBean in the snapshot was introspected, oldest first.
+        // Guarded by this tree.
+        private final LinkedHashMap<ObjectName,Long> introspected = new LinkedHashMap<ObjectName, Long>();
+
+        // Time of the oldest introspection within the snapshot
+        private volatile long oldest = Long.MAX_VALUE;
+
+        public void handleNotification(Notification pNotification, Object pHandback) {
+            if (!(pNotification instanceof MBeanServerNotification)) {
+                return;
+            }
+            if (!tracking) {
+                return;
+            }
+            ObjectName name = ((MBeanServerNotification) pNotification).getMBeanName();
+            synchronized (changeLock) {
+                if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(pNotification.getType())) {
+                    unregistered.remove(name);
+                    registered.add(name);
+                } else {
+                    registered.remove(name);
+                    unregistered.add(name);
+                }
+            }
+        }
+
+        // Get an up to date tree. Building and updating is serialized, lookups
+        // with no pending changes and no expired entries only read the published snapshot
+        private Map<String,Map<String,Map>> getSnapshot(MBeanServer pServer, long pTtl)
+                throws IntrospectionException, ReflectionException {
+            Map<String,Map<String,Map>> current = snapshot;
+            if (current != null && !hasChanges() && System.currentTimeMillis() - oldest <= pTtl) {
+                return current;
+            }
+            synchronized (this) {
+                if (snapshot == null) {
+                    // Changes happening while building are applied afterwards.
+                    tracking = true;
+                    takeChanges();
+                    snapshot = build(pServer);
+                }
+                Set<ObjectName>[] changes = takeChanges();
+                if (changes != null) {
+                    snapshot = apply(pServer, snapshot, changes[0], changes[1]);
+                }
+                Set<ObjectName> expired = getExpired(pTtl);
+                if (!expired.isEmpty()) {
+                    // Introspected again, as if they were registered anew
+                    snapshot = apply(pServer, snapshot, expired, Collections.<ObjectName>emptySet());
+                }
+                return snapshot;
+            }
+        }
+
+        // MBeans introspected longer ago than the given time to live
+        private Set<ObjectName> getExpired(long pTtl) {
+            Set<ObjectName> ret = new HashSet<ObjectName>();
+            long limit = System.currentTimeMillis() - pTtl;
+            for (Map.Entry<ObjectName,Long> entry : introspected.entrySet()) {
+                if (entry.getValue() >= limit) {
+                    break;
+                }
+                ret.add(entry.getKey());
+            }
+            return ret;
+        }
+
+        // Remember when an MBean was introspected, moving it to the end
+        private void markIntrospected(ObjectName pName, long pTime) {
+            introspected.remove(pName);
+            introspected.put(pName, pTime);
+        }
+
+        private void updateOldest() {
+            Iterator<Long> it = introspected.values().iterator();
+            oldest = it.hasNext() ? it.next() : Long.MAX_VALUE;
+        }
+
+        private boolean isBuilt() {
+            return snapshot != null;
+        }
+
+        private boolean hasChanges() {
+            synchronized (changeLock) {
+                return !registered.isEmpty() || !unregistered.isEmpty();
+            }
+        }
+
+        // Take over the collected changes, returns null if there are none
+        private Set<ObjectName>[] takeChanges() {
+            synchronized (changeLock) {
+                if (registered.isEmpty() && unregistered.isEmpty()) {
+                    return null;
+                }
+                Set<ObjectName>[] ret = new Set[] { registered, unregistered };
+                registered = new HashSet<ObjectName>();
+                unregistered = new HashSet<ObjectName>();
+                return ret;
+            }
+        }
+
+        private Map<String,Map<String,Map>> build(MBeanServer pServer)
+                throws IntrospectionException, ReflectionException {
+            Map<String,Map<String,Map>> ret = new HashMap<String, Map<String, Map>>();
+            long now = System.currentTimeMillis();
+            for (ObjectName name : (Set<ObjectName>) pServer.queryNames(null,null)) {
+                Map mBeanMap = extractMBeanMap(pServer, name);
+                if (mBeanMap != null) {
+                    markIntrospected(name, now);
+                    Map<String,Map> domain = ret.get(name.getDomain());
+                    if (domain == null) {
+                        domain = new HashMap<String, Map>();
+                        ret.put(name.getDomain(), domain);
+                    }
+                    domain.put(name.getCanonicalKeyPropertyListString(), mBeanMap);
+                }
+            }
+            updateOldest();
+            return ret;
+        }
+
+        // Create a new tree with the given changes, copying only the affected domains.
+        // Registered MBeans which are already gone are removed.
+        private Map<String,Map<String,Map>> apply(MBeanServer pServer, Map<String, Map<String, Map>> pTree,
+                                                  Set<ObjectName> pRegistered, Set<ObjectName> pUnregistered)
+                throws IntrospectionException, ReflectionException {
+            long now = System.currentTimeMillis();
+            Map<ObjectName,Map> added = new HashMap<ObjectName, Map>();
+            Set<ObjectName> removed = new HashSet<ObjectName>(pUnregistered);
+            for (ObjectName name : pRegistered) {
+                Map mBeanMap = extractMBeanMap(pServer, name);
+                if (mBeanMap != null) {
+                    added.put(name, mBeanMap);
+                } else {
+                    removed.add(name);
+                }
+            }
+
+            Map<String,Map<String,Map>> ret = new HashMap<String, Map<String, Map>>(pTree);
+            Set<String> copied = new HashSet<String>();
+            for (ObjectName name : removed) {
+                introspected.remove(name);
+                Map<String,Map> domain = ret.get(name.getDomain());
+                if (domain != null && domain.containsKey(name.getCanonicalKeyPropertyListString())) {
+                    domain = getDomainCopy(ret, copied, name.getDomain());
+                    domain.remove(name.getCanonicalKeyPropertyListString());
+                    if (domain.isEmpty()) {
+                        ret.remove(name.getDomain());
+                    }
+                }
+            }
+            for (Map.Entry<ObjectName,Map> entry : added.entrySet()) {
+                ObjectName name = entry.getKey();
+                markIntrospected(name, now);
+                getDomainCopy(ret, copied, name.getDomain()).put(name.getCanonicalKeyPropertyListString(), entry.getValue());
+            }
+            updateOldest();
+            return ret;
+        }
+
+        private Map<String,Map> getDomainCopy(Map<String,Map<String,Map>> pTree, Set<String> pCopied, String pDomain) {
+            Map<String,Map> domain = pTree.get(pDomain);
+            if (domain == null || !pCopied.contains(pDomain)) {
+                domain = domain != null ? new HashMap<String, Map>(domain) : new HashMap<String, Map>();
+                pTree.put(pDomain, domain);
+                pCopied.add(pDomain);
+            }
+            return domain;
+        }
+
+        // Returns null if the MBean is not registered (anymore)
+        private Map extractMBeanMap(MBeanServer pServer, ObjectName pName)
+                throws IntrospectionException, ReflectionException {
+            try {
+                return ListHandler.extractMBeanMap(pServer.getMBeanInfo(pName));
+            } catch (InstanceNotFoundException exp) {
+                return null;
+            }
+        }
+    }
+}
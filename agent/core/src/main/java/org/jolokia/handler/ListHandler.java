@@ -2,6 +2,7 @@ package org.jolokia.handler;
 
 
 import org.jolokia.JmxRequest;
+import org.jolokia.backend.MBeanInfoCache;
 import org.jolokia.config.Restrictor;
 
 import javax.management.*;
@@ -29,10 +30,13 @@ import java.util.*;
  * Handler for obtaining a list of all available MBeans and its attributes
  * and operations.
  *
- * TODO: Optimize when a path is already given so that only the relevant information
- * is looked up (and the path) removed. Currently, all data is looked up and is truncated
- * afterwards after this handler has been finished. Also, if the path is used here directly,
- * no issue should be the order of attributes. Think also to use the MBean name directly as
+ * For local MBeanServers the result is served from a {@link ListCache}, which is kept
+ * up to date via MBean registration notifications and the time to live of the MBeanInfo cache. If a path is given, only the
+ * requested domain (<code>list/java.lang</code>) or MBean (<code>list/java.lang/type=Memory</code>)
+ * is looked up, either from this cache or, if the cache is not available, by querying
+ * only this domain or MBean. The rest of the path is applied afterwards as usual.
+ *
+ * TODO: Think also to use the MBean name directly as
  * first level and not domain as the first level and the attribute list as second level. This way,
  * the output of a search command could be used directly to obtain the meta information for a single
  * bean directly (however, fetching all meta info for a whole domain is not possible anymore this way but
@@ -56,12 +60,21 @@ public class ListHandler extends JsonRequestHandler {
     private static final String KEY_READ_WRITE = "rw";
     private static final String KEY_ATTRIBUTE = "attr";
 
+    // Materialized list trees of the local MBeanServers
+    private final ListCache listCache;
+
     public JmxRequest.Type getType() {
         return JmxRequest.Type.LIST;
     }
 
     public ListHandler(Restrictor pRestrictor) {
         super(pRestrictor);
+        listCache = new ListCache(null);
+    }
+
+    public ListHandler(Restrictor pRestrictor, MBeanInfoCache pMBeanInfoCache) {
+        super(pRestrictor, pMBeanInfoCache);
+        listCache = new ListCache(pMBeanInfoCache);
     }
 
     @Override
@@ -72,6 +85,9 @@ public class ListHandler extends JsonRequestHandler {
     @Override
     public Object doHandleRequest(Set<MBeanServerConnection> pServers, JmxRequest request)
             throws InstanceNotFoundException, IOException {
+        List<String> path = request.getExtraArgs();
+        String domain = path != null && path.size() > 0 ? path.get(0) : null;
+        String props = path != null && path.size() > 1 ? path.get(1) : null;
         try {
             Map<String /* domain */,
                     Map<String /* props */,
@@ -79,29 +95,16 @@ public class ListHandler extends JsonRequestHandler {
                                     List<String /* names */>>>> ret =
                     new HashMap<String, Map<String, Map<String, List<String>>>>();
             for (MBeanServerConnection server : pServers) {
-                for (Object nameObject : server.queryNames((ObjectName) null,(QueryExp) null)) {
-                    ObjectName name = (ObjectName) nameObject;
-                    Map mBeansMap = getOrCreateMap(ret,name.getDomain());
-                    Map mBeanMap = getOrCreateMap(mBeansMap,name.getCanonicalKeyPropertyListString());
-
-                    try {
-                        MBeanInfo mBeanInfo = server.getMBeanInfo(name);
-                        mBeanMap.put(KEY_DESCRIPTION,mBeanInfo.getDescription());
-                        addAttributes(mBeanMap, mBeanInfo);
-                        addOperations(mBeanMap, mBeanInfo);
-                        addNotifications(mBeanMap, mBeanInfo);
-                        // Trim if needed
-                        if (mBeanMap.size() == 0) {
-                            mBeansMap.remove(name.getCanonicalKeyPropertyListString());
-                            if (mBeansMap.size() == 0) {
-                                ret.remove(name.getDomain());
-                            }
-                        }
-                    } catch (IOException exp) {
-                        // In case of a remote call, IOEcxeption can occur e.g. for
-                        // NonSerializableExceptions
-                        mBeanMap.put(KEY_ERROR,exp);
+                Map<String,Map<String,Map>> tree =
+                        server instanceof MBeanServer ? listCache.getTree((MBeanServer) server, domain, props) : null;
+                if (tree != null) {
+                    if (pServers.size() == 1) {
+                        // Cached tree can be used directly
+                        return tree;
                     }
+                    mergeTree(ret, tree);
+                } else {
+                    addMBeans(ret, server, domain, props);
                 }
             }
             return ret;
@@ -113,7 +116,92 @@ public class ListHandler extends JsonRequestHandler {
 
     }
 
-    private void addNotifications(Map pMBeanMap,MBeanInfo pMBeanInfo) {
+    /**
+     * Remove the listeners used for keeping the list trees up to date
+     */
+    @Override
+    public void destroy() {
+        listCache.destroy();
+    }
+
+    // Add the meta data of all MBeans of a server, or only of the MBeans
+    // of a given domain or of a single MBean
+    private void addMBeans(Map pRet, MBeanServerConnection pServer, String pDomain, String pProps)
+            throws IOException, InstanceNotFoundException, IntrospectionException, ReflectionException {
+        for (Object nameObject : queryNames(pServer, pDomain, pProps)) {
+            ObjectName name = (ObjectName) nameObject;
+            Map mBeansMap = getOrCreateMap(pRet,name.getDomain());
+            Map mBeanMap = getOrCreateMap(mBeansMap,name.getCanonicalKeyPropertyListString());
+
+            try {
+                MBeanInfo mBeanInfo = getMBeanInfo(pServer, name);
+                mBeanMap.putAll(extractMBeanMap(mBeanInfo));
+                // Trim if needed
+                if (mBeanMap.size() == 0) {
+                    mBeansMap.remove(name.getCanonicalKeyPropertyListString());
+                    if (mBeansMap.size() == 0) {
+                        pRet.remove(name.getDomain());
+                    }
+                }
+            } catch (IOException exp) {
+                // In case of a remote call, IOEcxeption can occur e.g. for
+                // NonSerializableExceptions
+                mBeanMap.put(KEY_ERROR,exp);
+            }
+        }
+    }
+
+    // Lookup the names for the given scope. If domain and properties do not form
+    // a valid, non-pattern MBean name, all MBeans are queried and the path is
+    // applied afterwards.
+    private Set queryNames(MBeanServerConnection pServer, String pDomain, String pProps) throws IOException {
+        ObjectName scope = null;
+        if (pDomain != null) {
+            try {
+                scope = new ObjectName(pDomain + ":" + (pProps != null ? pProps : "*"));
+                if (pProps != null) {
+                    if (scope.isPattern()) {
+                        scope = null;
+                    } else {
+                        // Single MBean, no query needed
+                        return pServer.isRegistered(scope) ? Collections.singleton(scope) : Collections.emptySet();
+                    }
+                } else if (scope.isDomainPattern()) {
+                    scope = null;
+                }
+            } catch (MalformedObjectNameException exp) {
+                scope = null;
+            }
+        }
+        return pServer.queryNames(scope,(QueryExp) null);
+    }
+
+    // Merge a cached tree into the result without modifying the cached tree
+    private void mergeTree(Map pRet, Map<String,Map<String,Map>> pTree) {
+        for (Map.Entry<String,Map<String,Map>> domainEntry : pTree.entrySet()) {
+            Map mBeansMap = getOrCreateMap(pRet,domainEntry.getKey());
+            for (Map.Entry<String,Map> mBeanEntry : domainEntry.getValue().entrySet()) {
+                getOrCreateMap(mBeansMap,mBeanEntry.getKey()).putAll(mBeanEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Extract the meta data of a single MBean as it is returned by a <code>list</code> request
+     *
+     * @param pMBeanInfo MBean info to convert
+     * @return map with description, attributes, operations and notifications
+     */
+    static Map extractMBeanMap(MBeanInfo pMBeanInfo) {
+        Map mBeanMap = new HashMap();
+        mBeanMap.put(KEY_DESCRIPTION,pMBeanInfo.getDescription());
+        addAttributes(mBeanMap, pMBeanInfo);
+        addOperations(mBeanMap, pMBeanInfo);
+        addNotifications(mBeanMap, pMBeanInfo);
+        return mBeanMap;
+    }
+
+    private static void addNotifications(Map pMBeanMap,MBeanInfo pMBeanInfo) {
         Map notMap = new HashMap();
         for (MBeanNotificationInfo notInfo : pMBeanInfo.getNotifications()) {
             Map map = new HashMap();
@@ -126,7 +214,7 @@ public class ListHandler extends JsonRequestHandler {
         }
     }
 
-    private void addOperations(Map pMBeanMap, MBeanInfo pMBeanInfo) {
+    private static void addOperations(Map pMBeanMap, MBeanInfo pMBeanInfo) {
         // Extract operations
         Map opMap = new HashMap();
         for (MBeanOperationInfo opInfo : pMBeanInfo.getOperations()) {
@@ -168,7 +256,7 @@ public class ListHandler extends JsonRequestHandler {
         }
     }
 
-    private void addAttributes(Map pMBeanMap, MBeanInfo pMBeanInfo) {
+    private static void addAttributes(Map pMBeanMap, MBeanInfo pMBeanInfo) {
         // Extract attributes
         Map attrMap = new HashMap();
         for (MBeanAttributeInfo attrInfo : pMBeanInfo.getAttributes()) {
@@ -183,7 +271,7 @@ public class ListHandler extends JsonRequestHandler {
         }
     }
 
-    private Map getOrCreateMap(Map pMap, String pKey) {
+    private static Map getOrCreateMap(Map pMap, String pKey) {
         Map nMap = (Map) pMap.get(pKey);
         if (nMap == null) {
             nMap = new HashMap();
@@ -1,6 +1,7 @@
 package org.jolokia.handler;
 
 import org.jolokia.JmxRequest;
+import org.jolokia.backend.MBeanInfoCache;
 import org.jolokia.config.Restrictor;
 
 import javax.management.*;
@@ -36,6 +37,10 @@ public class ReadHandler extends JsonRequestHandler {
         super(pRestrictor);
     }
 
+    public ReadHandler(Restrictor pRestrictor, MBeanInfoCache pMBeanInfoCache) {
+        super(pRestrictor, pMBeanInfoCache);
+    }
+
     @Override
     public JmxRequest.Type getType() {
         return JmxRequest.Type.READ;
@@ -149,9 +154,29 @@ public class ReadHandler extends JsonRequestHandler {
         }
         Map<String,Object> ret = new HashMap<String, Object>();
 
+        // Check restrictions up front so that only allowed attributes
+        // are fetched in a single bulk call
+        List<String> allowedAttributes = new ArrayList<String>();
         for (String attribute : attributes) {
             try {
                 checkRestriction(pMBeanName, attribute);
+                allowedAttributes.add(attribute);
+            } catch (SecurityException e) {
+                ret.put(attribute, pFaultHandler.handleException(e));
+            }
+        }
+
+        if (allowedAttributes.size() > 1) {
+            fetchAttributesInBulk(pServers, pMBeanName, allowedAttributes, ret);
+        }
+
+        // Fetch all attributes one by one, which are not already fetched with the bulk
+        // request. This is also used for getting to the proper exception for a single attribute.
+        for (String attribute : allowedAttributes) {
+            if (ret.containsKey(attribute)) {
+                continue;
+            }
+            try {
                 ret.put(attribute,getAttribute(pServers, pMBeanName, attribute));
             } catch (MBeanException e) {
                 // The fault handler might to decide to rethrow the
@@ -174,6 +199,40 @@ public class ReadHandler extends JsonRequestHandler {
         return ret;
     }
 
+    // Fetch multiple attributes with a single call to getAttributes(). Attributes which
+    // could not be fetched (e.g. because the getter throws an exception) are silently
+    // skipped by the MBeanServer. These are not put into the given result map and need to be
+    // looked up individually afterwards.
+    private void fetchAttributesInBulk(Set<MBeanServerConnection> pServers, ObjectName pMBeanName,
+                                       List<String> pAttributeNames, Map<String, Object> pRet) {
+        String[] names = pAttributeNames.toArray(new String[pAttributeNames.size()]);
+        for (MBeanServerConnection server : pServers) {
+            try {
+                AttributeList attributeList = server.getAttributes(pMBeanName, names);
+                if (attributeList != null) {
+                    for (Object attr : attributeList) {
+                        Attribute attribute = (Attribute) attr;
+                        if (pAttributeNames.contains(attribute.getName())) {
+                            pRet.put(attribute.getName(), attribute.getValue());
+                        }
+                    }
+                }
+                return;
+            } catch (InstanceNotFoundException exp) {
+                // Try next server
+            } catch (ReflectionException exp) {
+                // Fall back to single attribute lookup
+                return;
+            } catch (IOException exp) {
+                // Fall back to single attribute lookup
+                return;
+            } catch (RuntimeException exp) {
+                // Fall back to single attribute lookup
+                return;
+            }
+        }
+    }
+
     private boolean shouldAllAttributesBeFetched(List<String> pAttributeNames) {
        if (pAttributeNames == null || pAttributeNames.size() == 0) {
            return true;
@@ -187,7 +246,7 @@ public class ReadHandler extends JsonRequestHandler {
             IntrospectionException, InstanceNotFoundException, IOException, ReflectionException {
         for (MBeanServerConnection server : pServers) {
             try {
-                return server.getMBeanInfo(pObjectName);
+                return getMBeanInfo(server, pObjectName);
             } catch (InstanceNotFoundException exp) {
                 // Ok, we try the next server ....
             }
@@ -17,6 +17,7 @@ package org.jolokia.handler;
  */
 
 import org.jolokia.JmxRequest;
+import org.jolokia.backend.MBeanInfoCache;
 import org.jolokia.config.Restrictor;
 import org.jolokia.converter.StringToObjectConverter;
 import org.jolokia.converter.json.ObjectToJsonConverter;
@@ -31,33 +32,58 @@ import java.util.Map;
  */
 public class RequestHandlerManager {
 
-    // Map with all json request handlers
-    private static final Map<JmxRequest.Type, JsonRequestHandler> REQUEST_HANDLER_MAP =
+    // Map with all json request handlers. Each manager has its own set of handlers,
+    // since the handlers use the MBeanInfo cache of their dispatcher
+    private final Map<JmxRequest.Type, JsonRequestHandler> requestHandlerMap =
             new HashMap<JmxRequest.Type, JsonRequestHandler>();
 
     public RequestHandlerManager(ObjectToJsonConverter pObjectToJsonConverter,
             StringToObjectConverter pStringToObjectConverter,
             ServerHandle pServerHandle, Restrictor pRestrictor) {
+        this(pObjectToJsonConverter, pStringToObjectConverter, pServerHandle, pRestrictor, null);
+    }
+
+    /**
+     * Create the request handlers
+     *
+     * @param pObjectToJsonConverter converter for serializing return values
+     * @param pStringToObjectConverter converter for deserializing arguments
+     * @param pServerHandle server information used by the version handler
+     * @param pRestrictor restrictor for access control
+     * @param pMBeanInfoCache cache for MBeanInfos used by the handlers, can be null
+     */
+    public RequestHandlerManager(ObjectToJsonConverter pObjectToJsonConverter,
+            StringToObjectConverter pStringToObjectConverter,
+            ServerHandle pServerHandle, Restrictor pRestrictor, MBeanInfoCache pMBeanInfoCache) {
         JsonRequestHandler handlers[] = {
-                new ReadHandler(pRestrictor),
-                new WriteHandler(pRestrictor, pObjectToJsonConverter),
-                new ExecHandler(pRestrictor, pStringToObjectConverter),
-                new ListHandler(pRestrictor),
+                new ReadHandler(pRestrictor, pMBeanInfoCache),
+                new WriteHandler(pRestrictor, pObjectToJsonConverter, pMBeanInfoCache),
+                new ExecHandler(pRestrictor, pStringToObjectConverter, pMBeanInfoCache),
+                new ListHandler(pRestrictor, pMBeanInfoCache),
                 new VersionHandler(pRestrictor, pServerHandle),
                 new SearchHandler(pRestrictor)
         };
         for (JsonRequestHandler handler : handlers) {
-            REQUEST_HANDLER_MAP.put(handler.getType(),handler);
+            requestHandlerMap.put(handler.getType(),handler);
         }
     }
 
     public JsonRequestHandler getRequestHandler(JmxRequest.Type pType) {
-        JsonRequestHandler handler = REQUEST_HANDLER_MAP.get(pType);
+        JsonRequestHandler handler = requestHandlerMap.get(pType);
         if (handler == null) {
             throw new UnsupportedOperationException("Unsupported operation '" + pType + "'");
         }
         return handler;
     }
 
+    /**
+     * Release the resources held by the request handlers
+     */
+    public void destroy() {
+        for (JsonRequestHandler handler : requestHandlerMap.values()) {
+            handler.destroy();
+        }
+    }
+
 
 }
@@ -1,6 +1,7 @@
 package org.jolokia.handler;
 
 import org.jolokia.JmxRequest;
+import org.jolokia.backend.MBeanInfoCache;
 import org.jolokia.config.Restrictor;
 import org.jolokia.converter.json.ObjectToJsonConverter;
 
@@ -36,7 +37,12 @@ public class WriteHandler extends JsonRequestHandler {
     private ObjectToJsonConverter objectToJsonConverter;
 
     public WriteHandler(Restrictor pRestrictor, ObjectToJsonConverter pObjectToJsonConverter) {
-        super(pRestrictor);
+        this(pRestrictor, pObjectToJsonConverter, null);
+    }
+
+    public WriteHandler(Restrictor pRestrictor, ObjectToJsonConverter pObjectToJsonConverter,
+                        MBeanInfoCache pMBeanInfoCache) {
+        super(pRestrictor, pMBeanInfoCache);
         objectToJsonConverter = pObjectToJsonConverter;
     }
 
@@ -79,7 +85,7 @@ public class WriteHandler extends JsonRequestHandler {
         // Old value, will throw an exception if attribute is not known. That's good.
         Object oldValue = server.getAttribute(request.getObjectName(), request.getAttributeName());
 
-        MBeanInfo mInfo = server.getMBeanInfo(request.getObjectName());
+        MBeanInfo mInfo = getMBeanInfo(server, request.getObjectName());
         MBeanAttributeInfo aInfo = null;
         for (MBeanAttributeInfo i : mInfo.getAttributes()) {
             if (i.getName().equals(request.getAttributeName())) {
@@ -1,10 +1,15 @@
 package org.jolokia.history;
 
 import org.json.simple.JSONArray;
+import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.JSONValue;
 
-import java.util.LinkedList;
-import java.io.Serializable;
+import java.io.*;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Map;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -24,59 +29,656 @@ import java.io.Serializable;
 
 
 /**
+ * History values of a single key, kept in a ring buffer.
+ *
+ * As long as only integral numbers (or only doubles) are added, the values are stored
+ * in a primitive <code>long[]</code> (or <code>double[]</code>) array. As soon as another
+ * value type is added, the entry switches to an object array. The buffer grows on demand
+ * up to the maximum number of entries.
+ *
+ * Optionally, a {@link HistoryRetention} limits the age of the raw values and defines rollup
+ * levels. Rollups are updated on every insert of a numeric value and keep min, max, average and
+ * last value per time bucket in fixed size ring buffers, so the memory used is bounded by the
+ * retention policy.
+ *
+ * When a {@link HistoryFile} is used, numeric values are not kept on the heap but in a
+ * slot of the file. If a non numeric value is added, the values are moved back to the heap.
+ * Access must be synchronized on the entry.
+ *
  * @author roland
 * @since Jun 12, 2009
 */
 class HistoryEntry implements Serializable {
 
-    private static final long serialVersionUID = 42L;
+    private static final long serialVersionUID = 43L;
 
+    // Value types stored
+    private static final byte TYPE_EMPTY = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_OBJECT = 3;
+
+    private static final int INITIAL_CAPACITY = 8;
 
-    @SuppressWarnings("PMD.LooseCoupling")
-    private LinkedList<ValueEntry> values;
     private int maxEntries;
 
+    // Ring buffer. 'start' is the index of the oldest value
+    private byte type = TYPE_EMPTY;
+    private long[] timestamps = new long[0];
+    private long[] longValues;
+    private double[] doubleValues;
+    private Object[] objectValues;
+    private int start;
+    private int size;
+
+    // Time based retention, null if only the number of entries is limited
+    private HistoryRetention retention;
+    private Rollup[] rollups;
+
+    // Slot of a history file holding the values instead of the arrays, if any
+    private transient HistoryFile.Slot slot;
+
+    // Time of the last update in seconds, used for evicting the least recently used entries
+    private volatile long lastAccess;
+
     HistoryEntry(int pMaxEntries) {
         maxEntries = pMaxEntries;
-        values = new LinkedList<ValueEntry>();
     }
 
-    public Object jsonifyValues() {
-        JSONArray jValues = new JSONArray();
-        for (ValueEntry vEntry : values) {
-            JSONObject o = new JSONObject();
-            o.put("value",vEntry.getValue());
-            o.put("timestamp",vEntry.getTimestamp());
-            jValues.add(o);
+    HistoryEntry(int pMaxEntries, HistoryRetention pRetention) {
+        maxEntries = pMaxEntries;
+        setRetention(pRetention);
+    }
+
+    /**
+     * Set the time based retention policy. Rollups collected so far are
+     * thrown away if the rollup levels change.
+     *
+     * @param pRetention retention policy or <code>null</code> if no time based retention is required
+     */
+    public void setRetention(HistoryRetention pRetention) {
+        if (pRetention == null ? retention == null : pRetention.equals(retention)) {
+            return;
+        }
+        retention = pRetention;
+        if (pRetention != null && pRetention.getRollupCount() > 0) {
+            rollups = new Rollup[pRetention.getRollupCount()];
+            for (int i = 0; i < rollups.length; i++) {
+                rollups[i] = new Rollup(pRetention.getResolution(i), pRetention.getMaxAge(i));
+            }
+        } else {
+            rollups = null;
+        }
+    }
+
+    /**
+     * Keep the values of this entry in a slot of a history file instead of on the heap.
+     * Values already stored in the slot become the values of this entry, so this must
+     * be called only for a fresh entry. If the slot is too small for the number of entries
+     * to keep, the values are moved to the heap and the slot is released.
+     *
+     * @param pSlot slot to use
+     */
+    void attach(HistoryFile.Slot pSlot) {
+        slot = pSlot;
+        type = pSlot.getType();
+        if (maxEntries > pSlot.getCapacity()) {
+            moveToHeap();
+            return;
+        }
+        slot.setMaxEntries(maxEntries);
+        slot.truncate(maxEntries);
+    }
+
+    /**
+     * Release the file slot of this entry (if any) when the entry is removed from the store.
+     */
+    void dispose() {
+        if (slot != null) {
+            slot.free();
+            slot = null;
+        }
+    }
+
+    /**
+     * Remove raw values which are older than allowed by the retention policy
+     *
+     * @param pNow current time in seconds
+     */
+    public void expire(long pNow) {
+        if (retention == null || retention.getRawMaxAge() <= 0) {
+            return;
+        }
+        long limit = pNow - retention.getRawMaxAge();
+        if (slot != null) {
+            int n = slot.size();
+            int drop = 0;
+            while (drop < n && slot.getTimestamp(drop) < limit) {
+                drop++;
+            }
+            slot.truncate(n - drop);
+            return;
+        }
+        while (size > 0 && timestamps[start] < limit) {
+            if (objectValues != null) {
+                objectValues[start] = null;
+            }
+            start = (start + 1) % timestamps.length;
+            size--;
+        }
+    }
+
+    /**
+     * Get the rollups as JSON: A map with the resolution (in seconds) as key and the list of
+     * buckets (newest first) as value. Each bucket contains its start time ("timestamp"),
+     * "min", "max", "avg", "last" and "count".
+     *
+     * @param pNow current time in seconds
+     * @return rollups or <code>null</code> if no rollups are configured
+     */
+    public JSONObject jsonifyRollups(long pNow) {
+        if (rollups == null) {
+            return null;
         }
-        return jValues;
+        JSONObject ret = new JSONObject();
+        for (Rollup rollup : rollups) {
+            ret.put(Long.toString(rollup.resolution), rollup.toJson(pNow));
+        }
+        return ret;
     }
 
+    /**
+     * Get the difference and the per second rate of a new value compared to the newest value
+     * stored. The values are treated as a monotonically increasing counter: If the new value
+     * is smaller than the stored one, the counter is assumed to have been reset and the new
+     * value itself is taken as difference.
+     *
+     * @param pValue new value, which is not yet added
+     * @param pTime time of the new value in seconds
+     * @return map with "delta", "interval" (seconds since the stored value) and "perSecond" (only
+     *         if the interval is positive) or <code>null</code> if either value is not a number
+     */
+    public JSONObject jsonifyRate(Object pValue, long pTime) {
+        int n = size();
+        if (!(pValue instanceof Number) || n == 0) {
+            return null;
+        }
+        Object last;
+        long lastTime;
+        if (slot != null) {
+            long bits = slot.getBits(n - 1);
+            last = type == TYPE_LONG ? (Object) bits : (Object) Double.longBitsToDouble(bits);
+            lastTime = slot.getTimestamp(n - 1);
+        } else {
+            int idx = (start + n - 1) % timestamps.length;
+            last = getValue(idx);
+            lastTime = timestamps[idx];
+        }
+        if (!(last instanceof Number)) {
+            return null;
+        }
+        Number current = (Number) pValue;
+        Number previous = (Number) last;
+        Number delta;
+        if (getValueType(current) == TYPE_LONG && getValueType(previous) == TYPE_LONG) {
+            long diff = current.longValue() - previous.longValue();
+            delta = diff < 0 ? current.longValue() : diff;
+        } else {
+            double diff = current.doubleValue() - previous.doubleValue();
+            if (Double.isNaN(diff) || Double.isInfinite(diff)) {
+                return null;
+            }
+            delta = diff < 0 ? current.doubleValue() : diff;
+        }
+        long interval = pTime - lastTime;
+        JSONObject ret = new JSONObject();
+        ret.put("delta", delta);
+        ret.put("interval", interval);
+        if (interval > 0) {
+            ret.put("perSecond", delta.doubleValue() / interval);
+        }
+        return ret;
+    }
+
+    /**
+     * Get the values, newest value first. The returned object is a snapshot which can be serialized
+     * directly to JSON (an array of objects with "value" and "timestamp") and is not affected by
+     * later updates.
+     *
+     * @return snapshot of the values
+     */
+    public Object jsonifyValues() {
+        return new ValuesSnapshot(this);
+    }
+
+    int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Remember the time of an access
+     *
+     * @param pTime access time in seconds
+     */
+    void touch(long pTime) {
+        lastAccess = pTime;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
 
     public void setMaxEntries(int pMaxEntries) {
         maxEntries = pMaxEntries;
+        if (slot != null) {
+            if (pMaxEntries > slot.getCapacity()) {
+                // The slot's capacity is fixed, so more values can only be kept on the heap
+                moveToHeap();
+            } else {
+                slot.setMaxEntries(pMaxEntries);
+            }
+        }
     }
 
-
     public void add(Object pObject, long pTime) {
-        values.addFirst(new ValueEntry(pObject,pTime));
-        trim();
+        if (maxEntries <= 0) {
+            return;
+        }
+        byte valueType = getValueType(pObject);
+        if (slot != null) {
+            if (valueType != TYPE_OBJECT && (type == TYPE_EMPTY || type == valueType)) {
+                if (type == TYPE_EMPTY) {
+                    type = valueType;
+                    slot.setType(type);
+                }
+                slot.add(type == TYPE_LONG ?
+                                 ((Number) pObject).longValue() :
+                                 Double.doubleToLongBits((Double) pObject),
+                         pTime);
+                expire(pTime);
+                updateRollups(pObject, pTime);
+                return;
+            }
+            moveToHeap();
+        }
+        if (type == TYPE_EMPTY) {
+            type = valueType;
+            allocate(Math.min(INITIAL_CAPACITY, maxEntries));
+        } else if (type != valueType && type != TYPE_OBJECT) {
+            switchToObjects();
+        }
+        int idx;
+        if (size < timestamps.length) {
+            idx = (start + size) % timestamps.length;
+            size++;
+        } else if (timestamps.length < maxEntries) {
+            resize(Math.min(maxEntries, Math.max(INITIAL_CAPACITY, timestamps.length * 2)));
+            idx = size++;
+        } else {
+            // Full, overwrite the oldest
+            idx = start;
+            start = (start + 1) % timestamps.length;
+        }
+        timestamps[idx] = pTime;
+        if (type == TYPE_LONG) {
+            longValues[idx] = ((Number) pObject).longValue();
+        } else if (type == TYPE_DOUBLE) {
+            doubleValues[idx] = (Double) pObject;
+        } else {
+            objectValues[idx] = pObject;
+        }
+        expire(pTime);
+        updateRollups(pObject, pTime);
     }
 
     public void trim() {
-        // Trim
-        while (values.size() > maxEntries) {
-            values.removeLast();
+        if (slot != null) {
+            slot.truncate(maxEntries);
+            return;
+        }
+        if (size > maxEntries) {
+            // Drop the oldest
+            start = (start + size - maxEntries) % timestamps.length;
+            size = maxEntries;
+        }
+        if (timestamps.length > maxEntries) {
+            resize(Math.max(maxEntries, 0));
         }
     }
 
+    /**
+     * Number of values stored
+     *
+     * @return size
+     */
+    int size() {
+        return slot != null ? slot.size() : size;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append("HistoryEntry");
-        sb.append("{values=").append(values);
+        sb.append("{values=").append(new ValuesSnapshot(this).toJSONString());
         sb.append(", maxEntries=").append(maxEntries);
         sb.append('}');
         return sb.toString();
     }
+
+    // ==================================================================================
+
+    private static byte getValueType(Object pValue) {
+        if (pValue instanceof Long || pValue instanceof Integer ||
+            pValue instanceof Short || pValue instanceof Byte) {
+            return TYPE_LONG;
+        } else if (pValue instanceof Double) {
+            return TYPE_DOUBLE;
+        } else {
+            return TYPE_OBJECT;
+        }
+    }
+
+    private void updateRollups(Object pObject, long pTime) {
+        if (rollups != null && pObject instanceof Number) {
+            double value = ((Number) pObject).doubleValue();
+            if (!Double.isNaN(value)) {
+                for (Rollup rollup : rollups) {
+                    rollup.add(value, pTime);
+                }
+            }
+        }
+    }
+
+    // Copy the values from the file slot into arrays and release the slot
+    private void moveToHeap() {
+        copyFromSlot(slot);
+        dispose();
+    }
+
+    // Copy the values of the given slot into the arrays of this entry
+    private void copyFromSlot(HistoryFile.Slot pSlot) {
+        int n = pSlot.size();
+        if (type != TYPE_EMPTY) {
+            allocate(Math.max(n, Math.min(INITIAL_CAPACITY, maxEntries)));
+            for (int i = 0; i < n; i++) {
+                timestamps[i] = pSlot.getTimestamp(i);
+                if (type == TYPE_LONG) {
+                    longValues[i] = pSlot.getBits(i);
+                } else {
+                    doubleValues[i] = Double.longBitsToDouble(pSlot.getBits(i));
+                }
+            }
+            start = 0;
+            size = n;
+        }
+    }
+
+    // The slot is transient, so a file backed entry is serialized as a heap
+    // entry with the same values
+    private synchronized Object writeReplace() {
+        if (slot == null) {
+            return this;
+        }
+        HistoryEntry copy = new HistoryEntry(maxEntries);
+        copy.retention = retention;
+        copy.rollups = rollups;
+        copy.lastAccess = lastAccess;
+        copy.type = type;
+        copy.copyFromSlot(slot);
+        return copy;
+    }
+
+    private void allocate(int pCapacity) {
+        timestamps = new long[pCapacity];
+        if (type == TYPE_LONG) {
+            longValues = new long[pCapacity];
+        } else if (type == TYPE_DOUBLE) {
+            doubleValues = new double[pCapacity];
+        } else {
+            objectValues = new Object[pCapacity];
+        }
+    }
+
+    // Copy the values in order (oldest first) into new arrays of the given capacity
+    private void resize(int pCapacity) {
+        int len = timestamps.length;
+        long[] newTimestamps = new long[pCapacity];
+        long[] newLongs = longValues != null ? new long[pCapacity] : null;
+        double[] newDoubles = doubleValues != null ? new double[pCapacity] : null;
+        Object[] newObjects = objectValues != null ? new Object[pCapacity] : null;
+        for (int i = 0; i < size; i++) {
+            int idx = (start + i) % len;
+            newTimestamps[i] = timestamps[idx];
+            if (newLongs != null) {
+                newLongs[i] = longValues[idx];
+            } else if (newDoubles != null) {
+                newDoubles[i] = doubleValues[idx];
+            } else if (newObjects != null) {
+                newObjects[i] = objectValues[idx];
+            }
+        }
+        timestamps = newTimestamps;
+        longValues = newLongs;
+        doubleValues = newDoubles;
+        objectValues = newObjects;
+        start = 0;
+    }
+
+    // Switch from primitive storage to objects
+    private void switchToObjects() {
+        Object[] objects = new Object[timestamps.length];
+        for (int i = 0; i < size; i++) {
+            int idx = (start + i) % timestamps.length;
+            objects[idx] = getValue(idx);
+        }
+        objectValues = objects;
+        longValues = null;
+        doubleValues = null;
+        type = TYPE_OBJECT;
+    }
+
+    // Get a value by its index in the arrays
+    private Object getValue(int pIdx) {
+        if (type == TYPE_LONG) {
+            return longValues[pIdx];
+        } else if (type == TYPE_DOUBLE) {
+            return doubleValues[pIdx];
+        } else {
+            return objectValues[pIdx];
+        }
+    }
+
+    // ==================================================================================
+
+    // Aggregated values for a single resolution. The buckets are stored in a ring which
+    // is indexed directly by the bucket's start time.
+    private static final class Rollup implements Serializable {
+
+        private static final long serialVersionUID = 42L;
+
+        private final long resolution;
+        private final long maxAge;
+        private final long[] bucketStart;
+        private final long[] count;
+        private final double[] min;
+        private final double[] max;
+        private final double[] sum;
+        private final double[] last;
+
+        private Rollup(long pResolution, long pMaxAge) {
+            resolution = pResolution;
+            maxAge = pMaxAge;
+            int capacity = (int) (pMaxAge / pResolution) + 1;
+            bucketStart = new long[capacity];
+            Arrays.fill(bucketStart, -1);
+            count = new long[capacity];
+            min = new double[capacity];
+            max = new double[capacity];
+            sum = new double[capacity];
+            last = new double[capacity];
+        }
+
+        private void add(double pValue, long pTime) {
+            long bucket = pTime - pTime % resolution;
+            int idx = (int) ((bucket / resolution) % bucketStart.length);
+            if (bucketStart[idx] > bucket) {
+                // Too old, the slot is already used by a newer bucket
+                return;
+            }
+            if (bucketStart[idx] != bucket) {
+                bucketStart[idx] = bucket;
+                count[idx] = 0;
+                min[idx] = pValue;
+                max[idx] = pValue;
+                sum[idx] = 0;
+            }
+            count[idx]++;
+            min[idx] = Math.min(min[idx], pValue);
+            max[idx] = Math.max(max[idx], pValue);
+            sum[idx] += pValue;
+            last[idx] = pValue;
+        }
+
+        private JSONArray toJson(long pNow) {
+            JSONArray ret = new JSONArray();
+            long current = pNow - pNow % resolution;
+            long limit = pNow - maxAge;
+            for (long bucket = current; bucket >= 0 && bucket + resolution > limit; bucket -= resolution) {
+                int idx = (int) ((bucket / resolution) % bucketStart.length);
+                if (bucketStart[idx] == bucket && count[idx] > 0) {
+                    JSONObject o = new JSONObject();
+                    o.put("timestamp", bucket);
+                    o.put("min", min[idx]);
+                    o.put("max", max[idx]);
+                    o.put("avg", sum[idx] / count[idx]);
+                    o.put("last", last[idx]);
+                    o.put("count", count[idx]);
+                    ret.add(o);
+                }
+            }
+            return ret;
+        }
+    }
+
+    // ==================================================================================
+
+    /**
+     * Immutable copy of the values of an entry, newest first. It is a list of maps
+     * with "value" and "timestamp" for code which wants to inspect the history.
+     * When serialized to JSON, the values are written directly from the copied arrays.
+     */
+    static final class ValuesSnapshot extends AbstractList<Map> implements JSONAware, JSONStreamAware {
+
+        private final byte type;
+        private final long[] timestamps;
+        private final long[] longValues;
+        private final double[] doubleValues;
+        private final Object[] objectValues;
+
+        private ValuesSnapshot(HistoryEntry pEntry) {
+            int n = pEntry.size();
+            type = pEntry.type;
+            timestamps = new long[n];
+            longValues = type == TYPE_LONG ? new long[n] : null;
+            doubleValues = type == TYPE_DOUBLE ? new double[n] : null;
+            objectValues = type == TYPE_OBJECT ? new Object[n] : null;
+            if (pEntry.slot != null) {
+                copyFromSlot(pEntry.slot, n);
+                return;
+            }
+            int len = pEntry.timestamps.length;
+            for (int i = 0; i < n; i++) {
+                // Newest first
+                int idx = (pEntry.start + n - 1 - i) % len;
+                timestamps[i] = pEntry.timestamps[idx];
+                if (longValues != null) {
+                    longValues[i] = pEntry.longValues[idx];
+                } else if (doubleValues != null) {
+                    doubleValues[i] = pEntry.doubleValues[idx];
+                } else if (objectValues != null) {
+                    objectValues[i] = pEntry.objectValues[idx];
+                }
+            }
+        }
+
+        private void copyFromSlot(HistoryFile.Slot pSlot, int pSize) {
+            for (int i = 0; i < pSize; i++) {
+                // Newest first
+                timestamps[i] = pSlot.getTimestamp(pSize - 1 - i);
+                long bits = pSlot.getBits(pSize - 1 - i);
+                if (longValues != null) {
+                    longValues[i] = bits;
+                } else if (doubleValues != null) {
+                    doubleValues[i] = Double.longBitsToDouble(bits);
+                }
+            }
+        }
+
+        @Override
+        public Map get(int pIndex) {
+            JSONObject o = new JSONObject();
+            o.put("value",getValue(pIndex));
+            o.put("timestamp",timestamps[pIndex]);
+            return o;
+        }
+
+        @Override
+        public int size() {
+            return timestamps.length;
+        }
+
+        /**
+         * Get a single value
+         *
+         * @param pIndex index, 0 is the newest value
+         * @return the value
+         */
+        Object getValue(int pIndex) {
+            if (longValues != null) {
+                return longValues[pIndex];
+            } else if (doubleValues != null) {
+                return doubleValues[pIndex];
+            } else {
+                return objectValues[pIndex];
+            }
+        }
+
+        public void writeJSONString(Writer pOut) throws IOException {
+            pOut.write('[');
+            for (int i = 0; i < timestamps.length; i++) {
+                if (i > 0) {
+                    pOut.write(',');
+                }
+                pOut.write("{\"value\":");
+                if (longValues != null) {
+                    pOut.write(Long.toString(longValues[i]));
+                } else if (doubleValues != null) {
+                    double d = doubleValues[i];
+                    pOut.write(Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d));
+                } else {
+                    JSONValue.writeJSONString(objectValues[i], pOut);
+                }
+                pOut.write(",\"timestamp\":");
+                pOut.write(Long.toString(timestamps[i]));
+                pOut.write('}');
+            }
+            pOut.write(']');
+        }
+
+        public String toJSONString() {
+            StringWriter writer = new StringWriter();
+            try {
+                writeJSONString(writer);
+            } catch (IOException e) {
+                // Cannot happen for a StringWriter
+                throw new IllegalStateException("Cannot serialize history: " + e,e);
+            }
+            return writer.toString();
+        }
+
+        @Override
+        public String toString() {
+            return toJSONString();
+        }
+    }
 }
@@ -0,0 +1,428 @@
+package org.jolokia.history;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.*;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * File backed storage for numeric history values, so that the history survives
+ * a restart of the agent.
+ *
+ * The values are kept in memory mapped segment files (<code>history-&lt;n&gt;.seg</code>),
+ * each divided into {@link #SLOTS_PER_SEGMENT} slots of a fixed size. A slot holds the
+ * values of a single history key as a ring of fixed size records (timestamp and value).
+ * The mapping from keys to slots is kept in an append-only index file
+ * (<code>history.idx</code>) which is compacted whenever the file is opened.
+ * The directory is locked exclusively (<code>history.lock</code>) while it is open,
+ * so that it cannot be used by two agents at the same time.
+ *
+ * The number of records per slot is fixed when the files are created. Writing a value
+ * only touches the mapped memory, it is up to the operating system to flush it to disk.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+class HistoryFile {
+
+    // Number of slots within a single segment file
+    static final int SLOTS_PER_SEGMENT = 64;
+
+    // Type marker for a slot which is not in use
+    static final byte FREE = (byte) 0xff;
+
+    // Type marker for a slot in use which has no values yet. The types
+    // of values are defined by the entry using the slot.
+    static final byte EMPTY = 0;
+
+    private static final String INDEX_NAME = "history.idx";
+    private static final String LOCK_NAME = "history.lock";
+    private static final int MAGIC = 0x4a4c4b48;
+    private static final int VERSION = 1;
+
+    // Slot header: type (byte), pad (3), max entries (int), size (int), pad (4), count (long)
+    private static final int HEADER_SIZE = 24;
+    private static final int OFF_TYPE = 0;
+    private static final int OFF_MAX_ENTRIES = 4;
+    private static final int OFF_SIZE = 8;
+    private static final int OFF_COUNT = 16;
+
+    // Record: timestamp (long), value (long or double bits)
+    private static final int RECORD_SIZE = 16;
+
+    private final File directory;
+    private final int capacity;
+    private final int slotSize;
+
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+    private DataOutputStream index;
+    private final List<RandomAccessFile> segmentFiles = new ArrayList<RandomAccessFile>();
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    private final LinkedList<Integer> freeSlots = new LinkedList<Integer>();
+
+    // Slots found when opening the file
+    private final Map<HistoryKey,Slot> restored = new HashMap<HistoryKey, Slot>();
+
+    /**
+     * Open a history file within the given directory. The directory is created if
+     * it doesn't exist yet. If there is already a history, it is loaded.
+     *
+     * @param pDirectory directory holding the files
+     * @param pCapacity number of values per key for a new history. For an existing
+     *        history, the number of values given on creation is used.
+     * @throws IOException if the files cannot be opened or are corrupt or if the
+     *         directory is already in use by another history file
+     */
+    HistoryFile(File pDirectory, int pCapacity) throws IOException {
+        directory = pDirectory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create history directory " + directory);
+        }
+        lock();
+        File indexFile = new File(directory, INDEX_NAME);
+        Map<Integer,HistoryKey> keys = new HashMap<Integer, HistoryKey>();
+        try {
+            capacity = indexFile.exists() ? readIndex(indexFile, keys) : Math.max(pCapacity, 1);
+            slotSize = HEADER_SIZE + capacity * RECORD_SIZE;
+            for (int i = 0; new File(directory, segmentName(i)).exists(); i++) {
+                mapSegment(i);
+            }
+            for (int i = 0; i < segments.size() * SLOTS_PER_SEGMENT; i++) {
+                Slot slot = createSlot(i);
+                HistoryKey key = keys.get(i);
+                if (key != null && slot.getType() != FREE && !restored.containsKey(key)) {
+                    restored.put(key, slot);
+                } else {
+                    slot.setType(FREE);
+                    freeSlots.add(i);
+                }
+            }
+            writeIndex(indexFile);
+        } catch (IOException exp) {
+            // Release the lock again
+            close();
+            throw exp;
+        }
+    }
+
+    /**
+     * Get the slots which have been found when opening the history
+     *
+     * @return map of keys to slots
+     */
+    Map<HistoryKey,Slot> getRestoredSlots() {
+        return restored;
+    }
+
+    /**
+     * Allocate a slot for a new key
+     *
+     * @param pKey key for which to allocate the slot
+     * @return the empty slot
+     * @throws IOException if the index cannot be written or a segment cannot be created
+     */
+    synchronized Slot allocate(HistoryKey pKey) throws IOException {
+        if (index == null) {
+            throw new IOException("History file " + directory + " is already closed");
+        }
+        if (freeSlots.isEmpty()) {
+            int segment = segments.size();
+            mapSegment(segment);
+            for (int i = 0; i < SLOTS_PER_SEGMENT; i++) {
+                freeSlots.add(segment * SLOTS_PER_SEGMENT + i);
+            }
+        }
+        int nr = freeSlots.removeFirst();
+        // Index first, so that the slot is not taken for its previous key after a crash
+        index.writeInt(nr);
+        pKey.writeTo(index);
+        index.flush();
+        Slot slot = createSlot(nr);
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * Flush and close all files. The history cannot be used afterwards.
+     */
+    synchronized void close() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        for (RandomAccessFile file : segmentFiles) {
+            closeQuietly(file);
+        }
+        closeQuietly(index);
+        index = null;
+        if (lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                // Released anyway when the file gets closed
+            }
+            lock = null;
+        }
+        closeQuietly(lockFile);
+        lockFile = null;
+    }
+
+    /**
+     * Number of records per slot
+     *
+     * @return capacity
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    // ========================================================================================
+
+    // Lock the directory. The lock is held until the file gets closed.
+    private void lock() throws IOException {
+        lockFile = new RandomAccessFile(new File(directory, LOCK_NAME), "rw");
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException exp) {
+            // Already locked within this VM
+            lock = null;
+        }
+        if (lock == null) {
+            closeQuietly(lockFile);
+            lockFile = null;
+            throw new IOException("History directory " + directory + " is already in use");
+        }
+    }
+
+    private synchronized void free(Slot pSlot) {
+        pSlot.setType(FREE);
+        freeSlots.add(pSlot.nr);
+    }
+
+    private Slot createSlot(int pNr) {
+        ByteBuffer buffer = segments.get(pNr / SLOTS_PER_SEGMENT).duplicate();
+        int offset = (pNr % SLOTS_PER_SEGMENT) * slotSize;
+        buffer.position(offset);
+        buffer.limit(offset + slotSize);
+        return new Slot(this, pNr, buffer.slice());
+    }
+
+    private void mapSegment(int pSegment) throws IOException {
+        File file = new File(directory, segmentName(pSegment));
+        boolean created = !file.exists();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long size = (long) slotSize * SLOTS_PER_SEGMENT;
+        if (!created && raf.length() != size) {
+            closeQuietly(raf);
+            throw new IOException("Segment " + file + " has size " + file.length() + " instead of " + size);
+        }
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (created) {
+            for (int i = 0; i < SLOTS_PER_SEGMENT; i++) {
+                buffer.put(i * slotSize + OFF_TYPE, FREE);
+            }
+        }
+        segmentFiles.add(raf);
+        segments.add(buffer);
+    }
+
+    private String segmentName(int pSegment) {
+        return "history-" + pSegment + ".seg";
+    }
+
+    // Read all key records from the index, the last record for a slot wins.
+    // A truncated last record (e.g. after a crash) is ignored. Returns the capacity
+    private int readIndex(File pFile, Map<Integer,HistoryKey> pKeys) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(pFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Invalid history index " + pFile);
+            }
+            int ret = in.readInt();
+            try {
+                while (true) {
+                    int slot = in.readInt();
+                    pKeys.put(slot, HistoryKey.readFrom(in));
+                }
+            } catch (EOFException exp) {
+                // Done
+            }
+            return ret;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    // Write a compacted index with the restored keys only and keep it open for appending.
+    private void writeIndex(File pFile) throws IOException {
+        File tmp = new File(directory, INDEX_NAME + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(capacity);
+            for (Map.Entry<HistoryKey,Slot> entry : restored.entrySet()) {
+                out.writeInt(entry.getValue().nr);
+                entry.getKey().writeTo(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (pFile.exists() && !pFile.delete() || !tmp.renameTo(pFile)) {
+            throw new IOException("Cannot replace history index " + pFile);
+        }
+        index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pFile, true)));
+    }
+
+    private void closeQuietly(Closeable pCloseable) {
+        if (pCloseable != null) {
+            try {
+                pCloseable.close();
+            } catch (IOException e) {
+                // Nothing we can do about
+            }
+        }
+    }
+
+    // ========================================================================================
+
+    /**
+     * Values of a single key, stored as ring of records. Only the newest <code>size</code>
+     * records are valid. Access must be synchronized by the caller.
+     */
+    static final class Slot {
+
+        private final HistoryFile file;
+        private final int nr;
+        private final ByteBuffer buffer;
+        private final int capacity;
+
+        private Slot(HistoryFile pFile, int pNr, ByteBuffer pBuffer) {
+            file = pFile;
+            nr = pNr;
+            buffer = pBuffer;
+            capacity = pFile.capacity;
+        }
+
+        byte getType() {
+            return buffer.get(OFF_TYPE);
+        }
+
+        void setType(byte pType) {
+            buffer.put(OFF_TYPE, pType);
+        }
+
+        int getMaxEntries() {
+            return buffer.getInt(OFF_MAX_ENTRIES);
+        }
+
+        /**
+         * Number of values which fit into this slot. This is fixed when the history file
+         * is created.
+         *
+         * @return capacity
+         */
+        int getCapacity() {
+            return capacity;
+        }
+
+        void setMaxEntries(int pMaxEntries) {
+            buffer.putInt(OFF_MAX_ENTRIES, pMaxEntries);
+        }
+
+        int size() {
+            return buffer.getInt(OFF_SIZE);
+        }
+
+        /**
+         * Append a value, dropping the oldest one if the slot is full
+         *
+         * @param pBits value as long or as raw double bits
+         * @param pTime timestamp of the value
+         */
+        void add(long pBits, long pTime) {
+            long count = buffer.getLong(OFF_COUNT);
+            int offset = offset(count);
+            buffer.putLong(offset, pTime);
+            buffer.putLong(offset + 8, pBits);
+            buffer.putLong(OFF_COUNT, count + 1);
+            int max = Math.min(capacity, getMaxEntries());
+            buffer.putInt(OFF_SIZE, Math.min(size() + 1, max));
+        }
+
+        /**
+         * Timestamp of a value
+         *
+         * @param pIndex index of the value, 0 is the oldest
+         * @return timestamp
+         */
+        long getTimestamp(int pIndex) {
+            return buffer.getLong(offset(position(pIndex)));
+        }
+
+        /**
+         * Get a value
+         *
+         * @param pIndex index of the value, 0 is the oldest
+         * @return value as long or as raw double bits
+         */
+        long getBits(int pIndex) {
+            return buffer.getLong(offset(position(pIndex)) + 8);
+        }
+
+        /**
+         * Drop the oldest values so that at most the given number of values remain
+         *
+         * @param pSize number of values to keep
+         */
+        void truncate(int pSize) {
+            if (pSize < size()) {
+                buffer.putInt(OFF_SIZE, Math.max(pSize, 0));
+            }
+        }
+
+        /**
+         * Clear the slot and put it into use
+         */
+        void clear() {
+            buffer.putLong(OFF_COUNT, 0);
+            buffer.putInt(OFF_SIZE, 0);
+            setType(EMPTY);
+        }
+
+        /**
+         * Give the slot back to the file. It must not be used afterwards.
+         */
+        void free() {
+            file.free(this);
+        }
+
+        private long position(int pIndex) {
+            return buffer.getLong(OFF_COUNT) - size() + pIndex;
+        }
+
+        private int offset(long pPosition) {
+            return HEADER_SIZE + (int) (pPosition % capacity) * RECORD_SIZE;
+        }
+    }
+}
@@ -4,6 +4,9 @@ import org.jolokia.JmxRequest;
 import org.jolokia.JmxRequest.Type;
 import static org.jolokia.JmxRequest.Type.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import javax.management.MalformedObjectNameException;
@@ -106,6 +109,15 @@ public class HistoryKey implements Serializable {
         return mBean.isPattern();
     }
 
+    /**
+     * MBean name (or pattern) of this key
+     *
+     * @return MBean name
+     */
+    ObjectName getMBean() {
+        return mBean;
+    }
+
     /**
      * Whether the key matches the given MBean name
      *
@@ -116,6 +128,53 @@ public class HistoryKey implements Serializable {
         return mBean.apply(pKey.mBean);
     }
 
+    /**
+     * Write this key in a compact binary form
+     *
+     * @param pOut output to write to
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutput pOut) throws IOException {
+        pOut.writeBoolean("operation".equals(type));
+        pOut.writeUTF(mBean.getCanonicalName());
+        pOut.writeUTF(secondary);
+        writeOptional(pOut, path);
+        writeOptional(pOut, target);
+    }
+
+    /**
+     * Read a key written by {@link #writeTo(DataOutput)}
+     *
+     * @param pIn input to read from
+     * @return the key read
+     * @throws IOException if reading fails or the key is invalid
+     */
+    static HistoryKey readFrom(DataInput pIn) throws IOException {
+        boolean operation = pIn.readBoolean();
+        String mBean = pIn.readUTF();
+        String secondary = pIn.readUTF();
+        String path = readOptional(pIn);
+        String target = readOptional(pIn);
+        try {
+            return operation ?
+                    new HistoryKey(mBean, secondary, target) :
+                    new HistoryKey(mBean, secondary, path, target);
+        } catch (MalformedObjectNameException e) {
+            throw new IOException("Invalid MBean name " + mBean + " in history key: " + e);
+        }
+    }
+
+    private static void writeOptional(DataOutput pOut, String pValue) throws IOException {
+        pOut.writeBoolean(pValue != null);
+        if (pValue != null) {
+            pOut.writeUTF(pValue);
+        }
+    }
+
+    private static String readOptional(DataInput pIn) throws IOException {
+        return pIn.readBoolean() ? pIn.readUTF() : null;
+    }
+
     // CHECKSTYLE:OFF
     @Override
     @SuppressWarnings("PMD.IfStmtsMustUseBraces")
@@ -0,0 +1,191 @@
+package org.jolokia.history;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Time based retention policy for a history entry. It consists of a maximum age
+ * for the raw values and an optional list of rollup levels. Each level aggregates the
+ * values into buckets of a fixed resolution (min, max, average and last value) and
+ * keeps these buckets for a certain time.
+ *
+ * The policy is given as a comma separated list. <code>raw=&lt;age&gt;</code> sets the
+ * maximum age of raw values, <code>&lt;resolution&gt;=&lt;age&gt;</code> adds a rollup level.
+ * Durations are given in seconds or with a unit (<code>s</code>, <code>m</code>, <code>h</code>
+ * or <code>d</code>). E.g. <code>raw=5m,1m=1h,10m=1d</code> keeps raw values for 5 minutes,
+ * 1-minute buckets for an hour and 10-minute buckets for a day.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public final class HistoryRetention implements Serializable {
+
+    private static final long serialVersionUID = 42L;
+
+    private static final Pattern DURATION_PATTERN = Pattern.compile("^\\s*(\\d+)\\s*([smhd]?)\\s*$");
+
+    // Max age of raw values in seconds, 0 if unlimited
+    private final long rawMaxAge;
+
+    // Rollup levels, sorted by resolution
+    private final long[] resolutions;
+    private final long[] maxAges;
+
+    /**
+     * Create a retention policy
+     *
+     * @param pRawMaxAge maximum age of the raw values in seconds (0 for no age limit)
+     * @param pRollups rollup levels as map from resolution to maximum age (both in seconds)
+     */
+    public HistoryRetention(long pRawMaxAge, Map<Long,Long> pRollups) {
+        rawMaxAge = pRawMaxAge;
+        SortedMap<Long,Long> sorted = new TreeMap<Long, Long>(pRollups != null ? pRollups : Collections.<Long, Long>emptyMap());
+        resolutions = new long[sorted.size()];
+        maxAges = new long[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Long,Long> entry : sorted.entrySet()) {
+            if (entry.getKey() <= 0 || entry.getValue() < entry.getKey()) {
+                throw new IllegalArgumentException("Invalid rollup " + entry.getKey() + "s for " + entry.getValue() +
+                                                   "s: Resolution must be positive and not larger than the retention time");
+            }
+            resolutions[i] = entry.getKey();
+            maxAges[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * Parse a retention policy as described in the class description
+     *
+     * @param pSpec policy to parse
+     * @return the parsed policy or <code>null</code> if the given spec is null or empty
+     * @throws IllegalArgumentException if the spec cannot be parsed
+     */
+    public static HistoryRetention parse(String pSpec) {
+        if (pSpec == null || pSpec.trim().length() == 0) {
+            return null;
+        }
+        long rawMaxAge = 0;
+        Map<Long,Long> rollups = new HashMap<Long, Long>();
+        for (String part : pSpec.split(",")) {
+            String[] kv = part.split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Invalid retention " + part + " in " + pSpec +
+                                                   " (expected <resolution>=<age> or raw=<age>)");
+            }
+            long age = parseDuration(kv[1]);
+            if ("raw".equals(kv[0].trim())) {
+                rawMaxAge = age;
+            } else {
+                rollups.put(parseDuration(kv[0]), age);
+            }
+        }
+        return new HistoryRetention(rawMaxAge, rollups);
+    }
+
+    /**
+     * Maximum age of raw values in seconds
+     *
+     * @return max age or 0 if there is no age limit
+     */
+    public long getRawMaxAge() {
+        return rawMaxAge;
+    }
+
+    /**
+     * Number of rollup levels
+     *
+     * @return rollup levels
+     */
+    public int getRollupCount() {
+        return resolutions.length;
+    }
+
+    /**
+     * Resolution of a rollup level
+     *
+     * @param pLevel level index
+     * @return bucket size in seconds
+     */
+    public long getResolution(int pLevel) {
+        return resolutions[pLevel];
+    }
+
+    /**
+     * Retention time of a rollup level
+     *
+     * @param pLevel level index
+     * @return time in seconds for which the buckets are kept
+     */
+    public long getMaxAge(int pLevel) {
+        return maxAges[pLevel];
+    }
+
+    private static long parseDuration(String pDuration) {
+        Matcher matcher = DURATION_PATTERN.matcher(pDuration);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid duration " + pDuration);
+        }
+        long value = Long.parseLong(matcher.group(1));
+        String unit = matcher.group(2);
+        if ("m".equals(unit)) {
+            return value * 60;
+        } else if ("h".equals(unit)) {
+            return value * 60 * 60;
+        } else if ("d".equals(unit)) {
+            return value * 60 * 60 * 24;
+        } else {
+            return value;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HistoryRetention other = (HistoryRetention) o;
+        return rawMaxAge == other.rawMaxAge &&
+               Arrays.equals(resolutions, other.resolutions) &&
+               Arrays.equals(maxAges, other.maxAges);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (rawMaxAge ^ (rawMaxAge >>> 32));
+        result = 31 * result + Arrays.hashCode(resolutions);
+        result = 31 * result + Arrays.hashCode(maxAges);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder ret = new StringBuilder("raw=").append(rawMaxAge);
+        for (int i = 0; i < resolutions.length; i++) {
+            ret.append(",").append(resolutions[i]).append("=").append(maxAges[i]);
+        }
+        return ret.toString();
+    }
+}
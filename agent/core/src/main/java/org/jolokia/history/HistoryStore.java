@@ -1,12 +1,17 @@
 package org.jolokia.history;
 
-import java.io.Serializable;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
+import org.jolokia.ConfigKey;
 import org.jolokia.JmxRequest;
+import org.jolokia.util.ObjectNamePatternIndex;
 import org.json.simple.JSONObject;
 
 import static org.jolokia.JmxRequest.Type.*;
@@ -31,6 +36,20 @@ import static org.jolokia.JmxRequest.Type.*;
 /**
  * Store for remembering old values.
  *
+ * The store is updated for every request, so the update path doesn't lock the store as a
+ * whole: entries are kept in a concurrent map and each entry is locked on its own.
+ * The pattern table is replaced as a whole on every change (copy-on-write), together
+ * with an index for finding the pattern matching a key. If no history
+ * is configured at all, an update only adds the timestamp. Configuration changes are
+ * serialized on the store.
+ *
+ * Optionally, numeric values can be kept in a memory mapped {@link HistoryFile} instead of
+ * on the heap. The history is then reloaded when the store is created again for the same
+ * directory (e.g. after a restart of the agent).
+ *
+ * The total number of values reserved by all keys can be limited. If a new key exceeds this
+ * limit, the least recently updated keys are evicted until 90% of the limit are reached.
+ *
  * @author roland
  * @since Jun 12, 2009
  */
@@ -39,13 +58,32 @@ public class HistoryStore implements Serializable {
     private static final long serialVersionUID = 42L;
 
     // Hard limit for number of entries for a single history track
-    private int globalMaxEntries;
+    private volatile int globalMaxEntries;
+
+    private volatile ConcurrentMap<HistoryKey, HistoryEntry> historyStore;
+
+    // Never modified, replaced on change
+    private volatile Map<HistoryKey, PatternConfig> patterns;
+
+    // Index for finding the pattern matching a key, rebuilt when the patterns change
+    private transient volatile ObjectNamePatternIndex<PatternConfig> patternIndex;
+
+    // File holding the values, null if kept on the heap only
+    private transient HistoryFile historyFile;
+
+    // Limit for the sum of the maximum entries of all keys, 0 if unlimited
+    private volatile int maxTotalEntries;
 
-    private Map<HistoryKey, HistoryEntry> historyStore;
-    private Map<HistoryKey, Integer /* max entries */> patterns;
+    // Sum of the maximum entries of all keys
+    private final AtomicLong totalEntries = new AtomicLong();
+
+    // Number of keys evicted because of the total limit
+    private final AtomicLong evictions = new AtomicLong();
 
     // Keys used in JSON representation
     private static final String KEY_HISTORY = "history";
+    private static final String KEY_ROLLUPS = "rollups";
+    private static final String KEY_RATE = "rate";
     private static final String KEY_VALUE = "value";
     private static final String KEY_TIMESTAMP = "timestamp";
 
@@ -57,15 +95,38 @@ public class HistoryStore implements Serializable {
      */
     public HistoryStore(int pTotalMaxEntries) {
         globalMaxEntries = pTotalMaxEntries;
-        historyStore = new HashMap<HistoryKey, HistoryEntry>();
-        patterns = new HashMap<HistoryKey, Integer>();
+        historyStore = new ConcurrentHashMap<HistoryKey, HistoryEntry>();
+        setPatterns(Collections.<HistoryKey, PatternConfig>emptyMap());
+    }
+
+    /**
+     * Constructor for a history store which keeps numeric values in memory mapped files
+     * within the given directory. If the directory already contains a history, it is loaded and
+     * all keys stored are tracked again with their last configured number of entries.
+     *
+     * @param pTotalMaxEntries number of entries to hold at max. This is also the number of values
+     *        reserved per key when the history file is created.
+     * @param pDirectory directory holding the history files
+     * @throws IOException if the history files cannot be opened
+     */
+    public HistoryStore(int pTotalMaxEntries, File pDirectory) throws IOException {
+        this(pTotalMaxEntries);
+        historyFile = new HistoryFile(pDirectory, pTotalMaxEntries);
+        for (Map.Entry<HistoryKey,HistoryFile.Slot> restored : historyFile.getRestoredSlots().entrySet()) {
+            HistoryFile.Slot slot = restored.getValue();
+            HistoryEntry entry = new HistoryEntry(Math.min(slot.getMaxEntries(), globalMaxEntries));
+            entry.attach(slot);
+            entry.touch(System.currentTimeMillis() / 1000);
+            historyStore.put(restored.getKey(), entry);
+            totalEntries.addAndGet(entry.getMaxEntries());
+        }
     }
 
     /**
      * Get the number
      * @return
      */
-    public synchronized int getGlobalMaxEntries() {
+    public int getGlobalMaxEntries() {
         return globalMaxEntries;
     }
 
@@ -78,9 +139,57 @@ public class HistoryStore implements Serializable {
         globalMaxEntries = pGlobalMaxEntries;
         // Refresh all entries
         for (HistoryEntry entry : historyStore.values()) {
-            entry.setMaxEntries(globalMaxEntries);
-            entry.trim();
+            setMaxEntries(entry, globalMaxEntries);
         }
+        evictIfNeeded(null);
+    }
+
+    /**
+     * Limit for the number of values reserved by all keys in total
+     *
+     * @return the limit or 0 if there is no limit
+     */
+    public int getMaxTotalEntries() {
+        return maxTotalEntries;
+    }
+
+    /**
+     * Set the limit for the number of values reserved by all keys in total. The
+     * number reserved for a key is its maximum number of entries. If the limit is
+     * exceeded, the least recently updated keys are evicted.
+     *
+     * @param pMaxTotalEntries limit to set, 0 for no limit
+     */
+    public synchronized void setMaxTotalEntries(int pMaxTotalEntries) {
+        maxTotalEntries = pMaxTotalEntries;
+        evictIfNeeded(null);
+    }
+
+    /**
+     * Number of values reserved by all keys
+     *
+     * @return sum of the maximum number of entries of all keys
+     */
+    public long getTotalEntries() {
+        return totalEntries.get();
+    }
+
+    /**
+     * Number of keys with a history
+     *
+     * @return number of keys
+     */
+    public int getKeyCount() {
+        return historyStore.size();
+    }
+
+    /**
+     * Number of keys evicted since the store has been created
+     *
+     * @return number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
     }
 
     /**
@@ -92,6 +201,19 @@ public class HistoryStore implements Serializable {
      * then globalMaxEntries is used instead.
      */
     public synchronized void configure(HistoryKey pKey,int pMaxEntries) {
+        configure(pKey,pMaxEntries,null);
+    }
+
+    /**
+     * Configure the history length and a time based retention for a specific entry. If the length
+     * is 0 disable history for this key. Any retention configured before for this key is replaced.
+     *
+     * @param pKey history key
+     * @param pMaxEntries number of maximal raw entries. If larger than globalMaxEntries,
+     * then globalMaxEntries is used instead.
+     * @param pRetention maximum age of raw values and rollups to keep (can be null)
+     */
+    public synchronized void configure(HistoryKey pKey,int pMaxEntries,HistoryRetention pRetention) {
         int maxEntries = pMaxEntries > globalMaxEntries ? globalMaxEntries : pMaxEntries;
 
         // Remove entries if set to 0
@@ -100,24 +222,32 @@ public class HistoryStore implements Serializable {
             return;
         }
         if (pKey.isMBeanPattern()) {
-            patterns.put(pKey,maxEntries);
+            Map<HistoryKey,PatternConfig> newPatterns = new LinkedHashMap<HistoryKey, PatternConfig>(patterns);
+            newPatterns.put(pKey,new PatternConfig(maxEntries,pRetention));
+            setPatterns(newPatterns);
             // Trim all already stored keys
-            for (HistoryKey key : historyStore.keySet()) {
-                if (pKey.matches(key)) {
-                    HistoryEntry entry = historyStore.get(key);
-                    entry.setMaxEntries(maxEntries);
-                    entry.trim();
+            for (Map.Entry<HistoryKey,HistoryEntry> entry : historyStore.entrySet()) {
+                if (pKey.matches(entry.getKey())) {
+                    setLimits(entry.getValue(), maxEntries, pRetention);
                 }
             }
+            // Raised limits might exceed the total limit
+            evictIfNeeded(null);
         } else {
             HistoryEntry entry = historyStore.get(pKey);
             if (entry != null) {
-                entry.setMaxEntries(maxEntries);
-                entry.trim();
+                setLimits(entry, maxEntries, pRetention);
             } else {
-                entry = new HistoryEntry(maxEntries);
-                historyStore.put(pKey,entry);
+                entry = createEntry(pKey,maxEntries,pRetention);
+                HistoryEntry existing = historyStore.putIfAbsent(pKey,entry);
+                if (existing != null) {
+                    dispose(entry);
+                    setLimits(existing, maxEntries, pRetention);
+                } else {
+                    totalEntries.addAndGet(maxEntries);
+                }
             }
+            evictIfNeeded(pKey);
         }
     }
 
@@ -125,113 +255,236 @@ public class HistoryStore implements Serializable {
      * Reset the complete store.
      */
     public synchronized void reset() {
-        historyStore = new HashMap<HistoryKey, HistoryEntry>();
-        patterns = new HashMap<HistoryKey, Integer>();
+        Map<HistoryKey,HistoryEntry> old = historyStore;
+        historyStore = new ConcurrentHashMap<HistoryKey, HistoryEntry>();
+        setPatterns(Collections.<HistoryKey, PatternConfig>emptyMap());
+        totalEntries.set(0);
+        for (HistoryEntry entry : old.values()) {
+            dispose(entry);
+        }
+    }
+
+    /**
+     * Close the history file, if any. Values are kept in memory afterwards.
+     */
+    public synchronized void destroy() {
+        if (historyFile != null) {
+            historyFile.close();
+            historyFile = null;
+        }
     }
 
     /**
      * Update the history store with the value of an an read, write or execute operation. Also, the timestamp
      * of the insertion is recorded. Also, the recorded history values are added to the given json value.
+     * If the processing option {@link ConfigKey#HISTORY_RATE} is set, the difference and the rate to the
+     * last recorded value are added, too.
      *
      * @param pJmxReq request for which an entry should be added in this history store
      * @param pJson the JSONObject to which to add the history.
      */
-    public synchronized void updateAndAdd(JmxRequest pJmxReq, JSONObject pJson) {
+    public void updateAndAdd(JmxRequest pJmxReq, JSONObject pJson) {
         long timestamp = System.currentTimeMillis() / 1000;
         pJson.put(KEY_TIMESTAMP,timestamp);
 
+        if (historyStore.isEmpty() && patterns.isEmpty()) {
+            // No history configured at all
+            return;
+        }
+
+        boolean rate = isRateRequested(pJmxReq);
         JmxRequest.Type type  = pJmxReq.getType();
         if (type == EXEC || type == WRITE) {
             HistoryEntry entry = historyStore.get(new HistoryKey(pJmxReq));
             if (entry != null) {
-                synchronized(entry) {
-                    // A history data to json object for the response
-                    pJson.put(KEY_HISTORY,entry.jsonifyValues());
-
-                    // Update history for next time
-                    if (type == EXEC) {
-                        entry.add(pJson.get(KEY_VALUE),timestamp);
-                    } else if (type == WRITE) {
-                        // The new value to set as string representation
-                        entry.add(pJmxReq.getValue(),timestamp);
-                    }
-                }
+                // Update history for next time. For a write, the new value to set is recorded
+                // as string representation
+                Object value = type == EXEC ? pJson.get(KEY_VALUE) : pJmxReq.getValue();
+                pJson.putAll(update(entry,value,timestamp,rate));
             }
         } else if (type == READ) {
-            updateReadHistory(pJmxReq, pJson, timestamp);
+            updateReadHistory(pJmxReq, pJson, timestamp, rate);
         }
     }
 
     // Remove entries
     private void removeEntries(HistoryKey pKey) {
         if (pKey.isMBeanPattern()) {
-            patterns.remove(pKey);
-            List<HistoryKey> toRemove = new ArrayList<HistoryKey>();
-            for (HistoryKey key : historyStore.keySet()) {
-                if (pKey.matches(key)) {
-                    toRemove.add(key);
+            Map<HistoryKey,PatternConfig> newPatterns = new LinkedHashMap<HistoryKey, PatternConfig>(patterns);
+            newPatterns.remove(pKey);
+            setPatterns(newPatterns);
+            Iterator<Map.Entry<HistoryKey,HistoryEntry>> it = historyStore.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<HistoryKey,HistoryEntry> entry = it.next();
+                if (pKey.matches(entry.getKey())) {
+                    it.remove();
+                    removed(entry.getValue());
                 }
             }
-            // Avoid concurrent modification exceptions
-            for (HistoryKey key : toRemove) {
-                historyStore.remove(key);
-            }
         } else {
-            HistoryEntry entry = historyStore.get(pKey);
+            HistoryEntry entry = historyStore.remove(pKey);
             if (entry != null) {
-                historyStore.remove(pKey);
+                removed(entry);
+            }
+        }
+    }
+
+    // Account for a new entry and evict old entries if the total limit is exceeded
+    private void added(HistoryKey pKey, int pMaxEntries) {
+        totalEntries.addAndGet(pMaxEntries);
+        evictIfNeeded(pKey);
+    }
+
+    // Account for a removed entry and release its resources
+    private void removed(HistoryEntry pEntry) {
+        synchronized (pEntry) {
+            totalEntries.addAndGet(-pEntry.getMaxEntries());
+            pEntry.dispose();
+        }
+    }
+
+    // Evict the least recently used entries if the total limit is exceeded. The entries are evicted
+    // down to 90% of the limit, so that not every new key triggers an eviction. The given key (if any)
+    // is never evicted.
+    private void evictIfNeeded(HistoryKey pKeep) {
+        int max = maxTotalEntries;
+        if (max <= 0 || totalEntries.get() <= max) {
+            return;
+        }
+        synchronized (this) {
+            if (totalEntries.get() <= max) {
+                return;
+            }
+            // Take the access times first, since they might change while sorting
+            List<LruCandidate> candidates = new ArrayList<LruCandidate>(historyStore.size());
+            for (Map.Entry<HistoryKey,HistoryEntry> entry : historyStore.entrySet()) {
+                if (!entry.getKey().equals(pKeep)) {
+                    candidates.add(new LruCandidate(entry.getKey(),entry.getValue()));
+                }
+            }
+            Collections.sort(candidates);
+            long lowWaterMark = max - max / 10;
+            for (LruCandidate candidate : candidates) {
+                if (totalEntries.get() <= lowWaterMark) {
+                    break;
+                }
+                if (historyStore.remove(candidate.key,candidate.entry)) {
+                    removed(candidate.entry);
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    // Replace the patterns and rebuild the index
+    private void setPatterns(Map<HistoryKey,PatternConfig> pPatterns) {
+        ObjectNamePatternIndex<PatternConfig> index = new ObjectNamePatternIndex<PatternConfig>();
+        for (Map.Entry<HistoryKey,PatternConfig> entry : pPatterns.entrySet()) {
+            index.add(entry.getKey().getMBean(),entry.getValue());
+        }
+        patternIndex = index;
+        patterns = Collections.unmodifiableMap(pPatterns);
+    }
+
+    private void readObject(ObjectInputStream pIn) throws IOException, ClassNotFoundException {
+        pIn.defaultReadObject();
+        setPatterns(patterns);
+    }
+
+    // Create a new entry, backed by the history file if there is one
+    private HistoryEntry createEntry(HistoryKey pKey, int pMaxEntries, HistoryRetention pRetention) {
+        HistoryEntry entry = new HistoryEntry(pMaxEntries,pRetention);
+        entry.touch(System.currentTimeMillis() / 1000);
+        HistoryFile file = historyFile;
+        if (file != null) {
+            try {
+                entry.attach(file.allocate(pKey));
+            } catch (IOException exp) {
+                // Keep this entry on the heap only
             }
         }
+        return entry;
+    }
+
+    // Release the file slot of a removed entry
+    private void dispose(HistoryEntry pEntry) {
+        synchronized (pEntry) {
+            pEntry.dispose();
+        }
+    }
+
+    // Adapt the size of an entry
+    private void setMaxEntries(HistoryEntry pEntry, int pMaxEntries) {
+        synchronized (pEntry) {
+            totalEntries.addAndGet(pMaxEntries - pEntry.getMaxEntries());
+            pEntry.setMaxEntries(pMaxEntries);
+            pEntry.trim();
+        }
+    }
+
+    // Adapt size and retention of an entry
+    private void setLimits(HistoryEntry pEntry, int pMaxEntries, HistoryRetention pRetention) {
+        synchronized (pEntry) {
+            totalEntries.addAndGet(pMaxEntries - pEntry.getMaxEntries());
+            pEntry.setMaxEntries(pMaxEntries);
+            pEntry.setRetention(pRetention);
+            pEntry.trim();
+        }
+    }
+
+    private void putIfNotNull(JSONObject pJson, String pKey, Object pValue) {
+        if (pValue != null) {
+            pJson.put(pKey,pValue);
+        }
     }
 
     // Update potentially multiple history entries for a READ request which could
     // return multiple values with a single request
-    private void updateReadHistory(JmxRequest pJmxReq, JSONObject pJson, long pTimestamp)  {
+    private void updateReadHistory(JmxRequest pJmxReq, JSONObject pJson, long pTimestamp, boolean pRate)  {
         ObjectName name = pJmxReq.getObjectName();
         if (name.isPattern()) {
             // We have a pattern and hence a value structure
             // of bean -> attribute_key -> attribute_value
-            JSONObject history = new JSONObject();
+            JSONObject results = new JSONObject();
             for (Map.Entry<String,Object> beanEntry : ((Map<String,Object>) pJson.get(KEY_VALUE)).entrySet()) {
                 String beanName = beanEntry.getKey();
-                JSONObject beanHistory =
+                JSONObject beanResults =
                         addAttributesFromComplexValue(
                                 pJmxReq,
                                 ((Map<String,Object>) beanEntry.getValue()),
                                 beanName,
-                                pTimestamp);
-                if (beanHistory.size() > 0) {
-                    history.put(beanName,beanHistory);
-                }
-            }
-            if (history.size() > 0) {
-                pJson.put(KEY_HISTORY,history);
+                                pTimestamp,
+                                pRate);
+                addResults(results, beanName, beanResults);
             }
+            pJson.putAll(results);
         } else if (pJmxReq.isMultiAttributeMode() || !pJmxReq.hasAttribute()) {
             // Multiple attributes, but a single bean.
             // Value has the following structure:
             // attribute_key -> attribute_value
-            JSONObject history = addAttributesFromComplexValue(
+            pJson.putAll(addAttributesFromComplexValue(
                     pJmxReq,
                     ((Map<String,Object>) pJson.get(KEY_VALUE)),
                     pJmxReq.getObjectNameAsString(),
-                    pTimestamp);
-            if (history.size() > 0) {
-                pJson.put(KEY_HISTORY,history);
-            }
+                    pTimestamp,
+                    pRate));
         } else {
             // Single attribute, single bean. Value is the attribute_value
             // itself.
-            addAttributeFromSingleValue(pJson,
-                                        KEY_HISTORY,
-                                        new HistoryKey(pJmxReq),
-                                        pJson.get(KEY_VALUE),
-                                        pTimestamp);
+            JSONObject results = addAttributeFromSingleValue(new HistoryKey(pJmxReq),
+                                                             pJson.get(KEY_VALUE),
+                                                             pTimestamp,
+                                                             pRate);
+            if (results != null) {
+                pJson.putAll(results);
+            }
         }
     }
 
+    // Returns the results as map from the result type (history, rollups, rate) to
+    // attribute names to the result for the attribute
     private JSONObject addAttributesFromComplexValue(JmxRequest pJmxReq,Map<String,Object> pAttributesMap,
-                                                     String pBeanName,long pTimestamp) {
+                                                     String pBeanName,long pTimestamp,boolean pRate) {
         JSONObject ret = new JSONObject();
         for (Map.Entry<String,Object> attrEntry : pAttributesMap.entrySet()) {
             String attrName = attrEntry.getKey();
@@ -245,24 +498,52 @@ public class HistoryStore implements Serializable {
                 // we will rethrow it
                 throw new IllegalArgumentException("Cannot pars MBean name " + pBeanName,e);
             }
-            addAttributeFromSingleValue(ret,
-                                        attrName,
-                                        key,
-                                        value,
-                                        pTimestamp);
+            JSONObject results = addAttributeFromSingleValue(key, value, pTimestamp, pRate);
+            if (results != null) {
+                addResults(ret, attrName, results);
+            }
         }
         return ret;
     }
 
-    private void addAttributeFromSingleValue(JSONObject pHistMap, String pAttrName, HistoryKey pKey,
-                                             Object pValue, long pTimestamp) {
+    // Add the results (type -> result) for a single name to a map of type -> name -> result
+    private void addResults(JSONObject pTarget, String pName, JSONObject pResults) {
+        for (Map.Entry<String,Object> result : ((Map<String,Object>) pResults).entrySet()) {
+            JSONObject byName = (JSONObject) pTarget.get(result.getKey());
+            if (byName == null) {
+                byName = new JSONObject();
+                pTarget.put(result.getKey(),byName);
+            }
+            byName.put(pName,result.getValue());
+        }
+    }
+
+    // Returns null if there is no history for the given key
+    private JSONObject addAttributeFromSingleValue(HistoryKey pKey, Object pValue, long pTimestamp, boolean pRate) {
         HistoryEntry entry = getEntry(pKey,pValue,pTimestamp);
-        if (entry != null) {
-            synchronized (entry) {
-                pHistMap.put(pAttrName,entry.jsonifyValues());
-                entry.add(pValue,pTimestamp);
+        return entry != null ? update(entry,pValue,pTimestamp,pRate) : null;
+    }
+
+    // Add a value to an entry and return the history before adding the value, the rollups and, if requested,
+    // the rate as map with the result type as key
+    private JSONObject update(HistoryEntry pEntry, Object pValue, long pTimestamp, boolean pRate) {
+        JSONObject ret = new JSONObject();
+        synchronized (pEntry) {
+            pEntry.touch(pTimestamp);
+            pEntry.expire(pTimestamp);
+            ret.put(KEY_HISTORY,pEntry.jsonifyValues());
+            if (pRate) {
+                putIfNotNull(ret,KEY_RATE,pEntry.jsonifyRate(pValue,pTimestamp));
             }
+            pEntry.add(pValue,pTimestamp);
+            putIfNotNull(ret,KEY_ROLLUPS,pEntry.jsonifyRollups(pTimestamp));
         }
+        return ret;
+    }
+
+    private boolean isRateRequested(JmxRequest pJmxReq) {
+        String rate = pJmxReq.getProcessingConfig(ConfigKey.HISTORY_RATE);
+        return rate != null && rate.matches("^(true|yes|on|1)$");
     }
 
     private HistoryEntry getEntry(HistoryKey pKey,Object pValue,long pTimestamp) {
@@ -271,15 +552,50 @@ public class HistoryStore implements Serializable {
             return entry;
         }
         // Now try all known patterns and add lazily the key
-        for (HistoryKey key : patterns.keySet()) {
-            if (key.matches(pKey)) {
-                entry = new HistoryEntry(patterns.get(key));
-                entry.add(pValue,pTimestamp);
-                historyStore.put(pKey,entry);
-                return entry;
-            }
+        PatternConfig config = patternIndex.find(pKey.getMBean());
+        if (config == null) {
+            return null;
+        }
+        entry = createEntry(pKey,config.maxEntries,config.retention);
+        entry.add(pValue,pTimestamp);
+        HistoryEntry existing = historyStore.putIfAbsent(pKey,entry);
+        if (existing != null) {
+            dispose(entry);
+            return existing;
+        }
+        added(pKey,config.maxEntries);
+        return entry;
+    }
+
+    // Entry considered for eviction, ordered by its last access
+    private static final class LruCandidate implements Comparable<LruCandidate> {
+
+        private final HistoryKey key;
+        private final HistoryEntry entry;
+        private final long lastAccess;
+
+        private LruCandidate(HistoryKey pKey, HistoryEntry pEntry) {
+            key = pKey;
+            entry = pEntry;
+            lastAccess = pEntry.getLastAccess();
+        }
+
+        public int compareTo(LruCandidate pOther) {
+            return lastAccess < pOther.lastAccess ? -1 : (lastAccess == pOther.lastAccess ? 0 : 1);
         }
-        return null;
     }
 
+    // Limits for entries created for keys matching a pattern
+    private static final class PatternConfig implements Serializable {
+
+        private static final long serialVersionUID = 42L;
+
+        private final int maxEntries;
+        private final HistoryRetention retention;
+
+        private PatternConfig(int pMaxEntries, HistoryRetention pRetention) {
+            maxEntries = pMaxEntries;
+            retention = pRetention;
+        }
+    }
 }
@@ -1,55 +0,0 @@
-package org.jolokia.history;
-
-import java.io.Serializable;
-
-/*
- *  Copyright 2009-2010 Roland Huss
- *
- *  Licensed under the Apache License, Version 2.0 (the "License");
- *  you may not use this file except in compliance with the License.
- *  You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- *  Unless required by applicable law or agreed to in writing, software
- *  distributed under the License is distributed on an "AS IS" BASIS,
- *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *  See the License for the specific language governing permissions and
- *  limitations under the License.
- */
-
-
-/**
- * @author roland
-* @since Jun 12, 2009
-*/
-class ValueEntry implements Serializable {
-
-    private static final long serialVersionUID = 42L;
-
-    private Object value;
-    private long timestamp;
-
-    ValueEntry(Object pValue, long pTimestamp) {
-        value = pValue;
-        timestamp = pTimestamp;
-    }
-
-    public Object getValue() {
-        return value;
-    }
-
-    public long getTimestamp() {
-        return timestamp;
-    }
-
-    @Override
-    public String toString() {
-        final StringBuilder sb = new StringBuilder();
-        sb.append("ValueEntry");
-        sb.append("{value=").append(value);
-        sb.append(", timestamp=").append(timestamp);
-        sb.append('}');
-        return sb.toString();
-    }
-}
@@ -5,6 +5,7 @@ import org.jolokia.backend.BackendManager;
 import org.jolokia.ConfigKey;
 import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
 
 import javax.management.*;
 import javax.servlet.ServletConfig;
@@ -62,6 +63,12 @@ public class AgentServlet extends HttpServlet {
     // Request handler for parsing request parameters and building up a response
     private HttpRequestHandler requestHandler;
 
+    // Whether to stream the answer directly to the response writer
+    private boolean streaming;
+
+    // Compression level (0 for no compression) and minimal size of compressed answers
+    private int compressionLevel, compressionThreshold;
+
     protected void setLogHandler(LogHandler pLogHandler) {
         logHandler = pLogHandler;
     }
@@ -79,12 +86,17 @@ public class AgentServlet extends HttpServlet {
         httpGetHandler = newGetHttpRequestHandler();
         httpPostHandler = newPostHttpRequestHandler();
 
-        backendManager = new BackendManager(servletConfigAsMap(pConfig),logHandler);
-        requestHandler = new HttpRequestHandler(backendManager,logHandler);
+        Map<ConfigKey, String> config = servletConfigAsMap(pConfig);
+        streaming = Boolean.valueOf(ConfigKey.STREAMING.getValue(config));
+        compressionLevel = Integer.parseInt(ConfigKey.COMPRESSION_LEVEL.getValue(config));
+        compressionThreshold = Integer.parseInt(ConfigKey.COMPRESSION_THRESHOLD.getValue(config));
+        backendManager = new BackendManager(config,logHandler);
+        requestHandler = new HttpRequestHandler(backendManager,logHandler,config);
     }
 
     @Override
     public void destroy() {
+        requestHandler.destroy();
         backendManager.destroy();
         super.destroy();
     }
@@ -106,7 +118,7 @@ public class AgentServlet extends HttpServlet {
         JSONAware json = null;
         try {
             // Check access policy
-            requestHandler.checkClientIPAccess(pReq.getRemoteHost(),pReq.getRemoteAddr());
+            requestHandler.checkClientIPAccess(pReq.getRemoteAddr());
 
             // Dispatch for the proper HTTP request method
             json = pReqHandler.handleRequest(pReq,pResp);
@@ -121,9 +133,12 @@ public class AgentServlet extends HttpServlet {
             String callback = pReq.getParameter(ConfigKey.CALLBACK.getKeyValue());
             if (callback != null) {
                 // Send a JSONP response
-                sendResponse(pResp, "text/javascript",callback + "(" + json.toJSONString() +  ");");
+                sendResponse(pReq, pResp, "text/javascript",callback,json);
+            } else if (BinaryResponseWriter.isRequested(pReq.getHeader("Accept"),
+                                                        pReq.getParameter(ConfigKey.RESPONSE_FORMAT.getKeyValue()))) {
+                sendBinaryResponse(pReq, pResp, json);
             } else {
-                sendResponse(pResp, "text/plain",json.toJSONString());
+                sendResponse(pReq, pResp, "text/plain",null,json);
             }
         }
     }
@@ -167,7 +182,9 @@ public class AgentServlet extends HttpServlet {
         return ret;
     }
 
-    private void sendResponse(HttpServletResponse pResp, String pContentType, String pJsonTxt) throws IOException {
+    private void sendResponse(HttpServletRequest pReq, HttpServletResponse pResp, String pContentType,
+                              String pCallback, JSONAware pJson)
+            throws IOException {
         try {
             pResp.setCharacterEncoding("utf-8");
             pResp.setContentType(pContentType);
@@ -176,12 +193,66 @@ public class AgentServlet extends HttpServlet {
             pResp.setContentType(pContentType + "; charset=utf-8");
         }
         pResp.setStatus(200);
-        PrintWriter writer = pResp.getWriter();
-        writer.write(pJsonTxt);
+        OutputStream compressed = getCompressingStream(pReq, pResp);
+        Writer writer = compressed != null ? new OutputStreamWriter(compressed, "UTF-8") : pResp.getWriter();
+        if (pCallback != null) {
+            writer.write(pCallback);
+            writer.write("(");
+        }
+        if (streaming && pJson instanceof JSONStreamAware) {
+            // Serialize directly into the response without creating the answer
+            // as a string first.
+            ((JSONStreamAware) pJson).writeJSONString(writer);
+        } else {
+            writer.write(pJson.toJSONString());
+        }
+        if (pCallback != null) {
+            writer.write(");");
+        }
+        if (compressed != null) {
+            writer.close();
+        }
     }
 
 
 
+    private void sendBinaryResponse(HttpServletRequest pReq, HttpServletResponse pResp, JSONAware pJson) throws IOException {
+        pResp.setContentType(BinaryResponseWriter.MIME_TYPE);
+        pResp.setStatus(200);
+        OutputStream compressed = getCompressingStream(pReq, pResp);
+        if (compressed != null) {
+            BinaryResponseWriter.write(pJson, compressed);
+            compressed.close();
+        } else {
+            BinaryResponseWriter.write(pJson, pResp.getOutputStream());
+        }
+    }
+
+    // Get a stream which compresses the answer if the client accepts it, or null if the
+    // answer must not be compressed
+    private OutputStream getCompressingStream(HttpServletRequest pReq, final HttpServletResponse pResp) {
+        if (compressionLevel <= 0) {
+            return null;
+        }
+        pResp.setHeader("Vary", "Accept-Encoding");
+        String encoding = CompressingOutputStream.selectEncoding(pReq.getHeader("Accept-Encoding"));
+        if (encoding == null) {
+            return null;
+        }
+        return new CompressingOutputStream(encoding, compressionThreshold, compressionLevel) {
+            @Override
+            protected OutputStream startResponse(String pContentEncoding, int pLength) throws IOException {
+                if (pContentEncoding != null) {
+                    pResp.setHeader("Content-Encoding", pContentEncoding);
+                }
+                if (pLength >= 0) {
+                    pResp.setContentLength(pLength);
+                }
+                return pResp.getOutputStream();
+            }
+        };
+    }
+
     // Default log handler using this servlet's logging facility for logging
     private LogHandler getDefaultLogHandler() {
         return new LogHandler() {
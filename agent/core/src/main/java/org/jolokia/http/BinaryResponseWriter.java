@@ -0,0 +1,243 @@
+package org.jolokia.http;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jolokia.converter.json.ValueSink;
+import org.json.simple.JSONAware;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Writer for a compact binary representation of a JSON response, which is used
+ * instead of JSON text when a client asks for {@link #MIME_TYPE}.
+ *
+ * The response starts with the magic bytes <code>'J' 'B'</code> and a version byte,
+ * followed by a single value. Each value starts with a tag byte:
+ *
+ * <ul>
+ *   <li><code>0</code>: null, <code>1</code>: true, <code>2</code>: false</li>
+ *   <li><code>3</code>: integral number as zig-zag encoded varint</li>
+ *   <li><code>4</code>: floating point number as 8 byte IEEE 754 double</li>
+ *   <li><code>5</code>: string (varint length and UTF-8 bytes)</li>
+ *   <li><code>6</code>: string as for <code>5</code>, which is also appended to the string dictionary</li>
+ *   <li><code>7</code>: reference to a string in the dictionary (varint index)</li>
+ *   <li><code>8</code>: map (varint size, followed by key and value for each entry)</li>
+ *   <li><code>9</code>: array (varint size, followed by the elements)</li>
+ *   <li><code>10</code>: {@link BigInteger} in decimal notation (varint length and ASCII bytes)</li>
+ *   <li><code>11</code>: {@link BigDecimal} as for <code>10</code></li>
+ * </ul>
+ *
+ * Short strings like attribute names and MBean names occur again and again in a
+ * bulk response and are sent only once, later occurrences refer to the dictionary
+ * by index. Numbers are written in their binary form.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class BinaryResponseWriter {
+
+    /**
+     * Content type of the binary format
+     */
+    public static final String MIME_TYPE = "application/x-jolokia-binary";
+
+    /**
+     * Value of {@link org.jolokia.ConfigKey#RESPONSE_FORMAT} for selecting the binary format
+     */
+    public static final String FORMAT_NAME = "binary";
+
+    static final int VERSION = 1;
+
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte LONG = 3;
+    static final byte DOUBLE = 4;
+    static final byte STRING = 5;
+    static final byte STRING_DEF = 6;
+    static final byte STRING_REF = 7;
+    static final byte MAP = 8;
+    static final byte ARRAY = 9;
+    static final byte BIG_INTEGER = 10;
+    static final byte BIG_DECIMAL = 11;
+
+    // Strings longer than this are not put into the dictionary (e.g. stacktraces)
+    private static final int MAX_DICTIONARY_STRING_LENGTH = 256;
+
+    // Maximum number of strings in the dictionary
+    private static final int MAX_DICTIONARY_SIZE = 65536;
+
+    private final DataOutputStream out;
+    private final Map<String,Integer> dictionary = new HashMap<String, Integer>();
+    private final ValueSink sink = new BinarySink();
+
+    /**
+     * Check whether the binary format is requested by a client
+     *
+     * @param pAccept value of the HTTP Accept header (can be null)
+     * @param pFormat value of the {@link org.jolokia.ConfigKey#RESPONSE_FORMAT} parameter (can be null)
+     * @return true if the answer should be sent in the binary format
+     */
+    public static boolean isRequested(String pAccept, String pFormat) {
+        if (pFormat != null) {
+            return FORMAT_NAME.equalsIgnoreCase(pFormat);
+        }
+        return pAccept != null && pAccept.indexOf(MIME_TYPE) >= 0;
+    }
+
+    /**
+     * Write the given JSON response in the binary format to the given stream. The stream
+     * is flushed, but not closed.
+     *
+     * @param pJson response to write
+     * @param pOut stream to write to
+     * @throws IOException if writing fails
+     */
+    public static void write(JSONAware pJson, OutputStream pOut) throws IOException {
+        BinaryResponseWriter writer = new BinaryResponseWriter(new BufferedOutputStream(pOut, 8192));
+        writer.writeHeader();
+        writer.writeValue(pJson);
+        writer.out.flush();
+    }
+
+    private BinaryResponseWriter(OutputStream pOut) {
+        out = new DataOutputStream(pOut);
+    }
+
+    private void writeHeader() throws IOException {
+        out.writeByte('J');
+        out.writeByte('B');
+        out.writeByte(VERSION);
+    }
+
+    private void writeValue(Object pValue) throws IOException {
+        if (pValue == null) {
+            out.writeByte(NULL);
+        } else if (pValue instanceof String) {
+            writeString((String) pValue);
+        } else if (pValue instanceof Boolean) {
+            out.writeByte(((Boolean) pValue) ? TRUE : FALSE);
+        } else if (pValue instanceof Number) {
+            writeNumber((Number) pValue);
+        } else if (pValue instanceof ValueSink.Source) {
+            // Values converted while written are encoded directly
+            ((ValueSink.Source) pValue).writeTo(sink);
+        } else if (pValue instanceof Map) {
+            writeMap((Map<?,?>) pValue);
+        } else if (pValue instanceof List) {
+            writeList((List<?>) pValue);
+        } else {
+            // Same as for JSON, the string representation is used
+            writeString(pValue.toString());
+        }
+    }
+
+    private void writeNumber(Number pNumber) throws IOException {
+        if (pNumber instanceof Long || pNumber instanceof Integer ||
+            pNumber instanceof Short || pNumber instanceof Byte ||
+            pNumber instanceof AtomicLong || pNumber instanceof AtomicInteger) {
+            out.writeByte(LONG);
+            long value = pNumber.longValue();
+            writeVarLong((value << 1) ^ (value >> 63));
+        } else if (pNumber instanceof BigInteger) {
+            // Arbitrary precision numbers would lose digits as long or double
+            writeDecimal(BIG_INTEGER, pNumber.toString());
+        } else if (pNumber instanceof BigDecimal) {
+            writeDecimal(BIG_DECIMAL, pNumber.toString());
+        } else {
+            out.writeByte(DOUBLE);
+            out.writeDouble(pNumber.doubleValue());
+        }
+    }
+
+    private void writeDecimal(byte pTag, String pValue) throws IOException {
+        out.writeByte(pTag);
+        byte[] bytes = pValue.getBytes("US-ASCII");
+        writeVarLong(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeMap(Map<?,?> pMap) throws IOException {
+        out.writeByte(MAP);
+        writeVarLong(pMap.size());
+        for (Map.Entry<?,?> entry : pMap.entrySet()) {
+            writeString(String.valueOf(entry.getKey()));
+            writeValue(entry.getValue());
+        }
+    }
+
+    private void writeList(List<?> pList) throws IOException {
+        out.writeByte(ARRAY);
+        writeVarLong(pList.size());
+        for (Object element : pList) {
+            writeValue(element);
+        }
+    }
+
+    private void writeString(String pString) throws IOException {
+        Integer ref = dictionary.get(pString);
+        if (ref != null) {
+            out.writeByte(STRING_REF);
+            writeVarLong(ref);
+            return;
+        }
+        if (pString.length() <= MAX_DICTIONARY_STRING_LENGTH && dictionary.size() < MAX_DICTIONARY_SIZE) {
+            dictionary.put(pString, dictionary.size());
+            out.writeByte(STRING_DEF);
+        } else {
+            out.writeByte(STRING);
+        }
+        byte[] bytes = pString.getBytes("UTF-8");
+        writeVarLong(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarLong(long pValue) throws IOException {
+        long value = pValue;
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    // Sink for streamed values. Keys and values are encoded like map entries.
+    private final class BinarySink implements ValueSink {
+        public void startMap(int pSize) throws IOException {
+            out.writeByte(MAP);
+            writeVarLong(pSize);
+        }
+
+        public void key(String pKey) throws IOException {
+            writeString(pKey);
+        }
+
+        public void endMap() {
+            // Size was given up front
+        }
+
+        public void value(Object pValue) throws IOException {
+            writeValue(pValue);
+        }
+    }
+}
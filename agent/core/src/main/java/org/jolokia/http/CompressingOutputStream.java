@@ -0,0 +1,199 @@
+package org.jolokia.http;
+
+import java.io.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Output stream for a response body which is compressed if it gets larger than
+ * a given threshold.
+ *
+ * The first bytes up to the threshold are buffered. If the response turns out to be
+ * smaller, it is sent uncompressed with a known content length when the stream is closed.
+ * Otherwise the response is started with the content encoding set, and everything written
+ * afterwards goes directly into the compressor. How a response is started depends on
+ * the HTTP front end, hence {@link #startResponse(String, int)} must be implemented by
+ * subclasses.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public abstract class CompressingOutputStream extends OutputStream {
+
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+
+    private final String encoding;
+    private final int threshold;
+    private final int level;
+
+    // Buffer used as long as the threshold is not reached
+    private ByteArrayOutputStream buffer;
+
+    // Compressing stream, once the threshold is reached
+    private OutputStream out;
+
+    private boolean closed;
+
+    /**
+     * Select the content encoding to use for a response
+     *
+     * @param pAcceptEncoding value of the Accept-Encoding header of the request (can be null)
+     * @return "gzip" or "deflate" if the client accepts one of these encodings, <code>null</code>
+     *         if the response should not be compressed
+     */
+    public static String selectEncoding(String pAcceptEncoding) {
+        if (pAcceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String part : pAcceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String name = params[0].trim().toLowerCase();
+            if (isRefused(params)) {
+                continue;
+            }
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                return GZIP;
+            } else if (DEFLATE.equals(name)) {
+                deflate = true;
+            }
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    /**
+     * Create a stream for a response
+     *
+     * @param pEncoding content encoding as returned by {@link #selectEncoding(String)}
+     * @param pThreshold number of bytes above which the response is compressed
+     * @param pLevel compression level (1-9)
+     */
+    protected CompressingOutputStream(String pEncoding, int pThreshold, int pLevel) {
+        encoding = pEncoding;
+        threshold = Math.max(pThreshold, 0);
+        level = pLevel;
+        buffer = new ByteArrayOutputStream(Math.min(threshold, 8192) + 1);
+    }
+
+    /**
+     * Start the response. This is called once, before any content is written.
+     *
+     * @param pContentEncoding content encoding of the response or <code>null</code> if the
+     *        response is not compressed
+     * @param pLength length of the content or -1 if unknown
+     * @return stream for writing the content
+     * @throws IOException if the response cannot be started
+     */
+    protected abstract OutputStream startResponse(String pContentEncoding, int pLength) throws IOException;
+
+    @Override
+    public void write(int pByte) throws IOException {
+        if (out != null) {
+            out.write(pByte);
+        } else {
+            buffer.write(pByte);
+            checkThreshold();
+        }
+    }
+
+    @Override
+    public void write(byte[] pBytes, int pOff, int pLen) throws IOException {
+        if (out != null) {
+            out.write(pBytes, pOff, pLen);
+        } else {
+            buffer.write(pBytes, pOff, pLen);
+            checkThreshold();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // The buffer is kept until either the threshold is reached or the stream is closed
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Finish the response. If the threshold hasn't been reached, the buffered content is sent
+     * uncompressed.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (out == null) {
+            OutputStream raw = startResponse(null, buffer.size());
+            buffer.writeTo(raw);
+            buffer = null;
+            raw.close();
+        } else {
+            out.close();
+        }
+    }
+
+    private void checkThreshold() throws IOException {
+        if (encoding != null && buffer.size() > threshold) {
+            out = createCompressor(startResponse(encoding, -1));
+            buffer.writeTo(out);
+            buffer = null;
+        }
+    }
+
+    private OutputStream createCompressor(OutputStream pOut) throws IOException {
+        if (GZIP.equals(encoding)) {
+            return new GZIPOutputStream(pOut, 8192) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        } else {
+            return new DeflaterOutputStream(pOut, new Deflater(level), 8192) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    // Not created by the stream itself, so it doesn't end it
+                    def.end();
+                }
+            };
+        }
+    }
+
+    // Check for a quality value of 0
+    private static boolean isRefused(String[] pParams) {
+        for (int i = 1; i < pParams.length; i++) {
+            String param = pParams[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException exp) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
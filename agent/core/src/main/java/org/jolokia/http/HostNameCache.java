@@ -0,0 +1,121 @@
+package org.jolokia.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.jolokia.config.IpPrefixTrie;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Cache for reverse name lookups of client addresses. A reverse lookup blocks until the
+ * name service answers, so the result is kept for a while. Failed lookups are remembered
+ * as well, so that a client with an address which cannot be resolved doesn't cause a
+ * lookup for each request.
+ *
+ * The number of entries is limited, the least recently used entry is dropped if there
+ * are too many.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+class HostNameCache {
+
+    private final int maxEntries;
+    private final long ttl;
+
+    // Host names by address, the least recently used address first
+    private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * Constructor
+     *
+     * @param pMaxEntries maximum number of addresses to remember
+     * @param pTtl time in milliseconds for which a looked up name is valid
+     */
+    HostNameCache(int pMaxEntries, long pTtl) {
+        maxEntries = pMaxEntries;
+        ttl = pTtl;
+    }
+
+    /**
+     * Get the host name for an address
+     *
+     * @param pAddress IP address as string
+     * @return host name or <code>null</code> if the given address is not an IP address
+     *         or it cannot be resolved
+     */
+    String lookup(String pAddress) {
+        return lookup(pAddress, System.currentTimeMillis());
+    }
+
+    String lookup(String pAddress, long pNow) {
+        synchronized (this) {
+            Entry entry = entries.get(pAddress);
+            if (entry != null && pNow - entry.created <= ttl) {
+                return entry.hostName;
+            }
+        }
+        // Resolve outside the lock, so that a slow lookup doesn't block other clients
+        byte[] address = IpPrefixTrie.parseAddress(pAddress);
+        String hostName = address != null ? resolve(address) : null;
+        synchronized (this) {
+            entries.put(pAddress, new Entry(hostName, pNow));
+            if (entries.size() > maxEntries) {
+                Iterator<String> it = entries.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        return hostName;
+    }
+
+    /**
+     * Number of addresses currently remembered
+     *
+     * @return number of addresses
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    // Do the reverse lookup
+    String resolve(byte[] pAddress) {
+        try {
+            InetAddress inetAddress = InetAddress.getByAddress(pAddress);
+            String name = inetAddress.getHostName();
+            // The address is returned as string if it can't be resolved
+            return name.equals(inetAddress.getHostAddress()) ? null : name.toLowerCase();
+        } catch (UnknownHostException exp) {
+            return null;
+        }
+    }
+
+    // Looked up name and when it was looked up
+    private static final class Entry {
+        private final String hostName;
+        private final long created;
+
+        Entry(String pHostName, long pCreated) {
+            hostName = pHostName;
+            created = pCreated;
+        }
+    }
+}
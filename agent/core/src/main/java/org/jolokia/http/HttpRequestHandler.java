@@ -10,8 +10,12 @@ import org.json.simple.parser.ParseException;
 
 import javax.management.*;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -45,6 +49,30 @@ public class HttpRequestHandler {
     // Logging abstraction
     private LogHandler logHandler;
 
+    // Executor for running bulk requests in parallel (null if bulk requests are
+    // executed sequentially)
+    private ExecutorService bulkExecutor;
+
+    // Free places for bulk requests (running or waiting for a thread)
+    private Semaphore bulkCapacity;
+
+    // Timeouts in ms for a single request within a bulk request and for the bulk request
+    // as a whole when executed in parallel (0 for no timeout)
+    private long bulkRequestTimeout, bulkTimeout;
+
+    // Values already sent to polling clients
+    private PollTokenCache pollTokenCache;
+
+    // Manager for asynchronously executed requests (null if switched off)
+    private JobManager jobManager;
+
+    // Number of client host names to remember and for how long (in ms)
+    private static final int HOST_NAME_CACHE_SIZE = 1000;
+    private static final long HOST_NAME_CACHE_TTL = 5 * 60 * 1000L;
+
+    // Host names of clients, looked up only if the access policy contains host names
+    private HostNameCache hostNameCache = new HostNameCache(HOST_NAME_CACHE_SIZE, HOST_NAME_CACHE_TTL);
+
     /**
      * Request handler for parsing HTTP request and dispatching to the appropriate
      * request handler (with help of the backend manager)
@@ -53,8 +81,43 @@ public class HttpRequestHandler {
      * @param pLogHandler log handler to where to put out logging
      */
     public HttpRequestHandler(BackendManager pBackendManager, LogHandler pLogHandler) {
+        this(pBackendManager, pLogHandler, null);
+    }
+
+    /**
+     * Request handler which takes the given configuration into account. If
+     * {@link ConfigKey#BULK_THREADS} is larger than 0, the requests of a bulk
+     * request are executed in parallel.
+     *
+     * @param pBackendManager backend manager to user
+     * @param pLogHandler log handler to where to put out logging
+     * @param pConfig configuration (can be null)
+     */
+    public HttpRequestHandler(BackendManager pBackendManager, LogHandler pLogHandler, Map<ConfigKey, String> pConfig) {
         backendManager = pBackendManager;
         logHandler = pLogHandler;
+        Map<ConfigKey, String> config = pConfig != null ? pConfig : new HashMap<ConfigKey, String>();
+        initBulkExecutor(config);
+        initJobManager(config);
+        pollTokenCache = new PollTokenCache(getIntConfigValue(config, ConfigKey.POLL_TOKEN_MAX_CLIENTS),
+                                            getIntConfigValue(config, ConfigKey.POLL_TOKEN_MAX_FINGERPRINTS),
+                                            getIntConfigValue(config, ConfigKey.POLL_TOKEN_TIMEOUT) * 1000L);
+    }
+
+    /**
+     * Release all resources, which are the thread pools for parallel bulk
+     * requests and for asynchronous jobs.
+     */
+    public void destroy() {
+        if (bulkExecutor != null) {
+            // Waiting requests never run, so nobody must wait for them
+            for (Runnable task : bulkExecutor.shutdownNow()) {
+                ((Future) task).cancel(false);
+            }
+        }
+        if (jobManager != null) {
+            jobManager.destroy();
+        }
     }
 
     /**
@@ -98,6 +161,9 @@ public class HttpRequestHandler {
         JSONAware jsonRequest = extractJsonRequest(pInputStream,pEncoding);
         if (jsonRequest instanceof List) {
             List<JmxRequest> jmxRequests = JmxRequestFactory.createPostRequests((List) jsonRequest);
+            if (bulkExecutor != null && jmxRequests.size() > 1) {
+                return executeRequestsInParallel(jmxRequests);
+            }
 
             JSONArray responseList = new JSONArray();
             for (JmxRequest jmxReq : jmxRequests) {
@@ -131,6 +197,250 @@ public class HttpRequestHandler {
         }
     }
 
+    // Submit all requests to the bulk executor and collect the answers in the original
+    // order. Requests which don't finish in time are cancelled and an error is returned
+    // for them instead. The timeout of a single request is measured from the time it
+    // was submitted, so that several hanging requests don't add up their timeouts.
+    // If all threads are busy and the queue is full, submitting waits for a free place
+    // until the request's deadline. Requests which don't get a place in time are
+    // answered with an error.
+    private JSONArray executeRequestsInParallel(List<JmxRequest> pJmxRequests) {
+        long bulkDeadline = bulkTimeout > 0 ? System.currentTimeMillis() + bulkTimeout : 0;
+        List<Future<JSONObject>> futures = new ArrayList<Future<JSONObject>>(pJmxRequests.size());
+        long[] deadlines = new long[pJmxRequests.size()];
+        for (final JmxRequest jmxReq : pJmxRequests) {
+            if (backendManager.isDebug() && !"debugInfo".equals(jmxReq.getOperation())) {
+                logHandler.debug("Request: " + jmxReq.toString());
+            }
+            long deadline = getBulkDeadline(bulkDeadline);
+            Future<JSONObject> future;
+            if (acquireBulkCapacity(deadline)) {
+                // The request's timeout starts when it is queued
+                deadline = getBulkDeadline(bulkDeadline);
+                future = submitBulkRequest(jmxReq);
+            } else {
+                future = new RejectedRequest(getErrorJSON(503, new RejectedExecutionException(
+                        "No free thread for executing the request in time (bulk threads and queue are exhausted)")));
+            }
+            deadlines[futures.size()] = deadline;
+            futures.add(future);
+        }
+
+        JSONArray responseList = new JSONArray();
+        for (int i = 0; i < futures.size(); i++) {
+            responseList.add(waitForResponse(futures.get(i), deadlines[i]));
+        }
+        return responseList;
+    }
+
+    // Deadline for a request submitted now (0 for no deadline)
+    private long getBulkDeadline(long pBulkDeadline) {
+        long deadline = bulkRequestTimeout > 0 ? System.currentTimeMillis() + bulkRequestTimeout : 0;
+        if (pBulkDeadline > 0 && (deadline == 0 || pBulkDeadline < deadline)) {
+            deadline = pBulkDeadline;
+        }
+        return deadline;
+    }
+
+    // Wait for a free place in the bulk executor until the given deadline (0 for no deadline)
+    private boolean acquireBulkCapacity(long pDeadline) {
+        try {
+            if (pDeadline <= 0) {
+                bulkCapacity.acquire();
+                return true;
+            } else {
+                return bulkCapacity.tryAcquire(Math.max(pDeadline - System.currentTimeMillis(), 0),
+                                               TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Future<JSONObject> submitBulkRequest(final JmxRequest pJmxReq) {
+        try {
+            return bulkExecutor.submit(new Callable<JSONObject>() {
+                public JSONObject call() {
+                    return executeRequestCatchingThrowable(pJmxReq);
+                }
+            });
+        } catch (RejectedExecutionException exp) {
+            // Executor has been shut down
+            bulkCapacity.release();
+            return new RejectedRequest(getErrorJSON(503, exp));
+        }
+    }
+
+    // Wait for the answer until the given deadline (0 for no deadline)
+    private JSONObject waitForResponse(Future<JSONObject> pFuture, long pDeadline) {
+        try {
+            if (pDeadline <= 0) {
+                return pFuture.get();
+            } else {
+                return pFuture.get(Math.max(pDeadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException exp) {
+            pFuture.cancel(true);
+            return getErrorJSON(408, new TimeoutException(
+                    "Request didn't finish in time (request timeout: " + bulkRequestTimeout +
+                    " ms, bulk timeout: " + bulkTimeout + " ms)"));
+        } catch (InterruptedException exp) {
+            pFuture.cancel(true);
+            Thread.currentThread().interrupt();
+            return getErrorJSON(500, exp);
+        } catch (ExecutionException exp) {
+            return handleThrowable(exp.getCause());
+        } catch (CancellationException exp) {
+            return getErrorJSON(500, exp);
+        }
+    }
+
+    // Used when called from a worker thread for which exceptions are converted to an
+    // error object in the same way as the HTTP front end does it for a single request
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private JSONObject executeRequestCatchingThrowable(JmxRequest pJmxReq) {
+        try {
+            return executeRequest(pJmxReq);
+        } catch (Throwable exp) {
+            return handleThrowable(exp);
+        }
+    }
+
+    // Operations can be executed asynchronously
+    private boolean isAsync(JmxRequest pJmxReq) {
+        return pJmxReq.getType() == JmxRequest.Type.EXEC &&
+               Boolean.valueOf(pJmxReq.getProcessingConfig(ConfigKey.ASYNC));
+    }
+
+    // Either submit an asynchronous request as job or handle a request for an existing job.
+    // In both cases, the value of the answer is the job's handle.
+    private JSONObject executeJobRequest(final JmxRequest pJmxReq) {
+        if (jobManager == null) {
+            return getErrorJSON(400, new IllegalArgumentException(
+                    "Asynchronous execution is switched off (" + ConfigKey.ASYNC_THREADS + " is 0)"));
+        }
+        // Serialized before submitting, since the executing handler might modify the request
+        JSONObject request = pJmxReq.toJSON();
+        JSONObject value;
+        if (pJmxReq.getType() == JmxRequest.Type.JOB) {
+            // Job requests are not dispatched to a request handler, so the policy is checked here
+            if (!backendManager.isTypeAllowed(JmxRequest.Type.JOB)) {
+                return handleThrowable(new SecurityException(
+                        "Command type " + JmxRequest.Type.JOB + " not allowed due to policy used"));
+            }
+            try {
+                value = jobManager.handle(pJmxReq);
+            } catch (IllegalArgumentException exp) {
+                return getErrorJSON(400, exp);
+            }
+        } else {
+            try {
+                value = jobManager.submit(new Callable<JSONObject>() {
+                    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+                    public JSONObject call() {
+                        try {
+                            return executeRequestDirectly(pJmxReq);
+                        } catch (Throwable exp) {
+                            return handleThrowable(exp);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException exp) {
+                return getErrorJSON(503, exp);
+            }
+        }
+        JSONObject json = new JSONObject();
+        json.put("value", value);
+        json.put("request", request);
+        json.put("status", 200);
+        return json;
+    }
+
+    private void initBulkExecutor(Map<ConfigKey, String> pConfig) {
+        int threads = getIntConfigValue(pConfig, ConfigKey.BULK_THREADS);
+        if (threads > 0) {
+            bulkRequestTimeout = getIntConfigValue(pConfig, ConfigKey.BULK_REQUEST_TIMEOUT);
+            bulkTimeout = getIntConfigValue(pConfig, ConfigKey.BULK_TIMEOUT);
+            // The number of waiting requests is limited by the capacity, which is given
+            // back when a request has been executed (or was cancelled before)
+            bulkCapacity = new Semaphore(threads + Math.max(getIntConfigValue(pConfig, ConfigKey.BULK_QUEUE_SIZE), 1));
+            bulkExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                                  new LinkedBlockingQueue<Runnable>(),
+                                                  new DaemonThreadFactory("jolokia-bulk-")) {
+                @Override
+                protected void afterExecute(Runnable pRunnable, Throwable pThrowable) {
+                    bulkCapacity.release();
+                }
+            };
+        }
+    }
+
+    private void initJobManager(Map<ConfigKey, String> pConfig) {
+        int threads = getIntConfigValue(pConfig, ConfigKey.ASYNC_THREADS);
+        if (threads > 0) {
+            jobManager = new JobManager(Executors.newFixedThreadPool(threads, new DaemonThreadFactory("jolokia-async-")),
+                                        getIntConfigValue(pConfig, ConfigKey.ASYNC_MAX_JOBS),
+                                        getIntConfigValue(pConfig, ConfigKey.ASYNC_RESULT_TIMEOUT) * 1000L,
+                                        getIntConfigValue(pConfig, ConfigKey.ASYNC_MAX_WAIT),
+                                        getIntConfigValue(pConfig, ConfigKey.ASYNC_MAX_RUNTIME) * 1000L);
+        }
+    }
+
+    private int getIntConfigValue(Map<ConfigKey, String> pConfig, ConfigKey pKey) {
+        try {
+            return Integer.parseInt(pKey.getValue(pConfig));
+        } catch (NumberFormatException exp) {
+            return Integer.parseInt(pKey.getDefaultValue());
+        }
+    }
+
+    // Thread factory creating daemon threads so that the bulk and job executors
+    // never prevent a JVM from shutting down
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String prefix;
+
+        private DaemonThreadFactory(String pPrefix) {
+            prefix = pPrefix;
+        }
+
+        public Thread newThread(Runnable pRunnable) {
+            Thread thread = new Thread(pRunnable, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    // Answer for a request of a bulk request which could not be submitted
+    private static final class RejectedRequest implements Future<JSONObject> {
+        private final JSONObject answer;
+
+        private RejectedRequest(JSONObject pAnswer) {
+            answer = pAnswer;
+        }
+
+        public boolean cancel(boolean pMayInterruptIfRunning) {
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return false;
+        }
+
+        public boolean isDone() {
+            return true;
+        }
+
+        public JSONObject get() {
+            return answer;
+        }
+
+        public JSONObject get(long pTimeout, TimeUnit pUnit) {
+            return answer;
+        }
+    }
+
     /**
      * Execute a single {@link org.jolokia.JmxRequest}. If a checked  exception occurs,
      * this gets translated into the appropriate JSON object which will get returned.
@@ -141,9 +451,19 @@ public class HttpRequestHandler {
      * @return the JSON representation of the answer.
      */
     private JSONObject executeRequest(JmxRequest pJmxReq) {
+        if (pJmxReq.getType() == JmxRequest.Type.JOB || isAsync(pJmxReq)) {
+            return executeJobRequest(pJmxReq);
+        }
+        return executeRequestDirectly(pJmxReq);
+    }
+
+    // Execute a request within the current thread
+    private JSONObject executeRequestDirectly(JmxRequest pJmxReq) {
         // Call handler and retrieve return value
         try {
-            return backendManager.handleRequest(pJmxReq);
+            JSONObject json = backendManager.handleRequest(pJmxReq);
+            pollTokenCache.filter(pJmxReq, json);
+            return json;
         } catch (ReflectionException e) {
             return getErrorJSON(404,e);
         } catch (InstanceNotFoundException e) {
@@ -212,15 +532,23 @@ public class HttpRequestHandler {
 
 
     /**
-     * Check whether the given host and/or address is allowed to access this agent.
+     * Check whether a client with the given address is allowed to access this agent.
+     * The host name of the client is looked up only if the address alone is not sufficient
+     * and the access policy contains host names.
      *
-     * @param pHost host to check
-     * @param pAddress address to check
+     * @param pAddress IP address of the client
      */
-    public void checkClientIPAccess(String pHost, String pAddress) {
-        if (!backendManager.isRemoteAccessAllowed(pHost,pAddress)) {
-            throw new SecurityException("No access from client " + pAddress + " allowed");
+    public void checkClientIPAccess(String pAddress) {
+        if (backendManager.isRemoteAccessAllowed(pAddress)) {
+            return;
+        }
+        if (backendManager.isRemoteHostNameRequired()) {
+            String host = hostNameCache.lookup(pAddress);
+            if (host != null && backendManager.isRemoteAccessAllowed(host)) {
+                return;
+            }
         }
+        throw new SecurityException("No access from client " + pAddress + " allowed");
     }
 
     // Extract class and exception message for an error message
@@ -0,0 +1,286 @@
+package org.jolokia.http;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jolokia.ConfigKey;
+import org.jolokia.JmxRequest;
+import org.json.simple.JSONObject;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Manager for requests which are executed asynchronously. A request is submitted as
+ * job to a dedicated thread pool and a handle containing the job id is returned
+ * immediately. With a {@link JmxRequest.Type#JOB} request, the client can then poll
+ * for the result, wait for it or cancel the job.
+ *
+ * The number of jobs is limited. Jobs running longer than a maximum runtime are
+ * cancelled, so that hanging operations don't occupy a job forever. Jobs still waiting
+ * for a thread are cancelled, too, when the maximum runtime has passed since their
+ * submission. Results of finished jobs are kept for a certain time only, after that the
+ * job is forgotten.
+ *
+ * Note that cancelling a running job only interrupts its thread. An operation which
+ * doesn't react on interrupts (e.g. one blocked in a remote call) keeps its thread
+ * until it returns, so that fewer threads are left for the other jobs.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+final class JobManager {
+
+    // Actions for a job request
+    static final String ACTION_POLL = "poll";
+    static final String ACTION_WAIT = "wait";
+    static final String ACTION_CANCEL = "cancel";
+
+    private final ExecutorService executor;
+    private final int maxJobs;
+    private final long resultTimeout;
+    private final long maxWait;
+    private final long maxRuntime;
+
+    // All known jobs, the oldest one first
+    private final Map<String,Job> jobs = new LinkedHashMap<String, Job>();
+
+    /**
+     * Constructor
+     *
+     * @param pExecutor executor on which the jobs are run
+     * @param pMaxJobs maximum number of jobs which are queued, running or finished but not expired
+     * @param pResultTimeout time in milliseconds for which the result of a finished job is kept
+     * @param pMaxWait maximum time in milliseconds a wait for a job may take
+     * @param pMaxRuntime time in milliseconds after which a running job gets cancelled. A job which has not
+     *        been started is cancelled when this time has passed since its submission. (0 for no limit)
+     */
+    JobManager(ExecutorService pExecutor, int pMaxJobs, long pResultTimeout, long pMaxWait, long pMaxRuntime) {
+        executor = pExecutor;
+        maxJobs = pMaxJobs;
+        resultTimeout = pResultTimeout;
+        maxWait = pMaxWait;
+        maxRuntime = pMaxRuntime;
+    }
+
+    /**
+     * Submit a request for asynchronous execution
+     *
+     * @param pTask task executing the request, returning the answer
+     * @return handle for the job containing its id and state
+     * @throws RejectedExecutionException if there are already too many jobs
+     */
+    JSONObject submit(Callable<JSONObject> pTask) {
+        Job job = new Job(UUID.randomUUID().toString(), pTask);
+        synchronized (jobs) {
+            expire(System.currentTimeMillis());
+            if (jobs.size() >= maxJobs) {
+                throw new RejectedExecutionException(
+                        "Too many asynchronous jobs (maximum: " + maxJobs + "). Try again later.");
+            }
+            jobs.put(job.id, job);
+        }
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException exp) {
+            remove(job.id);
+            throw exp;
+        }
+        return job.toJSON();
+    }
+
+    /**
+     * Handle a {@link JmxRequest.Type#JOB} request. The action is taken from the request's
+     * operation, it defaults to {@link #ACTION_POLL}.
+     *
+     * @param pRequest job request
+     * @return handle for the job containing its id, its state and the result if the job is finished
+     * @throws IllegalArgumentException if no job with the id given in the request exists or the action is unknown
+     */
+    JSONObject handle(JmxRequest pRequest) {
+        String id = pRequest.getJobId();
+        if (id == null) {
+            throw new IllegalArgumentException("No job id given");
+        }
+        Job job;
+        synchronized (jobs) {
+            expire(System.currentTimeMillis());
+            job = jobs.get(id);
+        }
+        if (job == null) {
+            throw new IllegalArgumentException("No job with id " + id + " known (it might have expired already)");
+        }
+        String action = pRequest.getOperation() != null ? pRequest.getOperation() : ACTION_POLL;
+        if (ACTION_WAIT.equals(action)) {
+            waitFor(job, getWaitTimeout(pRequest));
+        } else if (ACTION_CANCEL.equals(action)) {
+            job.cancel(true);
+        } else if (!ACTION_POLL.equals(action)) {
+            throw new IllegalArgumentException("Unknown action '" + action + "' for job " + id +
+                                               " (known: " + ACTION_POLL + ", " + ACTION_WAIT + ", " + ACTION_CANCEL + ")");
+        }
+        return job.toJSON();
+    }
+
+    /**
+     * Number of jobs currently known
+     *
+     * @return number of jobs
+     */
+    int size() {
+        synchronized (jobs) {
+            return jobs.size();
+        }
+    }
+
+    /**
+     * Cancel all jobs and stop the executor
+     */
+    void destroy() {
+        executor.shutdownNow();
+        synchronized (jobs) {
+            jobs.clear();
+        }
+    }
+
+    // ==================================================================================
+
+    private long getWaitTimeout(JmxRequest pRequest) {
+        String timeout = pRequest.getProcessingConfig(ConfigKey.WAIT_TIMEOUT);
+        if (timeout == null) {
+            return maxWait;
+        }
+        try {
+            return Math.min(Math.max(Long.parseLong(timeout), 0), maxWait);
+        } catch (NumberFormatException exp) {
+            throw new IllegalArgumentException("Invalid " + ConfigKey.WAIT_TIMEOUT + " " + timeout, exp);
+        }
+    }
+
+    private void waitFor(Job pJob, long pTimeout) {
+        try {
+            pJob.get(pTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exp) {
+            // Still running, the state tells the client
+        } catch (ExecutionException exp) {
+            // Cannot happen, the task returns errors as answer
+        } catch (CancellationException exp) {
+            // Cancelled meanwhile, the state tells the client
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void remove(String pId) {
+        synchronized (jobs) {
+            jobs.remove(pId);
+        }
+    }
+
+    // Cancel all jobs running or waiting for too long and remove all finished jobs whose result
+    // has been kept long enough. Must be called with the lock on the jobs held.
+    private void expire(long pNow) {
+        boolean cancelledQueued = false;
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            if (maxRuntime > 0 && !job.isDone()) {
+                if (job.started > 0) {
+                    if (pNow - job.started > maxRuntime) {
+                        job.cancel(true, "Job exceeded the maximum runtime and has been cancelled " +
+                                         "(its thread stays busy until the operation returns)");
+                    }
+                } else if (pNow - job.submitted > maxRuntime) {
+                    // All threads are busy, possibly with operations which hang
+                    job.cancel(true, "Job didn't get a thread within the maximum runtime and has been cancelled");
+                    cancelledQueued = true;
+                }
+            }
+            // The finish time is set after the job is marked as done
+            if (job.isDone() && job.finished > 0 && pNow - job.finished > resultTimeout) {
+                it.remove();
+            }
+        }
+        if (cancelledQueued && executor instanceof ThreadPoolExecutor) {
+            // Don't keep cancelled jobs in the executor's queue
+            ((ThreadPoolExecutor) executor).purge();
+        }
+    }
+
+    // A single asynchronous job
+    private static final class Job extends FutureTask<JSONObject> {
+        private final String id;
+        private final long submitted;
+        private volatile long started;
+        private volatile long finished;
+
+        // Reason if the job has been cancelled by the manager
+        private volatile String cancelReason;
+
+        private Job(String pId, Callable<JSONObject> pTask) {
+            super(pTask);
+            id = pId;
+            submitted = System.currentTimeMillis();
+        }
+
+        private void cancel(boolean pMayInterrupt, String pReason) {
+            cancelReason = pReason;
+            cancel(pMayInterrupt);
+        }
+
+        @Override
+        public void run() {
+            started = System.currentTimeMillis();
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            finished = System.currentTimeMillis();
+        }
+
+        private JSONObject toJSON() {
+            JSONObject ret = new JSONObject();
+            ret.put("id", id);
+            if (isCancelled()) {
+                ret.put("state", "cancelled");
+                if (cancelReason != null) {
+                    ret.put("error", cancelReason);
+                }
+            } else if (isDone()) {
+                ret.put("state", "done");
+                ret.put("result", getResult());
+            } else {
+                ret.put("state", "running");
+            }
+            return ret;
+        }
+
+        private JSONObject getResult() {
+            try {
+                return get();
+            } catch (InterruptedException exp) {
+                // Cannot happen, the job is already done
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException exp) {
+                // Cannot happen, the task returns errors as answer
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.jolokia.http;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+import org.jolokia.ConfigKey;
+import org.jolokia.JmxRequest;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Cache remembering the values returned to polling clients, so that values which
+ * didn't change since the last poll can be left out of the answer.
+ *
+ * A client identifies itself with a token given as processing parameter
+ * {@link ConfigKey#POLL_TOKEN}. For each token and request, a 64 bit fingerprint of the
+ * returned value is kept. If the value of the next poll has the same fingerprint, the value is
+ * removed from the answer and <code>"unchanged" : true</code> is added instead.
+ *
+ * The number of tokens and the number of fingerprints for all tokens together are limited,
+ * the least recently used tokens are dropped if there are too many. Tokens which haven't been
+ * used for a while expire.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+final class PollTokenCache {
+
+    private final int maxTokens;
+    private final int maxFingerprints;
+    private final long timeout;
+
+    // Number of fingerprints of all tokens
+    private int totalFingerprints;
+
+    // Fingerprints by token, the least recently used token first
+    private final LinkedHashMap<String,Fingerprints> tokens = new LinkedHashMap<String, Fingerprints>(16, 0.75f, true);
+
+    /**
+     * Constructor
+     *
+     * @param pMaxTokens maximum number of tokens to remember
+     * @param pMaxFingerprints maximum number of fingerprints for all tokens together
+     * @param pTimeout time in milliseconds after which an unused token expires
+     */
+    PollTokenCache(int pMaxTokens, int pMaxFingerprints, long pTimeout) {
+        maxTokens = pMaxTokens;
+        maxFingerprints = Math.max(pMaxFingerprints, 1);
+        timeout = pTimeout;
+    }
+
+    /**
+     * Remove the value from a successful answer if the client has already got the same
+     * value for this request before. Nothing is done if the request has no poll token.
+     *
+     * @param pRequest the request
+     * @param pResponse answer for the request which is modified in place
+     */
+    void filter(JmxRequest pRequest, JSONObject pResponse) {
+        String token = pRequest.getProcessingConfig(ConfigKey.POLL_TOKEN);
+        if (token == null || !pResponse.containsKey("value") || !isSuccess(pResponse)) {
+            return;
+        }
+        long requestKey = fingerprint(pRequest.toJSON());
+        long valueKey = fingerprint(pResponse.get("value"));
+        if (update(token, requestKey, valueKey, System.currentTimeMillis())) {
+            pResponse.remove("value");
+            pResponse.put("unchanged", Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Number of tokens currently remembered
+     *
+     * @return number of tokens
+     */
+    synchronized int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Number of fingerprints remembered for all tokens
+     *
+     * @return number of fingerprints
+     */
+    synchronized int getTotalFingerprints() {
+        return totalFingerprints;
+    }
+
+    // Store the fingerprint and return true if it is the same as the one stored before
+    synchronized boolean update(String pToken, long pRequestKey, long pValueKey, long pNow) {
+        expire(pNow);
+        Fingerprints fingerprints = tokens.get(pToken);
+        if (fingerprints == null) {
+            fingerprints = new Fingerprints();
+            tokens.put(pToken, fingerprints);
+            if (tokens.size() > maxTokens) {
+                removeEldest();
+            }
+        }
+        fingerprints.lastAccess = pNow;
+        int size = fingerprints.size();
+        boolean unchanged = fingerprints.put(pRequestKey, pValueKey);
+        totalFingerprints += fingerprints.size() - size;
+        while (totalFingerprints > maxFingerprints) {
+            if (tokens.size() > 1) {
+                // The token just used is the most recently used one
+                removeEldest();
+            } else {
+                // Start over, the client will get full values once
+                totalFingerprints -= fingerprints.size();
+                fingerprints.clear();
+            }
+        }
+        return unchanged;
+    }
+
+    // Remove all tokens which have not been used within the timeout
+    private void expire(long pNow) {
+        Iterator<Fingerprints> it = tokens.values().iterator();
+        while (it.hasNext()) {
+            Fingerprints fingerprints = it.next();
+            if (pNow - fingerprints.lastAccess > timeout) {
+                totalFingerprints -= fingerprints.size();
+                it.remove();
+            } else {
+                // Sorted by access
+                break;
+            }
+        }
+    }
+
+    private void removeEldest() {
+        Iterator<Fingerprints> it = tokens.values().iterator();
+        totalFingerprints -= it.next().size();
+        it.remove();
+    }
+
+    private boolean isSuccess(JSONObject pResponse) {
+        Object status = pResponse.get("status");
+        return status instanceof Number && ((Number) status).intValue() == 200;
+    }
+
+    // Fingerprint of the JSON representation, calculated without creating the JSON string
+    static long fingerprint(Object pValue) {
+        FingerprintWriter writer = new FingerprintWriter();
+        try {
+            JSONValue.writeJSONString(pValue, writer);
+        } catch (IOException exp) {
+            // Cannot happen, nothing is written anywhere
+            throw new IllegalStateException("Cannot calculate fingerprint: " + exp, exp);
+        }
+        return writer.hash;
+    }
+
+    // Values known by a single client. The fingerprints are kept in an open addressing
+    // hash table of primitive longs, so that no objects are created per entry.
+    private static final class Fingerprints {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private long[] values = new long[INITIAL_CAPACITY];
+        private boolean[] used = new boolean[INITIAL_CAPACITY];
+        private int size;
+        private long lastAccess;
+
+        int size() {
+            return size;
+        }
+
+        // Store a value and return true if the same value was stored before for this key
+        boolean put(long pKey, long pValue) {
+            int idx = find(keys, used, pKey);
+            if (used[idx]) {
+                boolean same = values[idx] == pValue;
+                values[idx] = pValue;
+                return same;
+            }
+            keys[idx] = pKey;
+            values[idx] = pValue;
+            used[idx] = true;
+            // Keep the load factor below 0.5
+            if (++size * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            return false;
+        }
+
+        void clear() {
+            keys = new long[INITIAL_CAPACITY];
+            values = new long[INITIAL_CAPACITY];
+            used = new boolean[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private void resize(int pCapacity) {
+            long[] newKeys = new long[pCapacity];
+            long[] newValues = new long[pCapacity];
+            boolean[] newUsed = new boolean[pCapacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (used[i]) {
+                    int idx = find(newKeys, newUsed, keys[i]);
+                    newKeys[idx] = keys[i];
+                    newValues[idx] = values[i];
+                    newUsed[idx] = true;
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+            used = newUsed;
+        }
+
+        // Index of the key or of the free position where it belongs (linear probing)
+        private static int find(long[] pKeys, boolean[] pUsed, long pKey) {
+            int mask = pKeys.length - 1;
+            int idx = (int) (pKey ^ (pKey >>> 32)) & mask;
+            while (pUsed[idx] && pKeys[idx] != pKey) {
+                idx = (idx + 1) & mask;
+            }
+            return idx;
+        }
+    }
+
+    // Writer calculating a 64 bit FNV-1a hash of the characters written
+    private static final class FingerprintWriter extends Writer {
+
+        private long hash = 0xcbf29ce484222325L;
+
+        @Override
+        public void write(char[] pBuf, int pOff, int pLen) {
+            for (int i = pOff; i < pOff + pLen; i++) {
+                add(pBuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String pStr, int pOff, int pLen) {
+            for (int i = pOff; i < pOff + pLen; i++) {
+                add(pStr.charAt(i));
+            }
+        }
+
+        @Override
+        public void write(int pChar) {
+            add((char) pChar);
+        }
+
+        private void add(char pChar) {
+            hash = (hash ^ (pChar & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (pChar >>> 8)) * 0x100000001b3L;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
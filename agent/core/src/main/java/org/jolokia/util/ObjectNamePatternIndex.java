@@ -0,0 +1,190 @@
+package org.jolokia.util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.ObjectName;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+/**
+ * Index for looking up the first of a set of {@link ObjectName} patterns which matches
+ * a given MBean name, without checking every pattern.
+ *
+ * Patterns are grouped by their domain and, within a domain, by the first key property
+ * with a fixed value. For a lookup, only the patterns in the MBean's domain which are indexed
+ * by one of the MBean's key properties (or have no fixed key property at all) and the patterns
+ * with a wildcard domain are checked. Names which don't match any pattern are remembered, so
+ * that looking them up again is a single hash lookup.
+ *
+ * The index must be filled completely before it is used for lookups, it is not
+ * thread safe for modifications. Lookups can be done concurrently.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class ObjectNamePatternIndex<V> {
+
+    // Maximum number of names remembered to have no matching pattern
+    private static final int MAX_MISSES = 10000;
+
+    // Patterns by domain
+    private final Map<String,DomainIndex<V>> domains = new HashMap<String, DomainIndex<V>>();
+
+    // Patterns with a wildcard in the domain
+    private final List<Entry<V>> wildcardDomains = new ArrayList<Entry<V>>();
+
+    // Names which don't match any pattern
+    private final ConcurrentMap<ObjectName,Boolean> misses = new ConcurrentHashMap<ObjectName, Boolean>();
+
+    private int size;
+
+    /**
+     * Add a pattern to this index. If a name matches multiple patterns, the value of the pattern
+     * added first is returned by {@link #find(ObjectName)}.
+     *
+     * @param pPattern pattern to add. It is also possible to add a name which is not a pattern.
+     * @param pValue value to return for names matching this pattern
+     */
+    public void add(ObjectName pPattern, V pValue) {
+        Entry<V> entry = new Entry<V>(pPattern, pValue, size++);
+        String domain = pPattern.getDomain();
+        if (isWildcard(domain)) {
+            wildcardDomains.add(entry);
+        } else {
+            DomainIndex<V> domainIndex = domains.get(domain);
+            if (domainIndex == null) {
+                domainIndex = new DomainIndex<V>();
+                domains.put(domain, domainIndex);
+            }
+            domainIndex.add(entry);
+        }
+        misses.clear();
+    }
+
+    /**
+     * Find the value of the first pattern which matches the given name
+     *
+     * @param pName name to lookup
+     * @return value of the matching pattern or <code>null</code> if no pattern matches
+     */
+    public V find(ObjectName pName) {
+        if (size == 0 || misses.containsKey(pName)) {
+            return null;
+        }
+        Entry<V> found = null;
+        DomainIndex<V> domainIndex = domains.get(pName.getDomain());
+        if (domainIndex != null) {
+            found = domainIndex.find(pName);
+        }
+        found = findFirst(wildcardDomains, pName, found);
+        if (found == null) {
+            if (misses.size() >= MAX_MISSES) {
+                misses.clear();
+            }
+            misses.put(pName, Boolean.TRUE);
+            return null;
+        }
+        return found.value;
+    }
+
+    /**
+     * Number of patterns added
+     *
+     * @return number of patterns
+     */
+    public int size() {
+        return size;
+    }
+
+    // ========================================================================================
+
+    // Return the first entry of the given list which matches the name, if it was added before the
+    // given entry. The lists are sorted by the order the entries were added.
+    private static <V> Entry<V> findFirst(List<Entry<V>> pEntries, ObjectName pName, Entry<V> pFound) {
+        if (pEntries == null) {
+            return pFound;
+        }
+        for (Entry<V> entry : pEntries) {
+            if (pFound != null && entry.order > pFound.order) {
+                break;
+            }
+            if (entry.pattern.apply(pName)) {
+                return entry;
+            }
+        }
+        return pFound;
+    }
+
+    private static boolean isWildcard(String pValue) {
+        return pValue.indexOf('*') >= 0 || pValue.indexOf('?') >= 0;
+    }
+
+    // Patterns of a single domain
+    private static final class DomainIndex<V> {
+
+        // Patterns by their first fixed key property ("key=value")
+        private final Map<String,List<Entry<V>>> byProperty = new HashMap<String, List<Entry<V>>>();
+
+        // Patterns without a fixed key property
+        private final List<Entry<V>> unkeyed = new ArrayList<Entry<V>>();
+
+        private void add(Entry<V> pEntry) {
+            for (Map.Entry<String,String> prop : getProperties(pEntry.pattern).entrySet()) {
+                if (!isWildcard(prop.getValue())) {
+                    String key = prop.getKey() + "=" + prop.getValue();
+                    List<Entry<V>> entries = byProperty.get(key);
+                    if (entries == null) {
+                        entries = new ArrayList<Entry<V>>();
+                        byProperty.put(key, entries);
+                    }
+                    entries.add(pEntry);
+                    return;
+                }
+            }
+            unkeyed.add(pEntry);
+        }
+
+        private Entry<V> find(ObjectName pName) {
+            Entry<V> found = findFirst(unkeyed, pName, null);
+            if (!byProperty.isEmpty()) {
+                for (Map.Entry<String,String> prop : getProperties(pName).entrySet()) {
+                    found = findFirst(byProperty.get(prop.getKey() + "=" + prop.getValue()), pName, found);
+                }
+            }
+            return found;
+        }
+
+        private Map<String,String> getProperties(ObjectName pName) {
+            return (Map<String,String>) pName.getKeyPropertyList();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final ObjectName pattern;
+        private final V value;
+        private final int order;
+
+        private Entry(ObjectName pPattern, V pValue, int pOrder) {
+            pattern = pPattern;
+            value = pValue;
+            order = pOrder;
+        }
+    }
+}
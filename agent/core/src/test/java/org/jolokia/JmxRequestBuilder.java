@@ -78,4 +78,9 @@ public class JmxRequestBuilder {
         request.setExtraArgs(Arrays.asList(pExtraArgs));
         return this;
     }
+
+    public JmxRequestBuilder option(ConfigKey pKey, String pValue) {
+        request.setProcessingConfig(pKey.getKeyValue(),pValue);
+        return this;
+    }
 }
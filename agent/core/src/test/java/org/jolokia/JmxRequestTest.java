@@ -17,13 +17,17 @@ package org.jolokia;
  */
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.management.MalformedObjectNameException;
 
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 
 /**
@@ -54,4 +58,50 @@ public class JmxRequestTest {
         String combined = req.getExtraArgsAsPath();
         assertEquals(combined,"hello\\/world/second");
     }
+
+    @Test
+    public void testJobRequest() throws MalformedObjectNameException {
+        JmxRequest req = JmxRequestFactory.createGetRequest("/job/4711/wait", new HashMap<String, String[]>());
+        assertEquals(req.getType(),JmxRequest.Type.JOB);
+        assertEquals(req.getJobId(),"4711");
+        assertEquals(req.getOperation(),"wait");
+
+        req = JmxRequestFactory.createGetRequest("/job/4711", new HashMap<String, String[]>());
+        assertNull(req.getOperation());
+
+        Map<String,Object> map = new HashMap<String, Object>();
+        map.put("type","job");
+        map.put("id","4711");
+        map.put("operation","cancel");
+        req = JmxRequestFactory.createPostRequest(map);
+        assertEquals(req.getJobId(),"4711");
+        assertEquals(req.getOperation(),"cancel");
+        assertEquals(req.toJSON().get("id"),"4711");
+    }
+
+    @Test
+    public void testTypedValues() throws MalformedObjectNameException {
+        Map<String,Object> map = new HashMap<String, Object>();
+        map.put("type","exec");
+        map.put("mbean","java.lang:type=Memory");
+        map.put("operation","doIt");
+        map.put("arguments",Arrays.asList(10L,Arrays.asList(1L,2L),null));
+        JmxRequest req = JmxRequestFactory.createPostRequest(map);
+        assertEquals(req.getArguments(),Arrays.asList(10L,Arrays.asList(1L,2L),null));
+        assertTrue(req.getExtraArgs().isEmpty());
+        assertEquals(req.toJSON().get("arguments"),req.getArguments());
+
+        map = new HashMap<String, Object>();
+        map.put("type","write");
+        map.put("mbean","java.lang:type=Memory");
+        map.put("attribute","Verbose");
+        map.put("value",true);
+        req = JmxRequestFactory.createPostRequest(map);
+        assertEquals(req.getRawValue(),true);
+        assertEquals(req.getValue(),"true");
+
+        map.put("value",Arrays.asList(1L,null));
+        req = JmxRequestFactory.createPostRequest(map);
+        assertEquals(req.getValue(),"1,[null]");
+    }
 }
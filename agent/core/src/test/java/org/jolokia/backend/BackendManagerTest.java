@@ -119,6 +119,9 @@ public class BackendManagerTest implements LogHandler {
         public boolean useReturnValueWithPath(JmxRequest pJmxRequest) {
             return false;
         }
+
+        public void destroy() throws JMException {
+        }
     }
 
     // ========================================================
@@ -138,6 +141,9 @@ public class BackendManagerTest implements LogHandler {
         public boolean useReturnValueWithPath(JmxRequest pJmxRequest) {
             return false;
         }
+
+        public void destroy() throws JMException {
+        }
     }
 
 }
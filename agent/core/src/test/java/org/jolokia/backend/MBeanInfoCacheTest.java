@@ -0,0 +1,186 @@
+package org.jolokia.backend;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.lang.reflect.*;
+
+import javax.management.*;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class MBeanInfoCacheTest {
+
+    private MBeanServer server;
+    private ObjectName name;
+    private MBeanInfoCache cache;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        server = MBeanServerFactory.newMBeanServer();
+        name = new ObjectName("jolokia.test:type=cache");
+        server.registerMBean(new Test1(), name);
+        cache = new MBeanInfoCache();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        cache.destroy();
+    }
+
+    @Test
+    public void localHit() throws Exception {
+        MBeanInfo info = cache.getMBeanInfo(server, name);
+        assertSame(cache.getMBeanInfo(server, name), info);
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+        assertEquals(cache.getSize(), 1);
+        assertEquals(cache.getHitRatio(), 0.5, 0.001);
+    }
+
+    @Test
+    public void localInvalidation() throws Exception {
+        MBeanInfo info = cache.getMBeanInfo(server, name);
+        assertEquals(info.getAttributes()[0].getName(), "Name");
+        server.unregisterMBean(name);
+        assertEquals(cache.getSize(), 0);
+        server.registerMBean(new Test2(), name);
+        info = cache.getMBeanInfo(server, name);
+        assertEquals(info.getAttributes()[0].getName(), "Count");
+        assertEquals(cache.getMisses(), 2);
+    }
+
+    @Test(expectedExceptions = InstanceNotFoundException.class)
+    public void unknownMBean() throws Exception {
+        cache.getMBeanInfo(server, new ObjectName("jolokia.test:type=unknown"));
+    }
+
+    @Test
+    public void remoteTtl() throws Exception {
+        MBeanServerConnection connection = remoteConnection();
+        MBeanInfo info = cache.getMBeanInfo(connection, name);
+        assertSame(cache.getMBeanInfo(connection, name), info);
+        assertEquals(cache.getHits(), 1);
+
+        cache.setTtl(0);
+        assertNotNull(cache.getMBeanInfo(connection, name));
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 2);
+    }
+
+    @Test
+    public void localTtl() throws Exception {
+        ObjectName dynName = new ObjectName("jolokia.test:type=dynamic");
+        Dynamic dynamic = new Dynamic();
+        server.registerMBean(dynamic, dynName);
+        cache.setTtl(50);
+
+        MBeanInfo info = cache.getMBeanInfo(server, dynName);
+        assertEquals(info.getDescription(), "1");
+        dynamic.version = 2;
+        assertSame(cache.getMBeanInfo(server, dynName), info);
+
+        // A changed MBeanInfo is picked up after the time to live, even
+        // though the MBean didn't get re-registered
+        Thread.sleep(100);
+        assertEquals(cache.getMBeanInfo(server, dynName).getDescription(), "2");
+    }
+
+    @Test
+    public void clear() throws Exception {
+        cache.getMBeanInfo(server, name);
+        cache.getMBeanInfo(server, name);
+        cache.clear();
+        assertEquals(cache.getSize(), 0);
+        assertEquals(cache.getHits(), 0);
+        assertEquals(cache.getMisses(), 0);
+        assertEquals(cache.getHitRatio(), 0.0, 0.001);
+    }
+
+    // A connection which is not an MBeanServer, like a JSR-160 connection
+    private MBeanServerConnection remoteConnection() {
+        return (MBeanServerConnection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class[] { MBeanServerConnection.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object target = method.getDeclaringClass() == Object.class ? this : server;
+                        try {
+                            return method.invoke(target, args);
+                        } catch (InvocationTargetException exp) {
+                            throw exp.getCause();
+                        }
+                    }
+                });
+    }
+
+    // ===================================================================================
+
+    public interface Test1MBean {
+        String getName();
+    }
+
+    public static class Test1 implements Test1MBean {
+        public String getName() {
+            return "jolokia";
+        }
+    }
+
+    // MBean whose MBeanInfo changes without any re-registration
+    public static class Dynamic implements DynamicMBean {
+        private volatile int version = 1;
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName());
+        }
+
+        public AttributeList getAttributes(String[] attributes) {
+            return new AttributeList();
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        public MBeanInfo getMBeanInfo() {
+            return new MBeanInfo(Dynamic.class.getName(), String.valueOf(version), null, null, null, null);
+        }
+    }
+
+    public interface Test2MBean {
+        int getCount();
+    }
+
+    public static class Test2 implements Test2MBean {
+        public int getCount() {
+            return 42;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.jolokia.config;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class IpPrefixTrieTest {
+
+    @Test
+    public void ipv4() {
+        IpPrefixTrie trie = create("10.0.15.16", "11.0.0.1/16", "192.168.15.3/255.255.255.0");
+        String [][] fixture = new String[][] {
+                { "10.0.15.16", "true" },
+                { "10.0.15.17", "false" },
+                { "11.0.200.1", "true" },
+                { "11.1.0.1", "false" },
+                { "192.168.15.250", "true" },
+                { "192.168.16.3", "false" },
+                { "planck", "false" },
+                { "10.0.15", "false" }
+        };
+        for (String[] check : fixture) {
+            assertEquals(trie.matches(check[0]), Boolean.parseBoolean(check[1]), check[0]);
+        }
+    }
+
+    @Test
+    public void subnets() {
+        String [][] fixture = new String[][]{
+                // IP to check, net/ip, result
+                { "10.0.15.16", "10.0.15.16", "true" },
+                { "10.0.15.16", "10.0.0.1/16", "true"},
+                { "10.0.15.16", "10.0.0.1/24", "false"},
+                { "10.0.15.16", "10.0.0.1/255.255.0.0", "true"},
+                { "10.0.15.16", "10.0.0.1/255.255.255.0", "false"},
+                { "A.0.16.8", "10.0.0.1/8", "false"},
+                { "10.0.16.8.b", "10.0.0.1/8", "false"},
+        };
+        for (String[] check : fixture) {
+            assertEquals(create(check[1]).matches(check[0]), Boolean.parseBoolean(check[2]),
+                         "Net: " + check[1] + ", IP to check: " + check[0]);
+        }
+    }
+
+    @Test
+    public void nonContiguousNetmask() {
+        IpPrefixTrie trie = create("10.0.0.1/255.255.1.0", "11.0.0.0/8");
+        assertTrue(trie.matches("10.0.14.200"));
+        assertFalse(trie.matches("10.0.15.16"));
+        assertFalse(trie.matches("10.1.14.200"));
+        assertTrue(trie.matches("11.1.1.1"));
+    }
+
+    @Test
+    public void ipv6() {
+        IpPrefixTrie trie = create("fe80::/10", "2001:db8::1", "::1");
+        assertTrue(trie.matches("fe80::1%eth0"));
+        assertTrue(trie.matches("febf:ffff::1"));
+        assertFalse(trie.matches("fec0::1"));
+        assertTrue(trie.matches("2001:0db8:0:0:0:0:0:1"));
+        assertTrue(trie.matches("[::1]"));
+        assertFalse(trie.matches("2001:db8::2"));
+        // IPv4 and IPv6 are kept apart
+        assertFalse(trie.matches("0.0.0.1"));
+    }
+
+    @Test
+    public void mappedIpv4() {
+        IpPrefixTrie trie = create("10.0.0.0/8");
+        assertTrue(trie.matches("::ffff:10.1.2.3"));
+    }
+
+    @Test
+    public void allAndNothing() {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        assertTrue(trie.isEmpty());
+        assertFalse(trie.matches("10.0.0.1"));
+        trie.add("0.0.0.0/0");
+        assertFalse(trie.isEmpty());
+        assertTrue(trie.matches("10.0.0.1"));
+        assertFalse(trie.matches("::1"));
+    }
+
+    @Test
+    public void parseAddress() {
+        assertEquals(IpPrefixTrie.parseAddress("10.0.15.255").length, 4);
+        assertEquals(IpPrefixTrie.parseAddress("fe80::1").length, 16);
+        assertNull(IpPrefixTrie.parseAddress("10.0.15.256"));
+        assertNull(IpPrefixTrie.parseAddress("10.0.15"));
+        assertNull(IpPrefixTrie.parseAddress("10.0.15.1a"));
+        assertNull(IpPrefixTrie.parseAddress("fe80::1::2"));
+        assertNull(IpPrefixTrie.parseAddress("localhost"));
+        assertNull(IpPrefixTrie.parseAddress(""));
+        assertNull(IpPrefixTrie.parseAddress(null));
+    }
+
+    @Test
+    public void invalidFormat() {
+        for (String spec : new String[] {
+                "10.0.16.27.8", "10.0.16.27/43", "10.0.16.27/35", "10.0.16.27/43434",
+                "10.0.16.27.13/24", "A.0.16.27/24",
+                "10.0.16.27/255.255.255.255.255", "10.0.16.27/500.255.255.255",
+                "fe80::/129", "10.0.16.27/x" }) {
+            try {
+                new IpPrefixTrie().add(spec);
+                fail("Invalid specification " + spec);
+            } catch (IllegalArgumentException exp) {}
+        }
+    }
+
+    private IpPrefixTrie create(String ... pSpecs) {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        for (String spec : pSpecs) {
+            trie.add(spec);
+        }
+        return trie;
+    }
+}
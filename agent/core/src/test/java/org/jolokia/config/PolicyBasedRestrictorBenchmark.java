@@ -0,0 +1,195 @@
+package org.jolokia.config;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.jolokia.util.ObjectNamePatternIndex;
+
+/**
+ * Micro benchmark for the access checks of the {@link PolicyBasedRestrictor}, comparing
+ * a restrictor without decision cache with a restrictor using the cache. As a baseline,
+ * the check as done by the restrictor before the policy was compiled is measured, too
+ * (see {@link BaselineRestrictor}).
+ *
+ * This is not a unit test, it must be started by hand:
+ *
+ * <pre>
+ *   java -cp ... org.jolokia.config.PolicyBasedRestrictorBenchmark [iterations]
+ * </pre>
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public final class PolicyBasedRestrictorBenchmark {
+
+    // Number of MBeans in the policy and the number of attributes checked per MBean
+    private static final int MBEANS = 50;
+    private static final int ATTRIBUTES = 40;
+
+    // Attributes denied for every MBean
+    private static final String[] DENIED_ATTRIBUTES = new String[] { "Secret*", "*Password", "Internal*State" };
+
+    private PolicyBasedRestrictorBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        String policy = createPolicy();
+        List<ObjectName> names = createNames();
+
+        PolicyBasedRestrictor uncached = new PolicyBasedRestrictor(toStream(policy), 0);
+        PolicyBasedRestrictor cached = new PolicyBasedRestrictor(toStream(policy));
+        BaselineRestrictor baseline = createBaseline();
+
+        // Warm up
+        run(uncached, names, iterations / 10 + 1);
+        run(cached, names, iterations / 10 + 1);
+        runBaseline(baseline, names, iterations / 10 + 1);
+
+        report("previous restrictor (baseline)", runBaseline(baseline, names, iterations), names, iterations);
+        report("compiled policy", run(uncached, names, iterations), names, iterations);
+        report("compiled policy + cache", run(cached, names, iterations), names, iterations);
+    }
+
+    // A policy which denies some attributes given with wildcards for each MBean
+    private static String createPolicy() {
+        StringBuilder policy = new StringBuilder("<restrict><deny>");
+        for (int i = 0; i < MBEANS; i++) {
+            policy.append("<mbean><name>bench:type=Test,name=mbean").append(i).append("</name>");
+            for (String attribute : DENIED_ATTRIBUTES) {
+                policy.append("<attribute>").append(attribute).append("</attribute>");
+            }
+            policy.append("<operation>shutdown*</operation>")
+                  .append("</mbean>");
+        }
+        policy.append("<mbean><name>bench:type=Other,*</name><attribute>*</attribute></mbean>");
+        policy.append("</deny></restrict>");
+        return policy.toString();
+    }
+
+    // The same policy for the previous restrictor
+    private static BaselineRestrictor createBaseline() throws MalformedObjectNameException {
+        BaselineRestrictor ret = new BaselineRestrictor();
+        for (int i = 0; i < MBEANS; i++) {
+            ret.addReadAttributes(new ObjectName("bench:type=Test,name=mbean" + i),
+                                  new HashSet<String>(Arrays.asList(DENIED_ATTRIBUTES)));
+        }
+        ret.addReadAttributes(new ObjectName("bench:type=Other,*"), new HashSet<String>(Arrays.asList("*")));
+        return ret;
+    }
+
+    private static List<ObjectName> createNames() throws MalformedObjectNameException {
+        List<ObjectName> names = new ArrayList<ObjectName>();
+        for (int i = 0; i < MBEANS; i++) {
+            names.add(new ObjectName("bench:type=Test,name=mbean" + i));
+        }
+        return names;
+    }
+
+    private static long run(PolicyBasedRestrictor pRestrictor, List<ObjectName> pNames, int pIterations) {
+        long start = System.nanoTime();
+        int allowed = 0;
+        for (int i = 0; i < pIterations; i++) {
+            for (ObjectName name : pNames) {
+                for (int a = 0; a < ATTRIBUTES; a++) {
+                    if (pRestrictor.isAttributeReadAllowed(name, "Attribute" + a)) {
+                        allowed++;
+                    }
+                }
+            }
+        }
+        consume(allowed);
+        return System.nanoTime() - start;
+    }
+
+    private static long runBaseline(BaselineRestrictor pRestrictor, List<ObjectName> pNames, int pIterations) {
+        long start = System.nanoTime();
+        int allowed = 0;
+        for (int i = 0; i < pIterations; i++) {
+            for (ObjectName name : pNames) {
+                for (int a = 0; a < ATTRIBUTES; a++) {
+                    if (pRestrictor.isAttributeReadAllowed(name, "Attribute" + a)) {
+                        allowed++;
+                    }
+                }
+            }
+        }
+        consume(allowed);
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String pLabel, long pNanos, List<ObjectName> pNames, int pIterations) {
+        long checks = (long) pIterations * pNames.size() * ATTRIBUTES;
+        System.out.println(String.format("%-30s %8d ms %8.1f ns/check", pLabel, pNanos / 1000000, (double) pNanos / checks));
+    }
+
+    private static ByteArrayInputStream toStream(String pPolicy) throws UnsupportedEncodingException {
+        return new ByteArrayInputStream(pPolicy.getBytes("UTF-8"));
+    }
+
+    // Prevent the JIT from removing the loops
+    private static void consume(int pValue) {
+        if (pValue == -1) {
+            System.out.println(pValue);
+        }
+    }
+
+    // Check for reading an attribute as done by PolicyBasedRestrictor before the policy was
+    // compiled, with the same data structures. Only the deny section is kept since the
+    // benchmark policy has no <commands> and hence every type is allowed by default.
+    private static final class BaselineRestrictor {
+        private ObjectNamePatternIndex<ObjectName> patterns = new ObjectNamePatternIndex<ObjectName>();
+        private Map<ObjectName,Set<String>> readAttributes = new HashMap<ObjectName, Set<String>>();
+
+        void addReadAttributes(ObjectName pOName, Set<String> pReadAttributes) {
+            readAttributes.put(pOName,pReadAttributes);
+            if (pOName.isPattern()) {
+                patterns.add(pOName,pOName);
+            }
+        }
+
+        boolean isAttributeReadAllowed(ObjectName pName, String pAttribute) {
+            return !matches(pName,pAttribute);
+        }
+
+        private boolean matches(ObjectName pName, String pValue) {
+            Set<String> values = readAttributes.get(pName);
+            if (values == null) {
+                ObjectName pattern = patterns.find(pName);
+                if (pattern != null) {
+                    values = readAttributes.get(pattern);
+                }
+            }
+            return values != null && (values.contains(pValue) || wildcardMatch(values,pValue));
+        }
+
+        private boolean wildcardMatch(Set<String> pValues, String pValue) {
+            for (String pattern : pValues) {
+                if (pattern.contains("*") && pValue.matches(pattern.replaceAll("\\*",".*"))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -71,6 +71,7 @@ public class PolicyBasedRestrictorTest {
                     (check[1].equals("false") ? "not " : "") +
                     "allowed",check[1],res);
         }
+        assertTrue(restrictor.isRemoteHostNameRequired());
     }
 
     @Test
@@ -84,6 +85,7 @@ public class PolicyBasedRestrictorTest {
 
         // No hosts set.
         assertTrue(restrictor.isRemoteAccessAllowed("10.0.1.125"));
+        assertFalse(restrictor.isRemoteHostNameRequired());
 
     }
 
@@ -117,6 +119,28 @@ public class PolicyBasedRestrictorTest {
         assertTrue(restrictor.isOperationAllowed(new ObjectName("java.lang:type=Blubber,name=x"),"xavier"));
     }
 
+    @Test
+    public void cachedDecisions() throws MalformedObjectNameException {
+        PolicyBasedRestrictor cached = new PolicyBasedRestrictor(getClass().getResourceAsStream("/access-sample4.xml"), 3);
+        PolicyBasedRestrictor uncached = new PolicyBasedRestrictor(getClass().getResourceAsStream("/access-sample4.xml"), 0);
+        ObjectName[] names = new ObjectName[] {
+                new ObjectName("java.lang:type=Memory"),
+                new ObjectName("jolokia:type=Config"),
+                new ObjectName("java.lang:type=Blubber,name=x")
+        };
+        String[] values = new String[] { "HeapMemoryUsage", "NonHeapMemoryUsage", "BlaUsage", "Debug", "gc", "xavier" };
+        // Twice, so that the second round is answered from the cache (which is also cleared when full)
+        for (int i = 0; i < 2; i++) {
+            for (ObjectName name : names) {
+                for (String value : values) {
+                    assertEquals(cached.isAttributeReadAllowed(name, value), uncached.isAttributeReadAllowed(name, value));
+                    assertEquals(cached.isAttributeWriteAllowed(name, value), uncached.isAttributeWriteAllowed(name, value));
+                    assertEquals(cached.isOperationAllowed(name, value), uncached.isOperationAllowed(name, value));
+                }
+            }
+        }
+    }
+
     @Test
     public void allow() throws MalformedObjectNameException {
         InputStream is = getClass().getResourceAsStream("/access-sample5.xml");
@@ -1,5 +1,7 @@
 package org.jolokia.converter;
 
+import java.util.Arrays;
+
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.testng.annotations.BeforeTest;
@@ -8,6 +10,7 @@ import org.testng.annotations.Test;
 import static org.testng.Assert.fail;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 
 
 /*
@@ -121,6 +124,60 @@ public class StringToObjectConverterTest {
         } catch (IllegalArgumentException exp) {}
     }
 
+    @Test
+    public void jsonValueConversions() {
+        assertEquals(10,converter.convertFromJson("int",10L));
+        assertEquals((short) 10,converter.convertFromJson(Short.class.getName(),10L));
+        assertEquals(10L,converter.convertFromJson("long",10L));
+        assertEquals(10.0,converter.convertFromJson("double",10L));
+        assertEquals(1.5f,converter.convertFromJson("float",1.5));
+        assertEquals(true,converter.convertFromJson("boolean",true));
+        assertEquals("10",converter.convertFromJson(String.class.getName(),10L));
+        assertEquals(10,converter.convertFromJson("int","10"));
+        assertNull(converter.convertFromJson("int",null));
+
+        // Lossy conversions are not done
+        try {
+            converter.convertFromJson("int",1.5);
+            fail("Decimal to int");
+        } catch (NumberFormatException exp) {}
+        try {
+            converter.convertFromJson("byte",1000L);
+            fail("Out of range");
+        } catch (NumberFormatException exp) {}
+
+        JSONObject json = new JSONObject();
+        json.put("value",10L);
+        assertEquals(json,converter.convertFromJson(JSONObject.class.getName(),json));
+    }
+
+    @Test
+    public void jsonArrayConversions() {
+        JSONArray array = new JSONArray();
+        array.addAll(Arrays.asList(10L,20L,30L));
+        long[] longs = (long[]) converter.convertFromJson(new long[0].getClass().getName(),array);
+        assertEquals(3,longs.length);
+        assertEquals(30L,longs[2]);
+
+        Integer[] ints = (Integer[]) converter.convertFromJson(new Integer[0].getClass().getName(),Arrays.asList(10L,null));
+        assertEquals(10,(int) ints[0]);
+        assertNull(ints[1]);
+
+        String[] strings = (String[]) converter.convertFromJson(new String[0].getClass().getName(),Arrays.asList("a,b","c"));
+        assertEquals(2,strings.length);
+        assertEquals("a,b",strings[0]);
+
+        // Arrays for non array types are given as comma separated list
+        assertEquals("10,20,30",converter.convertFromJson(String.class.getName(),array));
+        assertEquals(array,converter.convertFromJson(JSONArray.class.getName(),array));
+    }
+
+    @Test
+    public void converterIsReused() {
+        assertTrue(converter.getConverter("int") == converter.getConverter("int"));
+        assertTrue(converter.getConverter("[J") == converter.getConverter("[J"));
+    }
+
     @Test
     public void checkNull() {
         Object obj = converter.convertFromString(new int[0].getClass().getName(),"[null]");
@@ -0,0 +1,105 @@
+package org.jolokia.converter.json;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.Stack;
+
+import org.jolokia.converter.StringToObjectConverter;
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class BeanExtractorTest {
+
+    private ObjectToJsonConverter converter;
+
+    @BeforeMethod
+    public void setup() {
+        converter = new ObjectToJsonConverter(new StringToObjectConverter(),null);
+        converter.setupContext(null,null,null,null);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        converter.clearContext();
+    }
+
+    @Test
+    public void extract() throws Exception {
+        Map result = (Map) converter.extractObject(new TestBean(), new Stack<String>(), true);
+        assertEquals(result.get("name"), "jolokia");
+        assertEquals(result.get("enabled"), "true");
+
+        Stack<String> path = new Stack<String>();
+        path.push("name");
+        assertEquals(converter.extractObject(new TestBean(), path, true), "jolokia");
+    }
+
+    @Test
+    public void classCanBeUnloaded() throws Exception {
+        URL classes = TestBean.class.getProtectionDomain().getCodeSource().getLocation();
+        URLClassLoader loader = new URLClassLoader(new URL[] { classes }, null);
+        Class beanClass = loader.loadClass(TestBean.class.getName());
+        assertNotSame(beanClass, TestBean.class);
+
+        Map result = (Map) converter.extractObject(beanClass.newInstance(), new Stack<String>(), true);
+        assertEquals(result.get("name"), "jolokia");
+
+        // The cached getters must not keep the class and its class loader alive
+        WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        beanClass = null;
+        result = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(ref.get(), "Class loader is still referenced");
+    }
+
+    @Test
+    public void getterSurvivesGc() throws Exception {
+        BeanExtractor extractor = new BeanExtractor();
+        Method getter = extractor.getGetter(TestBean.class, "name");
+        assertNotNull(getter);
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        // Still the same method, it has not been looked up again
+        assertSame(extractor.getGetter(TestBean.class, "name"), getter);
+    }
+
+    public static class TestBean {
+        public String getName() {
+            return "jolokia";
+        }
+
+        public boolean isEnabled() {
+            return true;
+        }
+    }
+}
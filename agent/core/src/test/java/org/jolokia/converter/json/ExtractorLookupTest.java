@@ -0,0 +1,68 @@
+package org.jolokia.converter.json;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.util.*;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class ExtractorLookupTest {
+
+    private ListExtractor listExtractor;
+    private MapExtractor mapExtractor;
+    private BeanExtractor beanExtractor;
+    private ExtractorLookup lookup;
+
+    @BeforeMethod
+    public void setup() {
+        listExtractor = new ListExtractor();
+        mapExtractor = new MapExtractor();
+        beanExtractor = new BeanExtractor();
+        lookup = new ExtractorLookup(Arrays.<Extractor>asList(listExtractor, mapExtractor, beanExtractor));
+    }
+
+    @Test
+    public void firstMatchingExtractor() {
+        assertSame(lookup.getExtractor(ArrayList.class), listExtractor);
+        assertSame(lookup.getExtractor(HashMap.class), mapExtractor);
+        assertSame(lookup.getExtractor(String.class), beanExtractor);
+        // Cached lookups return the same
+        assertSame(lookup.getExtractor(ArrayList.class), listExtractor);
+        assertSame(lookup.getExtractor(String.class), beanExtractor);
+    }
+
+    @Test
+    public void setters() {
+        assertSame(lookup.getSetter(LinkedList.class), listExtractor);
+        assertSame(lookup.getSetter(TreeMap.class), mapExtractor);
+        assertSame(lookup.getSetter(Date.class), beanExtractor);
+    }
+
+    @Test
+    public void noExtractor() {
+        ExtractorLookup empty = new ExtractorLookup(Arrays.<Extractor>asList(listExtractor));
+        assertNull(empty.getExtractor(String.class));
+        assertNull(empty.getSetter(String.class));
+    }
+}
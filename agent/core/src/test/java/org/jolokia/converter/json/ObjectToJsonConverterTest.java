@@ -1,14 +1,19 @@
 package org.jolokia.converter.json;
 
+import org.jolokia.ConfigKey;
 import org.jolokia.JmxRequest;
 import org.jolokia.JmxRequestBuilder;
 import org.jolokia.converter.StringToObjectConverter;
+import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.parser.JSONParser;
 import org.testng.annotations.*;
 
 import javax.management.*;
 
 import java.io.File;
+import java.io.StringWriter;
 import java.util.*;
 
 import static org.testng.AssertJUnit.*;
@@ -112,9 +117,97 @@ public class ObjectToJsonConverterTest {
         ret = converter.convertToJson(file,req,true);
         assertEquals(ret.get("value"),"myFile");
     }
+
+    @Test
+    public void streamedValue() throws Exception {
+        Map<String,Object> attributes = new LinkedHashMap<String, Object>();
+        attributes.put("bean",new SelfRefBean1());
+        attributes.put("list",Arrays.asList(1,2,3));
+        attributes.put("file",new File("myFile"));
+        Map<String,Object> value = new LinkedHashMap<String, Object>();
+        value.put("jolokia:type=one",attributes);
+        value.put("jolokia:type=two",Collections.singletonMap("name","two"));
+        value.put("jolokia:type=three",null);
+
+        JmxRequest req = new JmxRequestBuilder(JmxRequest.Type.READ,"jolokia:*").build();
+        JSONObject ret = converter.convertToJson(value,req,false,true);
+        assertTrue(ret.get("value") instanceof JSONStreamAware);
+        assertFalse(ret.get("value") instanceof Map);
+
+        // Same answer as when converted directly
+        Object expected = converter.convertToJson(value,req,false).get("value");
+        StringWriter writer = new StringWriter();
+        ((JSONStreamAware) ret.get("value")).writeJSONString(writer);
+        assertEquals(new JSONParser().parse(((JSONAware) expected).toJSONString()),
+                     new JSONParser().parse(writer.toString()));
+
+        // Limits of the request apply
+        req = new JmxRequestBuilder(JmxRequest.Type.READ,"jolokia:*").option(ConfigKey.MAX_DEPTH,"1").build();
+        ret = converter.convertToJson(value,req,false,true);
+        Map parsed = (Map) new JSONParser().parse(((JSONAware) ret.get("value")).toJSONString());
+        assertTrue(((Map) parsed.get("jolokia:type=one")).get("bean") instanceof String);
+
+        // Other values are converted directly
+        ret = converter.convertToJson(new File("myFile"),req,false,true);
+        assertTrue(ret.get("value") instanceof Map);
+    }
+
+    @Test
+    public void contextIsReused() throws AttributeNotFoundException {
+        ObjectToJsonConverter.StackContext ctx = converter.getStackContextLocal().get();
+        converter.extractObject(new SelfRefBean1(),new Stack<String>(),true);
+        assertEquals(0,ctx.stackLevel());
+        assertEquals(0,ctx.size());
+        converter.clearContext();
+        // Nothing of the request is kept
+        assertNull(ctx.getValueFaultHandler());
+        assertNull(ctx.getMaxDepth());
+        assertEquals(0,ctx.getObjectCount());
+        converter.setupContext(null,null,null,null);
+        assertSame(ctx,converter.getStackContextLocal().get());
+        assertEquals(0,ctx.getObjectCount());
+    }
+
+    @Test
+    public void identityBasedCycleDetection() throws AttributeNotFoundException {
+        // Equal, but different objects are not considered to be a cycle, and hashCode() is not called
+        Map result = (Map) converter.extractObject(new EqualBean(new EqualBean(null)),new Stack<String>(),true);
+        assertTrue("Inner bean should be resolved",result.get("inner") instanceof Map);
+
+        // A real cycle is reported with the identity hash code
+        EqualBean bean = new EqualBean(null);
+        bean.inner = new EqualBean(bean);
+        result = (Map) converter.extractObject(bean,new Stack<String>(),true);
+        assertEquals("[Reference " + EqualBean.class.getName() + "@" + Integer.toHexString(System.identityHashCode(bean)) + "]",
+                     ((Map) result.get("inner")).get("inner"));
+    }
+
     // ============================================================================
     // TestBeans:
 
+    class EqualBean {
+
+        EqualBean inner;
+
+        EqualBean(EqualBean pInner) {
+            inner = pInner;
+        }
+
+        public EqualBean getInner() {
+            return inner;
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            return pOther instanceof EqualBean;
+        }
+
+        @Override
+        public int hashCode() {
+            throw new UnsupportedOperationException("hashCode() must not be called");
+        }
+    }
+
     class SelfRefBean1 {
 
         SelfRefBean2 bean2;
@@ -0,0 +1,190 @@
+package org.jolokia.handler;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.util.*;
+
+import javax.management.*;
+
+import org.jolokia.JmxRequest;
+import org.jolokia.JmxRequestBuilder;
+import org.jolokia.JmxRequestFactory;
+import org.jolokia.backend.MBeanInfoCache;
+import org.jolokia.config.AllowAllRestrictor;
+import org.jolokia.converter.StringToObjectConverter;
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class ExecHandlerTest {
+
+    private ExecHandler handler;
+    private MBeanInfoCache cache;
+    private MBeanServer server;
+    private ObjectName name;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        cache = new MBeanInfoCache();
+        handler = new ExecHandler(new AllowAllRestrictor(), new StringToObjectConverter(), cache);
+        server = MBeanServerFactory.newMBeanServer();
+        name = new ObjectName("jolokia.test:type=exec");
+        server.registerMBean(new Calc(), name);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        handler.destroy();
+        cache.destroy();
+    }
+
+    @Test
+    public void simple() throws Exception {
+        assertEquals(exec("add", "1", "2"), 3);
+        assertEquals(exec("add", "3", "4"), 7);
+        // MBeanInfo is fetched only once
+        assertEquals(cache.getMisses(), 1);
+    }
+
+    @Test
+    public void arrays() throws Exception {
+        assertEquals(exec("sum", "1,2,3"), 6L);
+        assertEquals(exec("sum", "[null]"), 0L);
+    }
+
+    @Test
+    public void overloaded() throws Exception {
+        assertEquals(exec("scale(int,int)", "2", "3"), 6);
+        assertEquals(exec("scale(double)", "1.5"), 3.0);
+        try {
+            exec("scale", "2");
+            fail("Overloaded operation without signature");
+        } catch (IllegalArgumentException exp) {
+            assertTrue(exp.getMessage().contains("overloaded"));
+        }
+        try {
+            exec("scale(long)", "2");
+            fail("Unknown signature");
+        } catch (IllegalArgumentException exp) {
+            assertTrue(exp.getMessage().contains("Known signatures"));
+        }
+    }
+
+    @Test
+    public void wrongNumberOfArguments() throws Exception {
+        try {
+            exec("add", "1");
+            fail("Missing argument");
+        } catch (IllegalArgumentException exp) {
+            assertTrue(exp.getMessage().contains("requires 2 parameters"));
+        }
+    }
+
+    @Test
+    public void reregistration() throws Exception {
+        assertEquals(exec("add", "1", "2"), 3);
+        server.unregisterMBean(name);
+        try {
+            exec("add", "1", "2");
+            fail("MBean is unregistered");
+        } catch (InstanceNotFoundException exp) {
+            // Expected
+        }
+
+        // Same name, other signature
+        server.registerMBean(new LongCalc(), name);
+        assertEquals(exec("add", "1", "2"), 3L);
+    }
+
+    @Test
+    public void typedArguments() throws Exception {
+        assertEquals(execPost("add", 1L, 2L), 3);
+        assertEquals(execPost("sum", Arrays.asList(1L, 2L, 3L)), 6L);
+        assertEquals(execPost("sum", "1,2,3"), 6L);
+        assertEquals(execPost("scale(double)", 1.5), 3.0);
+        try {
+            execPost("add", 1.5, 2L);
+            fail("Lossy conversion");
+        } catch (NumberFormatException exp) {
+            // Expected
+        }
+    }
+
+    private Object execPost(String pOperation, Object ... pArgs) throws Exception {
+        Map<String,Object> map = new HashMap<String, Object>();
+        map.put("type", "exec");
+        map.put("mbean", name.getCanonicalName());
+        map.put("operation", pOperation);
+        map.put("arguments", Arrays.asList(pArgs));
+        return handler.handleRequest(server, JmxRequestFactory.createPostRequest(map));
+    }
+
+    private Object exec(String pOperation, String ... pArgs) throws Exception {
+        JmxRequest request = new JmxRequestBuilder(JmxRequest.Type.EXEC, name)
+                .operation(pOperation)
+                .extraArgs(new ArrayList<String>(Arrays.asList(pArgs)))
+                .build();
+        return handler.handleRequest(server, request);
+    }
+
+    // ===================================================================================
+
+    public interface CalcMBean {
+        int add(int a, int b);
+        long sum(long[] values);
+        int scale(int value, int factor);
+        double scale(double value);
+    }
+
+    public static class Calc implements CalcMBean {
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public long sum(long[] values) {
+            long ret = 0;
+            if (values != null) {
+                for (long value : values) {
+                    ret += value;
+                }
+            }
+            return ret;
+        }
+
+        public int scale(int value, int factor) {
+            return value * factor;
+        }
+
+        public double scale(double value) {
+            return value * 2;
+        }
+    }
+
+    public interface LongCalcMBean {
+        long add(long a, long b);
+    }
+
+    public static class LongCalc implements LongCalcMBean {
+        public long add(long a, long b) {
+            return a + b;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.jolokia.handler;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import javax.management.*;
+
+import org.jolokia.JmxRequest;
+import org.jolokia.JmxRequestBuilder;
+import org.jolokia.backend.MBeanInfoCache;
+import org.jolokia.config.AllowAllRestrictor;
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class ListHandlerTest {
+
+    private ListHandler handler;
+    private MBeanServer server;
+    private Set<MBeanServerConnection> servers;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        handler = new ListHandler(new AllowAllRestrictor());
+        server = MBeanServerFactory.newMBeanServer();
+        server.registerMBean(new Sample(), new ObjectName("jolokia.test:type=sample"));
+        servers = new HashSet<MBeanServerConnection>(Arrays.asList((MBeanServerConnection) server));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        handler.destroy();
+    }
+
+    @Test
+    public void fullList() throws Exception {
+        Map ret = list();
+        assertTrue(ret.containsKey("JMImplementation"));
+        Map mBean = (Map) ((Map) ret.get("jolokia.test")).get("type=sample");
+        assertTrue(((Map) mBean.get("attr")).containsKey("Name"));
+        assertTrue(((Map) mBean.get("op")).containsKey("reset"));
+
+        // Served from the cache the second time
+        assertSame(list(), ret);
+    }
+
+    @Test
+    public void incrementalUpdate() throws Exception {
+        Map ret = list();
+        assertFalse(ret.containsKey("jolokia.other"));
+
+        ObjectName other = new ObjectName("jolokia.other:type=sample");
+        server.registerMBean(new Sample(), other);
+        ret = list();
+        assertTrue(((Map) ret.get("jolokia.other")).containsKey("type=sample"));
+        assertTrue(((Map) ret.get("jolokia.test")).containsKey("type=sample"));
+
+        server.unregisterMBean(other);
+        ret = list();
+        assertFalse(ret.containsKey("jolokia.other"));
+        assertTrue(ret.containsKey("jolokia.test"));
+    }
+
+    @Test
+    public void changedMBeanInfoExpires() throws Exception {
+        handler.destroy();
+        MBeanInfoCache cache = new MBeanInfoCache(50);
+        handler = new ListHandler(new AllowAllRestrictor(), cache);
+        Dynamic dynamic = new Dynamic();
+        server.registerMBean(dynamic, new ObjectName("jolokia.test:type=dynamic"));
+
+        assertEquals(getDynamicDescription(list()), "1");
+        dynamic.version = 2;
+        assertEquals(getDynamicDescription(list()), "1");
+
+        // Introspected again after the time to live, without any re-registration
+        Thread.sleep(100);
+        Map ret = list();
+        assertEquals(getDynamicDescription(ret), "2");
+        assertTrue(((Map) ret.get("jolokia.test")).containsKey("type=sample"));
+        cache.destroy();
+    }
+
+    @Test
+    public void pathScoped() throws Exception {
+        Map ret = list("jolokia.test");
+        assertEquals(ret.size(), 1);
+        assertTrue(((Map) ret.get("jolokia.test")).containsKey("type=sample"));
+
+        ret = list("JMImplementation", "type=MBeanServerDelegate");
+        assertEquals(ret.size(), 1);
+        assertEquals(((Map) ret.get("JMImplementation")).size(), 1);
+
+        assertEquals(list("jolokia.unknown").size(), 0);
+    }
+
+    @Test
+    public void pathScopedRemote() throws Exception {
+        final List<ObjectName> introspected = new ArrayList<ObjectName>();
+        MBeanServerConnection connection = (MBeanServerConnection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class[] { MBeanServerConnection.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getDeclaringClass() == Object.class) {
+                            return method.invoke(this, args);
+                        }
+                        if (method.getName().equals("getMBeanInfo")) {
+                            introspected.add((ObjectName) args[0]);
+                        }
+                        try {
+                            return method.invoke(server, args);
+                        } catch (InvocationTargetException exp) {
+                            throw exp.getCause();
+                        }
+                    }
+                });
+        servers = new HashSet<MBeanServerConnection>(Arrays.asList(connection));
+
+        Map ret = list("jolokia.test", "type=sample");
+        assertTrue(((Map) ret.get("jolokia.test")).containsKey("type=sample"));
+        assertEquals(introspected, Arrays.asList(new ObjectName("jolokia.test:type=sample")));
+
+        introspected.clear();
+        ret = list("JMImplementation");
+        assertEquals(ret.size(), 1);
+        assertEquals(introspected.size(), 1);
+    }
+
+    private Object getDynamicDescription(Map pTree) {
+        return ((Map) ((Map) pTree.get("jolokia.test")).get("type=dynamic")).get("desc");
+    }
+
+    private Map list(String ... pPath) throws Exception {
+        JmxRequest request = new JmxRequestBuilder(JmxRequest.Type.LIST, (String) null).extraArgs(pPath).build();
+        return (Map) handler.handleRequest(servers, request);
+    }
+
+    // ===================================================================================
+
+    public interface SampleMBean {
+        String getName();
+        void reset();
+    }
+
+    public static class Sample implements SampleMBean {
+        public String getName() {
+            return "jolokia";
+        }
+
+        public void reset() {
+        }
+    }
+
+    // MBean whose MBeanInfo changes without any re-registration
+    public static class Dynamic implements DynamicMBean {
+        private volatile int version = 1;
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName());
+        }
+
+        public AttributeList getAttributes(String[] attributes) {
+            return new AttributeList();
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        public MBeanInfo getMBeanInfo() {
+            return new MBeanInfo(Dynamic.class.getName(), String.valueOf(version), null, null, null, null);
+        }
+    }
+}
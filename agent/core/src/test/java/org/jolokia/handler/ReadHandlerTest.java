@@ -74,9 +74,7 @@ public class ReadHandlerTest {
         String attrs[] = new String[] {"attr0","atrr1","attr2"};
         String vals[]  = new String[] {"val0", "val1", "val2"};
         prepareMBeanInfos(connection, testBeanName, attrs);
-        for (int i=0;i<attrs.length;i++) {
-            expect(connection.getAttribute(testBeanName,attrs[i])).andReturn(vals[i]);
-        }
+        expect(connection.getAttributes(eq(testBeanName),aryEq(attrs))).andReturn(attributeList(attrs, vals));
         replay(connection);
 
         Map res = (Map) handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)),request);
@@ -95,8 +93,8 @@ public class ReadHandlerTest {
 
 
         MBeanServerConnection connection = createMock(MBeanServerConnection.class);
-        expect(connection.getAttribute(testBeanName,"attr0")).andReturn("val0");
-        expect(connection.getAttribute(testBeanName,"attr1")).andReturn("val1");
+        expect(connection.getAttributes(eq(testBeanName),aryEq(new String[] { "attr0", "attr1" })))
+                .andReturn(attributeList(new String[] { "attr0", "attr1" }, new String[] { "val0", "val1" }));
         replay(connection);
 
         Map res = (Map) handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)),request);
@@ -105,6 +103,26 @@ public class ReadHandlerTest {
         assertEquals("val1",res.get("attr1"));
     }
 
+    @Test
+    public void singleBeanMultiAttributesWithFallback() throws Exception {
+        JmxRequest request = new JmxRequestBuilder(READ, testBeanName.getCanonicalName()).
+                attributes(Arrays.asList("attr0","attr1")).
+                build();
+
+        MBeanServerConnection connection = createMock(MBeanServerConnection.class);
+        // "attr1" is missing in the bulk answer and is looked up again for getting the proper exception
+        expect(connection.getAttributes(eq(testBeanName),aryEq(new String[] { "attr0", "attr1" })))
+                .andReturn(attributeList(new String[] { "attr0" }, new String[] { "val0" }));
+        expect(connection.getAttribute(testBeanName,"attr1")).andThrow(new AttributeNotFoundException("attr1"));
+        replay(connection);
+
+        try {
+            handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)),request);
+            fail("AttributeNotFoundException should be thrown");
+        } catch (AttributeNotFoundException exp) {}
+        verify(connection);
+    }
+
     // ======================================================================================================
 
     @Test(groups = "java6")
@@ -162,13 +180,12 @@ public class ReadHandlerTest {
                     new ObjectName("java.lang:type=GarbageCollection")
             };
             MBeanServerConnection connection = prepareMultiAttributeTest(patternMBean, beans);
-            expect(connection.getAttribute(beans[0],"mem0")).andReturn("memval0");
-            expect(connection.getAttribute(beans[0],"mem1")).andReturn("memval1");
-            expect(connection.getAttribute(beans[0],"common")).andReturn("commonVal0");
-            expect(connection.getAttribute(beans[1],"gc0")).andReturn("gcval0");
-            expect(connection.getAttribute(beans[1],"gc1")).andReturn("gcval1");
-            expect(connection.getAttribute(beans[1],"gc3")).andReturn("gcval3");
-            expect(connection.getAttribute(beans[1],"common")).andReturn("commonVal1");
+            String memAttrs[] = new String[] { "mem0", "mem1", "common" };
+            String gcAttrs[] = new String[] { "gc0", "gc1", "gc3", "common" };
+            expect(connection.getAttributes(eq(beans[0]),aryEq(memAttrs)))
+                    .andReturn(attributeList(memAttrs, new String[] { "memval0", "memval1", "commonVal0" }));
+            expect(connection.getAttributes(eq(beans[1]),aryEq(gcAttrs)))
+                    .andReturn(attributeList(gcAttrs, new String[] { "gcval0", "gcval1", "gcval3", "commonVal1" }));
             replay(connection);
 
             Map res = (Map) handler.handleRequest(new HashSet<MBeanServerConnection>(Arrays.asList(connection)), request);
@@ -359,6 +376,14 @@ public class ReadHandlerTest {
 
     // ==============================================================================================================
 
+    private AttributeList attributeList(String pNames[], Object pValues[]) {
+        AttributeList ret = new AttributeList();
+        for (int i=0;i<pNames.length;i++) {
+            ret.add(new Attribute(pNames[i],pValues[i]));
+        }
+        return ret;
+    }
+
     private MBeanAttributeInfo[] prepareMBeanInfos(MBeanServerConnection pConnection, ObjectName pObjectName, String pAttrs[])
             throws MBeanException, AttributeNotFoundException, InstanceNotFoundException, ReflectionException, IOException, IntrospectionException {
         MBeanInfo mBeanInfo = createMock(MBeanInfo.class);
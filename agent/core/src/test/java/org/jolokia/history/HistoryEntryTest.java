@@ -0,0 +1,171 @@
+package org.jolokia.history;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONAware;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class HistoryEntryTest {
+
+    @Test
+    public void longRing() {
+        HistoryEntry entry = new HistoryEntry(20);
+        for (int i = 0; i < 25; i++) {
+            entry.add(i, 1000 + i);
+        }
+        List values = (List) entry.jsonifyValues();
+        assertEquals(values.size(), 20);
+        // Newest first
+        assertEquals(((Map) values.get(0)).get("value"), 24L);
+        assertEquals(((Map) values.get(0)).get("timestamp"), 1024L);
+        assertEquals(((Map) values.get(19)).get("value"), 5L);
+    }
+
+    @Test
+    public void doubleJson() {
+        HistoryEntry entry = new HistoryEntry(3);
+        entry.add(1.5, 10);
+        entry.add(2.5, 11);
+        assertEquals(((JSONAware) entry.jsonifyValues()).toJSONString(),
+                     "[{\"value\":2.5,\"timestamp\":11},{\"value\":1.5,\"timestamp\":10}]");
+    }
+
+    @Test
+    public void switchToObjects() {
+        HistoryEntry entry = new HistoryEntry(3);
+        entry.add(1L, 10);
+        entry.add(2L, 11);
+        entry.add("three", 12);
+        entry.add(4.0, 13);
+        assertEquals(((JSONAware) entry.jsonifyValues()).toJSONString(),
+                     "[{\"value\":4.0,\"timestamp\":13},{\"value\":\"three\",\"timestamp\":12},{\"value\":2,\"timestamp\":11}]");
+    }
+
+    @Test
+    public void snapshotIsStable() {
+        HistoryEntry entry = new HistoryEntry(5);
+        entry.add(1L, 10);
+        List values = (List) entry.jsonifyValues();
+        entry.add(2L, 11);
+        assertEquals(values.size(), 1);
+    }
+
+    @Test
+    public void trim() {
+        HistoryEntry entry = new HistoryEntry(10);
+        for (int i = 0; i < 10; i++) {
+            entry.add(i, i);
+        }
+        entry.setMaxEntries(3);
+        entry.trim();
+        assertEquals(entry.size(), 3);
+        assertEquals(((JSONAware) entry.jsonifyValues()).toJSONString(),
+                     "[{\"value\":9,\"timestamp\":9},{\"value\":8,\"timestamp\":8},{\"value\":7,\"timestamp\":7}]");
+        entry.setMaxEntries(5);
+        entry.add(10, 10);
+        assertEquals(entry.size(), 4);
+    }
+
+    @Test
+    public void rawRetention() {
+        HistoryEntry entry = new HistoryEntry(100, HistoryRetention.parse("raw=10"));
+        for (int i = 0; i < 20; i++) {
+            entry.add(i, 1000 + i);
+        }
+        entry.expire(1020);
+        List values = (List) entry.jsonifyValues();
+        // Only values not older than 10 seconds are kept
+        assertEquals(values.size(), 10);
+        assertEquals(((Map) values.get(9)).get("timestamp"), 1010L);
+    }
+
+    @Test
+    public void rollups() {
+        HistoryEntry entry = new HistoryEntry(5, HistoryRetention.parse("10s=30s"));
+        entry.add(3L, 1000);
+        entry.add(1L, 1004);
+        entry.add(5L, 1009);
+        entry.add(7.5, 1010);
+        entry.add("ignored", 1011);
+
+        Map rollups = entry.jsonifyRollups(1012);
+        List buckets = (List) rollups.get("10");
+        assertEquals(buckets.size(), 2);
+        Map newest = (Map) buckets.get(0);
+        assertEquals(newest.get("timestamp"), 1010L);
+        assertEquals(newest.get("count"), 1L);
+        assertEquals(newest.get("last"), 7.5);
+        Map oldest = (Map) buckets.get(1);
+        assertEquals(oldest.get("timestamp"), 1000L);
+        assertEquals(oldest.get("min"), 1.0);
+        assertEquals(oldest.get("max"), 5.0);
+        assertEquals(oldest.get("avg"), 3.0);
+        assertEquals(oldest.get("last"), 5.0);
+
+        // Buckets expire after the retention time
+        assertEquals(((List) entry.jsonifyRollups(1051).get("10")).size(), 0);
+    }
+
+    @Test
+    public void retentionSpec() {
+        HistoryRetention retention = HistoryRetention.parse("raw=5m, 1m=1h,10m=1d");
+        assertEquals(retention.getRawMaxAge(), 300L);
+        assertEquals(retention.getRollupCount(), 2);
+        assertEquals(retention.getResolution(0), 60L);
+        assertEquals(retention.getMaxAge(1), 86400L);
+        assertEquals(retention, HistoryRetention.parse("10m=1d,1m=60m,raw=300"));
+        assertNull(HistoryRetention.parse(" "));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidRetention() {
+        HistoryRetention.parse("1h=1m");
+    }
+
+    @Test
+    public void rate() {
+        HistoryEntry entry = new HistoryEntry(5);
+        assertNull(entry.jsonifyRate(10L, 1000));
+        entry.add(10L, 1000);
+        Map rate = entry.jsonifyRate(40L, 1010);
+        assertEquals(rate.get("delta"), 30L);
+        assertEquals(rate.get("interval"), 10L);
+        assertEquals(rate.get("perSecond"), 3.0);
+
+        // No rate within the same second
+        assertFalse(entry.jsonifyRate(20L, 1000).containsKey("perSecond"));
+        assertNull(entry.jsonifyRate("text", 1010));
+    }
+
+    @Test
+    public void rateAfterCounterReset() {
+        HistoryEntry entry = new HistoryEntry(5);
+        entry.add(100.0, 1000);
+        Map rate = entry.jsonifyRate(5.0, 1005);
+        assertEquals(rate.get("delta"), 5.0);
+        assertEquals(rate.get("perSecond"), 1.0);
+    }
+}
@@ -0,0 +1,182 @@
+package org.jolokia.history;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+
+import org.jolokia.JmxRequest;
+import org.jolokia.JmxRequestBuilder;
+import org.json.simple.JSONObject;
+import org.testng.annotations.*;
+
+import static org.jolokia.JmxRequest.Type.EXEC;
+import static org.jolokia.JmxRequest.Type.READ;
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class HistoryFileTest {
+
+    private File dir;
+
+    @BeforeMethod
+    public void createDir() throws IOException {
+        dir = File.createTempFile("jolokia-history", "");
+        assertTrue(dir.delete());
+    }
+
+    @AfterMethod
+    public void removeDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void reopen() throws Exception {
+        JmxRequest req = new JmxRequestBuilder(READ, "test:type=read").attribute("attr").build();
+        HistoryStore store = new HistoryStore(10, dir);
+        store.configure(new HistoryKey(req), 5);
+        for (int i = 0; i < 7; i++) {
+            update(store, req, i);
+        }
+        store.destroy();
+
+        store = new HistoryStore(10, dir);
+        List history = (List) update(store, req, 7L).get("history");
+        assertEquals(history.size(), 5);
+        assertEquals(((Map) history.get(0)).get("value"), 6L);
+        assertEquals(((Map) history.get(4)).get("value"), 2L);
+        store.destroy();
+    }
+
+    @Test
+    public void removedKeysAreNotRestored() throws Exception {
+        JmxRequest req = new JmxRequestBuilder(EXEC, "test:type=exec").operation("op").build();
+        HistoryStore store = new HistoryStore(10, dir);
+        store.configure(new HistoryKey(req), 5);
+        update(store, req, 1.5);
+        store.configure(new HistoryKey(req), 0);
+        store.destroy();
+
+        store = new HistoryStore(10, dir);
+        assertNull(update(store, req, 2.5).get("history"));
+        store.destroy();
+    }
+
+    @Test
+    public void switchToHeap() throws Exception {
+        JmxRequest req = new JmxRequestBuilder(READ, "test:type=read").attribute("attr").build();
+        HistoryStore store = new HistoryStore(10, dir);
+        store.configure(new HistoryKey(req), 5);
+        update(store, req, 1.5);
+        update(store, req, "text");
+        List history = (List) update(store, req, 2.5).get("history");
+        assertEquals(history.size(), 2);
+        assertEquals(((Map) history.get(0)).get("value"), "text");
+        assertEquals(((Map) history.get(1)).get("value"), 1.5);
+        store.destroy();
+    }
+
+    @Test
+    public void raisedLimitExceedsSlotCapacity() throws Exception {
+        JmxRequest req = new JmxRequestBuilder(READ, "test:type=read").attribute("attr").build();
+        HistoryStore store = new HistoryStore(5, dir);
+        store.configure(new HistoryKey(req), 5);
+        for (int i = 0; i < 3; i++) {
+            update(store, req, (long) i);
+        }
+        store.destroy();
+
+        // The file keeps its capacity of 5 values per key, a larger limit must
+        // not be capped silently
+        store = new HistoryStore(20, dir);
+        store.configure(new HistoryKey(req), 15);
+        for (int i = 3; i < 12; i++) {
+            update(store, req, (long) i);
+        }
+        List history = (List) update(store, req, 12L).get("history");
+        assertEquals(history.size(), 12);
+        assertEquals(((Map) history.get(0)).get("value"), 11L);
+        assertEquals(((Map) history.get(11)).get("value"), 0L);
+        store.destroy();
+    }
+
+    @Test
+    public void slotsAreReused() throws Exception {
+        HistoryFile file = new HistoryFile(dir, 4);
+        HistoryKey key = new HistoryKey("test:type=read", "attr", null, null);
+        for (int i = 0; i < HistoryFile.SLOTS_PER_SEGMENT * 2; i++) {
+            file.allocate(key).free();
+        }
+        file.close();
+        assertTrue(new File(dir, "history-0.seg").exists());
+        assertFalse(new File(dir, "history-1.seg").exists());
+    }
+
+    @Test
+    public void directoryIsLocked() throws Exception {
+        HistoryStore store = new HistoryStore(10, dir);
+        try {
+            new HistoryStore(10, dir);
+            fail("History directory used twice");
+        } catch (IOException exp) {
+            assertTrue(exp.getMessage().contains("in use"));
+        }
+        store.destroy();
+
+        // Free again after closing
+        new HistoryStore(10, dir).destroy();
+    }
+
+    @Test
+    public void serializeFileBackedValues() throws Exception {
+        JmxRequest req = new JmxRequestBuilder(READ, "test:type=read").attribute("attr").build();
+        HistoryStore store = new HistoryStore(10, dir);
+        store.configure(new HistoryKey(req), 5);
+        for (int i = 0; i < 3; i++) {
+            update(store, req, (long) i);
+        }
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        ObjectOutputStream oOut = new ObjectOutputStream(bOut);
+        oOut.writeObject(store);
+        oOut.close();
+        store.destroy();
+
+        // Values kept in the file are part of the serialized history
+        ObjectInputStream oIn = new ObjectInputStream(new ByteArrayInputStream(bOut.toByteArray()));
+        HistoryStore copy = (HistoryStore) oIn.readObject();
+        List history = (List) update(copy, req, 3L).get("history");
+        assertEquals(history.size(), 3);
+        assertEquals(((Map) history.get(0)).get("value"), 2L);
+    }
+
+    private JSONObject update(HistoryStore pStore, JmxRequest pReq, Object pValue) {
+        JSONObject res = new JSONObject();
+        res.put("value", pValue);
+        pStore.updateAndAdd(pReq, res);
+        return res;
+    }
+}
@@ -20,9 +20,9 @@ import java.util.*;
 
 import javax.management.MalformedObjectNameException;
 
+import org.jolokia.ConfigKey;
 import org.jolokia.JmxRequest;
 import org.jolokia.JmxRequestBuilder;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -30,6 +30,8 @@ import org.testng.annotations.Test;
 import static org.jolokia.JmxRequest.Type.*;
 import static org.testng.Assert.fail;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 
 
 /**
@@ -205,9 +207,97 @@ public class HistoryStoreTest {
         assertEquals("attr2 has 3 history entries",3,((List) ((Map) history.get("test:type=write")).get("attr2")).size());
     }
 
+    @Test
+    public void rollupsForAttributes() throws Exception {
+        String mbean = "test:type=read";
+        JmxRequest req =
+                new JmxRequestBuilder(READ,mbean)
+                        .attributes("attr1","attr2")
+                        .build();
+        store.configure(new HistoryKey(mbean,"attr1",null,null),5,HistoryRetention.parse("raw=1h,1m=1h"));
+        store.configure(new HistoryKey(mbean,"attr2",null,null),5);
+        Map value = new HashMap();
+        value.put("attr1",42);
+        value.put("attr2",43);
+        JSONObject res = new JSONObject();
+        res.put("value",value);
+        for (int i=0;i<3;i++) {
+            store.updateAndAdd(req,res);
+        }
+        Map rollups = (Map) res.get("rollups");
+        assertEquals("Only attr1 has rollups",1,rollups.size());
+        List buckets = (List) ((Map) rollups.get("attr1")).get("60");
+        long count = 0;
+        for (Object bucket : buckets) {
+            assertEquals(42.0,((Map) bucket).get("avg"));
+            count += (Long) ((Map) bucket).get("count");
+        }
+        assertEquals("All values aggregated",3,count);
+    }
+
+    @Test
+    public void rateForAttributes() throws Exception {
+        String mbean = "test:type=read";
+        JmxRequest req =
+                new JmxRequestBuilder(READ,mbean)
+                        .attributes("attr1","attr2")
+                        .option(ConfigKey.HISTORY_RATE,"true")
+                        .build();
+        store.configure(new HistoryKey(mbean,"attr1",null,null),5);
+        Map value = new HashMap();
+        value.put("attr1",42L);
+        value.put("attr2",43L);
+        JSONObject res = new JSONObject();
+        res.put("value",value);
+        store.updateAndAdd(req,res);
+        assertNull("No rate for first value",res.get("rate"));
+        value.put("attr1",50L);
+        store.updateAndAdd(req,res);
+        Map rate = (Map) res.get("rate");
+        assertEquals("Only attr1 is tracked",1,rate.size());
+        assertEquals(8L,((Map) rate.get("attr1")).get("delta"));
+    }
+
+    @Test(groups = "java6")
+    public void totalLimit() throws Exception {
+        store.setMaxTotalEntries(20);
+        store.configure(new HistoryKey("test:type=*","attr",null,null),5);
+        for (String type : new String[] { "a", "b", "c", "d", "e" }) {
+            JmxRequest req = new JmxRequestBuilder(READ,"test:type=" + type).attribute("attr").build();
+            updateNTimes(req,1,"42");
+        }
+        // 25 entries exceed the limit, evicted down to 90% of it
+        assertEquals("Keys left",3,store.getKeyCount());
+        assertEquals("Entries left",15,store.getTotalEntries());
+        assertEquals("Evictions",2,store.getEvictions());
+
+        store.setMaxTotalEntries(0);
+        store.configure(new HistoryKey("test:type=x","attr",null,null),10);
+        assertEquals("Entries without limit",25,store.getTotalEntries());
+        store.reset();
+        assertEquals("Entries after reset",0,store.getTotalEntries());
+    }
+
+    @Test
+    public void totalLimitOnReconfigure() throws Exception {
+        store.setMaxTotalEntries(20);
+        for (String type : new String[] { "a", "b", "c", "d" }) {
+            store.configure(new HistoryKey("test:type=" + type,"attr",null,null),5);
+        }
+        assertEquals("Entries at limit",20,store.getTotalEntries());
+        assertEquals("No evictions yet",0,store.getEvictions());
+
+        // Raising the limit of a single key
+        HistoryKey key = new HistoryKey("test:type=a","attr",null,null);
+        store.configure(key,10);
+        assertTrue("Limit exceeded",store.getTotalEntries() <= 20);
+        assertEquals("Evictions",2,store.getEvictions());
+        JmxRequest req = new JmxRequestBuilder(READ,"test:type=a").attribute("attr").build();
+        assertEquals("Reconfigured key kept",1,updateNTimesAsList(req,2,"42").size());
+    }
 
-    private JSONArray updateNTimesAsList(JmxRequest pReq, int pNr,Object ... pValue) {
-        return (JSONArray) updateNTimes(pReq, pNr,pValue);
+    private List updateNTimesAsList(JmxRequest pReq, int pNr,Object ... pValue) {
+        return (List) updateNTimes(pReq, pNr,pValue);
     }
 
     private JSONObject updateNTimesAsMap(JmxRequest pReq, int pNr,Object ... pValue) {
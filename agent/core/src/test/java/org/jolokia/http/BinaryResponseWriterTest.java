@@ -0,0 +1,95 @@
+package org.jolokia.http;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+import org.jolokia.JmxRequest;
+import org.jolokia.JmxRequestBuilder;
+import org.jolokia.converter.StringToObjectConverter;
+import org.jolokia.converter.json.ObjectToJsonConverter;
+import org.jolokia.converter.json.ValueSink;
+import org.json.simple.JSONAware;
+import org.json.simple.JSONObject;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class BinaryResponseWriterTest {
+
+    private static final String BIG = "0.1000000000000000000000000001";
+
+    @Test
+    public void streamedValue() throws Exception {
+        ObjectToJsonConverter converter = new ObjectToJsonConverter(new StringToObjectConverter(), null);
+        JSONObject inner = new JSONObject();
+        inner.put("big", new BigDecimal(BIG));
+        Map<String,Object> attributes = Collections.<String,Object>singletonMap("attr", inner);
+        Map<String,Object> value = Collections.<String,Object>singletonMap("jolokia:type=test", attributes);
+        JmxRequest req = new JmxRequestBuilder(JmxRequest.Type.READ, "jolokia:*").build();
+
+        JSONObject streamed = converter.convertToJson(value, req, false, true);
+        assertTrue(streamed.get("value") instanceof ValueSink.Source);
+        JSONObject direct = converter.convertToJson(value, req, false, false);
+
+        // Streamed values are encoded directly in the same way as converted values
+        byte[] bytes = encode(streamed);
+        assertEquals(Arrays.toString(bytes), Arrays.toString(encode(direct)));
+
+        // All digits are kept
+        assertTrue(new String(bytes, "ISO-8859-1").indexOf(BIG) > 0);
+    }
+
+    @Test
+    public void sourceIsWrittenToSink() throws IOException {
+        final List<String> events = new ArrayList<String>();
+        ValueSink.Source source = new ValueSink.Source() {
+            public void writeTo(ValueSink pSink) throws IOException {
+                events.add("writeTo");
+                pSink.startMap(1);
+                pSink.key("key");
+                pSink.value(new BigDecimal(BIG));
+                pSink.endMap();
+            }
+        };
+        JSONObject resp = new JSONObject();
+        resp.put("value", source);
+        JSONObject plain = new JSONObject();
+        plain.put("value", Collections.singletonMap("key", new BigDecimal(BIG)));
+
+        byte[] bytes = encode(resp);
+        assertEquals(Arrays.toString(bytes), Arrays.toString(encode(plain)));
+        assertEquals(events, Arrays.asList("writeTo"));
+
+        // Arbitrary precision numbers are kept as such
+        int idx = new String(bytes, "ISO-8859-1").indexOf(BIG);
+        assertEquals(bytes[idx - 2], BinaryResponseWriter.BIG_DECIMAL);
+    }
+
+    private byte[] encode(JSONAware pJson) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResponseWriter.write(pJson, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,113 @@
+package org.jolokia.http;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class CompressingOutputStreamTest {
+
+    @Test
+    public void selectEncoding() {
+        assertNull(CompressingOutputStream.selectEncoding(null));
+        assertNull(CompressingOutputStream.selectEncoding("identity"));
+        assertEquals(CompressingOutputStream.selectEncoding("gzip, deflate"), "gzip");
+        assertEquals(CompressingOutputStream.selectEncoding("deflate, gzip;q=0"), "deflate");
+        assertEquals(CompressingOutputStream.selectEncoding("x-gzip"), "gzip");
+        assertNull(CompressingOutputStream.selectEncoding("gzip;q=0.0"));
+    }
+
+    @Test
+    public void belowThreshold() throws IOException {
+        TestStream out = new TestStream("gzip", 100);
+        out.write("small".getBytes("UTF-8"));
+        out.close();
+        assertNull(out.contentEncoding);
+        assertEquals(out.length, 5);
+        assertEquals(new String(out.raw.toByteArray(), "UTF-8"), "small");
+    }
+
+    @Test
+    public void gzip() throws IOException {
+        TestStream out = new TestStream("gzip", 100);
+        String content = writeLarge(out);
+        assertEquals(out.contentEncoding, "gzip");
+        assertEquals(out.length, -1);
+        assertTrue(out.raw.size() < content.length());
+        assertEquals(read(new GZIPInputStream(new ByteArrayInputStream(out.raw.toByteArray()))), content);
+    }
+
+    @Test
+    public void deflate() throws IOException {
+        TestStream out = new TestStream("deflate", 100);
+        String content = writeLarge(out);
+        assertEquals(out.contentEncoding, "deflate");
+        assertEquals(read(new InflaterInputStream(new ByteArrayInputStream(out.raw.toByteArray()))), content);
+    }
+
+    private String writeLarge(OutputStream pOut) throws IOException {
+        StringBuilder content = new StringBuilder();
+        Writer writer = new OutputStreamWriter(pOut, "UTF-8");
+        for (int i = 0; i < 1000; i++) {
+            String part = "{\"mbean\":\"java.lang:type=Memory\",\"value\":" + i + "}";
+            content.append(part);
+            writer.write(part);
+        }
+        writer.close();
+        return content.toString();
+    }
+
+    private String read(InputStream pIn) throws IOException {
+        ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = pIn.read(buf)) > 0) {
+            ret.write(buf, 0, len);
+        }
+        return new String(ret.toByteArray(), "UTF-8");
+    }
+
+    private static class TestStream extends CompressingOutputStream {
+
+        private ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        private String contentEncoding;
+        private int length;
+        private boolean started;
+
+        TestStream(String pEncoding, int pThreshold) {
+            super(pEncoding, pThreshold, 6);
+        }
+
+        @Override
+        protected OutputStream startResponse(String pContentEncoding, int pLength) {
+            assertFalse(started);
+            started = true;
+            contentEncoding = pContentEncoding;
+            length = pLength;
+            return raw;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.jolokia.http;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class HostNameCacheTest {
+
+    private CountingCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        cache = new CountingCache();
+    }
+
+    @Test
+    public void cachedLookup() {
+        assertEquals(cache.lookup("10.0.0.1", 0), "host-1");
+        assertEquals(cache.lookup("10.0.0.1", 500), "host-1");
+        assertEquals(cache.lookups, 1);
+    }
+
+    @Test
+    public void expiry() {
+        cache.lookup("10.0.0.1", 0);
+        assertEquals(cache.lookup("10.0.0.1", 1001), "host-1");
+        assertEquals(cache.lookups, 2);
+    }
+
+    @Test
+    public void failedLookupsAreCached() {
+        assertNull(cache.lookup("10.0.0.99", 0));
+        assertNull(cache.lookup("10.0.0.99", 10));
+        assertEquals(cache.lookups, 1);
+    }
+
+    @Test
+    public void noLookupForNames() {
+        assertNull(cache.lookup("planck", 0));
+        assertEquals(cache.lookups, 0);
+    }
+
+    @Test
+    public void limit() {
+        cache.lookup("10.0.0.1", 0);
+        cache.lookup("10.0.0.2", 0);
+        cache.lookup("10.0.0.1", 0);
+        cache.lookup("10.0.0.3", 0);
+        assertEquals(cache.size(), 2);
+        // 10.0.0.2 was the least recently used one
+        cache.lookup("10.0.0.1", 0);
+        assertEquals(cache.lookups, 3);
+        cache.lookup("10.0.0.2", 0);
+        assertEquals(cache.lookups, 4);
+    }
+
+    // Cache which doesn't ask the name service
+    private static class CountingCache extends HostNameCache {
+        private int lookups;
+
+        CountingCache() {
+            super(2, 1000);
+        }
+
+        @Override
+        String resolve(byte[] pAddress) {
+            lookups++;
+            int last = pAddress[pAddress.length - 1] & 0xff;
+            return last < 10 ? "host-" + last : null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.jolokia.http;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jolokia.*;
+import org.jolokia.backend.BackendManager;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class HttpRequestHandlerTest implements LogHandler {
+
+    private TestBackendManager backendManager;
+    private HttpRequestHandler handler;
+
+    @AfterMethod
+    public void tearDown() {
+        if (handler != null) {
+            handler.destroy();
+        }
+        if (backendManager != null) {
+            backendManager.destroy();
+        }
+    }
+
+    @Test
+    public void parallelBulkTimeout() throws Exception {
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.BULK_THREADS, "4");
+        config.put(ConfigKey.BULK_REQUEST_TIMEOUT, "300");
+        init(config);
+
+        long start = System.currentTimeMillis();
+        JSONArray answers = (JSONArray) handler.handlePostRequest("/", stream(
+                "[" + exec("hang") + "," + exec("hang") + "," + exec("hang") + "," + exec("ok") + "]"), "UTF-8");
+        long duration = System.currentTimeMillis() - start;
+
+        assertEquals(answers.size(), 4);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(((JSONObject) answers.get(i)).get("status"), 408);
+        }
+        assertEquals(((JSONObject) answers.get(3)).get("status"), 200);
+        // The timeouts of the hanging requests run in parallel, they don't add up
+        assertTrue(duration < 600, "Bulk request took " + duration + " ms");
+    }
+
+    @Test
+    public void bulkQueueFull() throws Exception {
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.BULK_THREADS, "1");
+        config.put(ConfigKey.BULK_QUEUE_SIZE, "1");
+        init(config);
+
+        StringBuilder requests = new StringBuilder("[");
+        for (int i = 0; i < 10; i++) {
+            requests.append(i > 0 ? "," : "").append(exec("ok"));
+        }
+        requests.append("]");
+        JSONArray answers = (JSONArray) handler.handlePostRequest("/", stream(requests.toString()), "UTF-8");
+        assertEquals(answers.size(), 10);
+        for (Object answer : answers) {
+            assertEquals(((JSONObject) answer).get("status"), 200);
+        }
+    }
+
+    @Test
+    public void bulkPoolSaturated() throws Exception {
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.BULK_THREADS, "1");
+        config.put(ConfigKey.BULK_QUEUE_SIZE, "1");
+        config.put(ConfigKey.BULK_TIMEOUT, "300");
+        init(config);
+
+        long start = System.currentTimeMillis();
+        JSONArray answers = (JSONArray) handler.handlePostRequest("/", stream(
+                "[" + exec("hang") + "," + exec("hang") + "," + exec("hang") + "," + exec("ok") + "]"), "UTF-8");
+        long duration = System.currentTimeMillis() - start;
+
+        assertEquals(answers.size(), 4);
+        // Running and queued requests time out
+        assertEquals(((JSONObject) answers.get(0)).get("status"), 408);
+        assertEquals(((JSONObject) answers.get(1)).get("status"), 408);
+        // No place left within the bulk timeout, the requests are not executed by the
+        // thread handling the bulk request
+        assertEquals(((JSONObject) answers.get(2)).get("status"), 503);
+        assertEquals(((JSONObject) answers.get(3)).get("status"), 503);
+        assertTrue(duration < 2000, "Bulk request took " + duration + " ms");
+    }
+
+    @Test
+    public void asyncSwitchedOff() throws Exception {
+        Map<ConfigKey, String> config = new HashMap<ConfigKey, String>();
+        config.put(ConfigKey.ASYNC_THREADS, "0");
+        init(config);
+
+        JSONObject answer = (JSONObject) handler.handlePostRequest("/", stream(
+                "{\"type\":\"exec\",\"mbean\":\"jolokia.test:type=Test\",\"operation\":\"ok\"," +
+                "\"config\":{\"async\":\"true\"}}"), "UTF-8");
+        assertEquals(answer.get("status"), 400);
+        assertEquals(answer.get("error_type"), IllegalArgumentException.class.getName());
+    }
+
+    // ===========================================================================================
+
+    private void init(Map<ConfigKey, String> pConfig) {
+        backendManager = new TestBackendManager(this);
+        handler = new HttpRequestHandler(backendManager, this, pConfig);
+    }
+
+    private String exec(String pOperation) {
+        return "{\"type\":\"exec\",\"mbean\":\"jolokia.test:type=Test\",\"operation\":\"" + pOperation + "\"}";
+    }
+
+    private ByteArrayInputStream stream(String pJson) throws Exception {
+        return new ByteArrayInputStream(pJson.getBytes("UTF-8"));
+    }
+
+    public void debug(String message) {
+    }
+
+    public void info(String message) {
+    }
+
+    public void error(String message, Throwable t) {
+    }
+
+    // Backend which doesn't contact any MBean server. The operation "hang"
+    // blocks until it gets interrupted.
+    private static class TestBackendManager extends BackendManager {
+
+        TestBackendManager(LogHandler pLogHandler) {
+            super(new HashMap<ConfigKey, String>(), pLogHandler);
+        }
+
+        @Override
+        public JSONObject handleRequest(JmxRequest pJmxReq) {
+            if ("hang".equals(pJmxReq.getOperation())) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            JSONObject json = new JSONObject();
+            json.put("value", pJmxReq.getOperation());
+            json.put("request", pJmxReq.toJSON());
+            json.put("status", 200);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.jolokia.http;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.JmxRequest;
+import org.jolokia.JmxRequestFactory;
+import org.json.simple.JSONObject;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class JobManagerTest {
+
+    private JobManager manager;
+    private CountDownLatch latch;
+
+    @BeforeMethod
+    public void setup() {
+        manager = new JobManager(Executors.newFixedThreadPool(1), 2, 1000, 5000, 0);
+        latch = new CountDownLatch(1);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        latch.countDown();
+        manager.destroy();
+    }
+
+    @Test
+    public void pollAndWait() throws MalformedObjectNameException {
+        JSONObject handle = manager.submit(new BlockingTask());
+        String id = (String) handle.get("id");
+        assertEquals(handle.get("state"), "running");
+
+        assertEquals(jobRequest(id, null, null).get("state"), "running");
+        assertEquals(jobRequest(id, "wait", "10").get("state"), "running");
+
+        latch.countDown();
+        JSONObject done = jobRequest(id, "wait", null);
+        assertEquals(done.get("state"), "done");
+        assertEquals(((JSONObject) done.get("result")).get("value"), "finished");
+
+        // Result is kept
+        assertEquals(jobRequest(id, "poll", null).get("state"), "done");
+    }
+
+    @Test
+    public void cancel() throws MalformedObjectNameException {
+        String id = (String) manager.submit(new BlockingTask()).get("id");
+        assertEquals(jobRequest(id, "cancel", null).get("state"), "cancelled");
+        assertFalse(jobRequest(id, null, null).containsKey("result"));
+    }
+
+    @Test
+    public void tooManyJobs() {
+        manager.submit(new BlockingTask());
+        manager.submit(new BlockingTask());
+        try {
+            manager.submit(new BlockingTask());
+            fail("Too many jobs");
+        } catch (RejectedExecutionException exp) {
+            assertEquals(manager.size(), 2);
+        }
+    }
+
+    @Test
+    public void expiry() throws Exception {
+        manager.destroy();
+        manager = new JobManager(Executors.newFixedThreadPool(1), 2, 0, 5000, 0);
+        latch.countDown();
+        String id = (String) manager.submit(new BlockingTask()).get("id");
+        assertEquals(jobRequest(id, "wait", null).get("state"), "done");
+        Thread.sleep(10);
+        try {
+            jobRequest(id, null, null);
+            fail("Job should have expired");
+        } catch (IllegalArgumentException exp) {
+            assertEquals(manager.size(), 0);
+        }
+    }
+
+    @Test
+    public void maxRuntime() throws Exception {
+        manager.destroy();
+        manager = new JobManager(Executors.newFixedThreadPool(1), 2, 1000, 5000, 50);
+        String id = (String) manager.submit(new BlockingTask()).get("id");
+        Thread.sleep(100);
+
+        // A hanging job gets cancelled instead of running forever
+        JSONObject handle = jobRequest(id, null, null);
+        assertEquals(handle.get("state"), "cancelled");
+        assertNotNull(handle.get("error"));
+
+        // The thread is free again for the next job
+        latch = new CountDownLatch(0);
+        String next = (String) manager.submit(new BlockingTask()).get("id");
+        assertEquals(jobRequest(next, "wait", null).get("state"), "done");
+    }
+
+    @Test
+    public void queuedJobsBehindHangingOperation() throws Exception {
+        manager.destroy();
+        manager = new JobManager(Executors.newFixedThreadPool(1), 3, 1000, 5000, 50);
+        String hanging = (String) manager.submit(new UninterruptibleTask()).get("id");
+        String queued = (String) manager.submit(new BlockingTask()).get("id");
+        Thread.sleep(100);
+
+        // The hanging operation keeps the only thread, but the job waiting for it
+        // doesn't stay "running" forever
+        JSONObject handle = jobRequest(hanging, null, null);
+        assertEquals(handle.get("state"), "cancelled");
+        assertTrue(((String) handle.get("error")).contains("maximum runtime"));
+        handle = jobRequest(queued, null, null);
+        assertEquals(handle.get("state"), "cancelled");
+        assertTrue(((String) handle.get("error")).contains("didn't get a thread"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownAction() throws MalformedObjectNameException {
+        String id = (String) manager.submit(new BlockingTask()).get("id");
+        jobRequest(id, "restart", null);
+    }
+
+    private JSONObject jobRequest(String pId, String pAction, String pTimeout) throws MalformedObjectNameException {
+        Map<String,Object> map = new HashMap<String, Object>();
+        map.put("type", "job");
+        map.put("id", pId);
+        map.put("operation", pAction);
+        if (pTimeout != null) {
+            Map<String,Object> config = new HashMap<String, Object>();
+            config.put("waitTimeout", pTimeout);
+            map.put("config", config);
+        }
+        JmxRequest req = JmxRequestFactory.createPostRequest(map);
+        return manager.handle(req);
+    }
+
+    // Task which finishes when the latch is opened
+    private class BlockingTask implements Callable<JSONObject> {
+        public JSONObject call() throws InterruptedException {
+            latch.await();
+            JSONObject ret = new JSONObject();
+            ret.put("value", "finished");
+            ret.put("status", 200);
+            return ret;
+        }
+    }
+
+    // Task which ignores interrupts, like an operation hanging in a remote call
+    private class UninterruptibleTask implements Callable<JSONObject> {
+        public JSONObject call() {
+            while (latch.getCount() > 0) {
+                try {
+                    latch.await();
+                } catch (InterruptedException exp) {
+                    // Ignored
+                }
+            }
+            return new JSONObject();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.jolokia.http;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import javax.management.MalformedObjectNameException;
+
+import org.jolokia.ConfigKey;
+import org.jolokia.JmxRequest;
+import org.jolokia.JmxRequestBuilder;
+import org.json.simple.JSONObject;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.jolokia.JmxRequest.Type.READ;
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class PollTokenCacheTest {
+
+    private PollTokenCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        cache = new PollTokenCache(2, 100, 1000);
+    }
+
+    @Test
+    public void unchangedValues() throws MalformedObjectNameException {
+        JmxRequest req = request("client1", "HeapMemoryUsage");
+        assertFalse(filter(req, 10L).containsKey("unchanged"));
+
+        JSONObject resp = filter(req, 10L);
+        assertEquals(resp.get("unchanged"), Boolean.TRUE);
+        assertFalse(resp.containsKey("value"));
+        assertEquals(resp.get("status"), 200);
+
+        assertEquals(filter(req, 11L).get("value"), 11L);
+    }
+
+    @Test
+    public void tokensAndRequestsAreSeparated() throws MalformedObjectNameException {
+        filter(request("client1", "HeapMemoryUsage"), 10L);
+        assertTrue(filter(request("client2", "HeapMemoryUsage"), 10L).containsKey("value"));
+        assertTrue(filter(request("client1", "NonHeapMemoryUsage"), 10L).containsKey("value"));
+        assertFalse(filter(request("client1", "HeapMemoryUsage"), 10L).containsKey("value"));
+    }
+
+    @Test
+    public void noToken() throws MalformedObjectNameException {
+        JmxRequest req = new JmxRequestBuilder(READ, "java.lang:type=Memory").attribute("HeapMemoryUsage").build();
+        filter(req, 10L);
+        assertTrue(filter(req, 10L).containsKey("value"));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void errorsAreNotFiltered() throws MalformedObjectNameException {
+        JmxRequest req = request("client1", "HeapMemoryUsage");
+        JSONObject error = new JSONObject();
+        error.put("status", 404);
+        error.put("value", null);
+        cache.filter(req, error);
+        cache.filter(req, error);
+        assertTrue(error.containsKey("value"));
+    }
+
+    @Test
+    public void limitsAndExpiry() {
+        assertFalse(cache.update("t1", 1, 1, 0));
+        assertTrue(cache.update("t1", 1, 1, 10));
+        cache.update("t2", 1, 1, 20);
+        cache.update("t3", 1, 1, 30);
+        assertEquals(cache.size(), 2);
+        // t1 was the least recently used one
+        assertFalse(cache.update("t1", 1, 1, 40));
+
+        // Everything except the token itself is expired
+        assertFalse(cache.update("t2", 1, 1, 2000));
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void fingerprintLimit() {
+        // Many fingerprints for a single token
+        for (int i = 0; i < 100; i++) {
+            assertFalse(cache.update("t1", i, i, 0));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(cache.update("t1", i, i, 0));
+        }
+        assertEquals(cache.getTotalFingerprints(), 100);
+
+        // The limit is for all tokens together, the least recently used one gets dropped
+        assertFalse(cache.update("t2", 1, 1, 0));
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getTotalFingerprints(), 1);
+
+        // A single token exceeding the limit starts over
+        for (int i = 0; i < 100; i++) {
+            cache.update("t2", i + 2, i, 0);
+        }
+        assertTrue(cache.getTotalFingerprints() < 100);
+        assertFalse(cache.update("t2", 1, 1, 0));
+    }
+
+    private JmxRequest request(String pToken, String pAttribute) throws MalformedObjectNameException {
+        return new JmxRequestBuilder(READ, "java.lang:type=Memory")
+                .attribute(pAttribute)
+                .option(ConfigKey.POLL_TOKEN, pToken)
+                .build();
+    }
+
+    private JSONObject filter(JmxRequest pRequest, Object pValue) {
+        JSONObject resp = new JSONObject();
+        resp.put("value", pValue);
+        resp.put("status", 200);
+        resp.put("request", pRequest.toJSON());
+        cache.filter(pRequest, resp);
+        return resp;
+    }
+}
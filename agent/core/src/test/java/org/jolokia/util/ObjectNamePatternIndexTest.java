@@ -0,0 +1,71 @@
+package org.jolokia.util;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class ObjectNamePatternIndexTest {
+
+    private ObjectNamePatternIndex<String> index;
+
+    @BeforeMethod
+    public void setup() throws MalformedObjectNameException {
+        index = new ObjectNamePatternIndex<String>();
+        index.add(new ObjectName("java.lang:type=Memory,*"), "memory");
+        index.add(new ObjectName("java.lang:*"), "lang");
+        index.add(new ObjectName("java.lang:type=Threading"), "threading");
+        index.add(new ObjectName("*:type=Cache,*"), "cache");
+    }
+
+    @Test
+    public void byProperty() throws MalformedObjectNameException {
+        assertEquals(index.find(new ObjectName("java.lang:type=Memory")), "memory");
+        assertEquals(index.find(new ObjectName("java.lang:name=heap,type=Memory")), "memory");
+    }
+
+    @Test
+    public void firstAddedWins() throws MalformedObjectNameException {
+        // Matches "java.lang:*" and the exact name, but the pattern was added first
+        assertEquals(index.find(new ObjectName("java.lang:type=Threading")), "lang");
+        assertEquals(index.find(new ObjectName("java.lang:type=Cache")), "lang");
+    }
+
+    @Test
+    public void wildcardDomain() throws MalformedObjectNameException {
+        assertEquals(index.find(new ObjectName("ehcache:name=users,type=Cache")), "cache");
+    }
+
+    @Test
+    public void noMatch() throws MalformedObjectNameException {
+        ObjectName name = new ObjectName("jolokia:type=Config");
+        assertNull(index.find(name));
+        // Cached miss is invalidated when a pattern is added
+        index.add(new ObjectName("jolokia:type=*"), "jolokia");
+        assertEquals(index.find(name), "jolokia");
+        assertEquals(index.size(), 5);
+    }
+}
@@ -0,0 +1,437 @@
+package org.jolokia.jsr160;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.*;
+
+import javax.management.*;
+import javax.management.remote.*;
+
+/**
+ * Pool for keeping JSR-160 connectors connected between requests. Connectors are pooled
+ * per target, where a target is identified by its service URL and its environment (which
+ * includes the credentials). Idle connectors are closed after a certain timeout, broken
+ * connections are detected via a connection notification listener and thrown away.
+ * Expired idle connectors are closed by a background sweep as well, so that connections
+ * to targets which are not used anymore don't stay open.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class JmxConnectorPool implements JmxConnectorPoolMBean {
+
+    // Default maximum number of connections per target
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_TARGET = 5;
+
+    // Default idle timeout (ms)
+    public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000L;
+
+    // Default time (ms) to wait for a free connector if the limit is reached
+    public static final long DEFAULT_BORROW_TIMEOUT = 30 * 1000L;
+
+    // Minimal interval (ms) between two sweeps for idle connectors
+    private static final long MIN_EVICTION_INTERVAL = 100L;
+
+    private int maxConnectionsPerTarget;
+    private long idleTimeout;
+    private long borrowTimeout;
+
+    // Pooled connectors per target. All access is synchronized on this map.
+    private final Map<TargetKey,TargetPool> pools = new HashMap<TargetKey, TargetPool>();
+
+    // Connector handed out to a request, with their pooled wrapper
+    private final Map<JMXConnector,PooledConnector> activeConnectors =
+            new IdentityHashMap<JMXConnector, PooledConnector>();
+
+    // Statistics
+    private long hits, misses, evictions;
+
+    // Timer for closing idle connectors periodically
+    private final Timer evictionTimer;
+
+    /**
+     * Create a pool with default settings
+     */
+    public JmxConnectorPool() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_TARGET, DEFAULT_IDLE_TIMEOUT, DEFAULT_BORROW_TIMEOUT);
+    }
+
+    /**
+     * Create a pool
+     *
+     * @param pMaxConnectionsPerTarget maximum number of connectors (idle and active) per target
+     * @param pIdleTimeout time in ms after which an idle connector gets closed
+     * @param pBorrowTimeout time in ms to wait for a connector to become free when the limit is reached
+     */
+    public JmxConnectorPool(int pMaxConnectionsPerTarget, long pIdleTimeout, long pBorrowTimeout) {
+        maxConnectionsPerTarget = pMaxConnectionsPerTarget;
+        idleTimeout = pIdleTimeout;
+        borrowTimeout = pBorrowTimeout;
+        evictionTimer = new Timer("jolokia-jsr160-pool-eviction", true);
+        long interval = Math.max(idleTimeout / 2, MIN_EVICTION_INTERVAL);
+        evictionTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                evictIdleConnectors();
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Get a connected connector for the given target. Either an idle connector is
+     * taken out of the pool, or a new connector is created and connected. If the maximum
+     * number of connectors for this target is reached, wait until one gets released.
+     *
+     * @param pUrl service url of the target
+     * @param pKeyEnv environment used for identifying the target (user, password)
+     * @param pConnectEnv environment used for creating the connector
+     * @return a connected connector which must be given back via {@link #releaseConnector(JMXConnector, boolean)}
+     * @throws IOException if connecting fails or no connector gets free in time
+     */
+    public JMXConnector getConnector(JMXServiceURL pUrl, Map<String, Object> pKeyEnv, Map<String, Object> pConnectEnv)
+            throws IOException {
+        TargetKey key = new TargetKey(pUrl.toString(),pKeyEnv);
+        TargetPool pool;
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        try {
+            synchronized (pools) {
+                evictIdleConnectors(toClose);
+                pool = pools.get(key);
+                if (pool == null) {
+                    pool = new TargetPool();
+                    pools.put(key,pool);
+                }
+                long waitUntil = System.currentTimeMillis() + borrowTimeout;
+                while (true) {
+                    PooledConnector pooled = pool.takeIdle(toClose);
+                    if (pooled != null) {
+                        hits++;
+                        activeConnectors.put(pooled.connector,pooled);
+                        return pooled.connector;
+                    }
+                    if (pool.size() < maxConnectionsPerTarget) {
+                        // Reserve a slot, the connect itself happens outside the lock
+                        pool.reserved++;
+                        misses++;
+                        break;
+                    }
+                    long wait = waitUntil - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new IOException("No free JSR-160 connection to " + pUrl + " within " +
+                                              borrowTimeout + " ms (max. " + maxConnectionsPerTarget + " connections)");
+                    }
+                    pool.waiters++;
+                    try {
+                        pools.wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for a JSR-160 connection to " + pUrl);
+                    } finally {
+                        pool.waiters--;
+                    }
+                }
+            }
+        } finally {
+            closeQuietly(toClose);
+        }
+        return connect(pool, pUrl, pConnectEnv);
+    }
+
+    /**
+     * Give back a connector obtained by {@link #getConnector(JMXServiceURL, Map, Map)}.
+     *
+     * @param pConnector connector to release
+     * @param pBroken whether the connector should be thrown away since
+     *        it is suspected to be broken (e.g. after an {@link IOException})
+     */
+    public void releaseConnector(JMXConnector pConnector, boolean pBroken) {
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        synchronized (pools) {
+            PooledConnector pooled = activeConnectors.remove(pConnector);
+            if (pooled == null) {
+                // Not from us, close it
+                toClose.add(new PooledConnector(pConnector, null));
+            } else {
+                pooled.pool.active--;
+                if (pBroken || pooled.broken) {
+                    evictions++;
+                    toClose.add(pooled);
+                } else {
+                    pooled.lastUsed = System.currentTimeMillis();
+                    pooled.pool.idle.addFirst(pooled);
+                }
+                pools.notifyAll();
+            }
+            evictIdleConnectors(toClose);
+        }
+        closeQuietly(toClose);
+    }
+
+    /**
+     * Close all connectors, idle and active, and stop the background sweep. Must be called
+     * when the pool is not used anymore.
+     */
+    public void destroy() {
+        evictionTimer.cancel();
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        synchronized (pools) {
+            for (TargetPool pool : pools.values()) {
+                toClose.addAll(pool.idle);
+                pool.idle.clear();
+            }
+            toClose.addAll(activeConnectors.values());
+            activeConnectors.clear();
+            pools.clear();
+            pools.notifyAll();
+        }
+        closeQuietly(toClose);
+    }
+
+    // ==================================================================================
+    // MBean interface
+
+    public long getHits() {
+        synchronized (pools) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (pools) {
+            return misses;
+        }
+    }
+
+    public long getEvictions() {
+        synchronized (pools) {
+            return evictions;
+        }
+    }
+
+    public int getIdleConnections() {
+        synchronized (pools) {
+            int ret = 0;
+            for (TargetPool pool : pools.values()) {
+                ret += pool.idle.size();
+            }
+            return ret;
+        }
+    }
+
+    public int getActiveConnections() {
+        synchronized (pools) {
+            return activeConnectors.size();
+        }
+    }
+
+    public int getMaxConnectionsPerTarget() {
+        return maxConnectionsPerTarget;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void reset() {
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        synchronized (pools) {
+            for (TargetPool pool : pools.values()) {
+                toClose.addAll(pool.idle);
+                pool.idle.clear();
+            }
+            hits = misses = evictions = 0;
+        }
+        closeQuietly(toClose);
+    }
+
+    // ==================================================================================
+
+    // Create and connect a new connector for a slot reserved before
+    private JMXConnector connect(TargetPool pPool, JMXServiceURL pUrl, Map<String, Object> pEnv) throws IOException {
+        JMXConnector connector = null;
+        try {
+            connector = createConnector(pUrl, pEnv);
+            PooledConnector pooled = new PooledConnector(connector, pPool);
+            connector.addConnectionNotificationListener(pooled, null, null);
+            connector.connect();
+            synchronized (pools) {
+                pPool.reserved--;
+                pPool.active++;
+                activeConnectors.put(connector,pooled);
+            }
+            return connector;
+        } catch (IOException exp) {
+            freeReservedSlot(pPool, connector);
+            throw exp;
+        } catch (RuntimeException exp) {
+            freeReservedSlot(pPool, connector);
+            throw exp;
+        }
+    }
+
+    /**
+     * Create a new, not yet connected connector. Override this for creating connectors
+     * in a different way.
+     *
+     * @param pUrl service url of the target
+     * @param pEnv environment used for creating the connector
+     * @return the connector created
+     * @throws IOException if the connector cannot be created
+     */
+    protected JMXConnector createConnector(JMXServiceURL pUrl, Map<String, Object> pEnv) throws IOException {
+        return JMXConnectorFactory.newJMXConnector(pUrl, pEnv);
+    }
+
+    // Close all expired idle connectors, called periodically
+    void evictIdleConnectors() {
+        List<PooledConnector> toClose = new ArrayList<PooledConnector>();
+        synchronized (pools) {
+            evictIdleConnectors(toClose);
+        }
+        closeQuietly(toClose);
+    }
+
+    private void freeReservedSlot(TargetPool pPool, JMXConnector pConnector) {
+        synchronized (pools) {
+            pPool.reserved--;
+            pools.notifyAll();
+        }
+        if (pConnector != null) {
+            closeQuietly(Arrays.asList(new PooledConnector(pConnector, null)));
+        }
+    }
+
+    // Remove idle connectors which are expired. Must be called with the lock held,
+    // the connectors collected are closed outside the lock.
+    private void evictIdleConnectors(List<PooledConnector> pToClose) {
+        long limit = System.currentTimeMillis() - idleTimeout;
+        Iterator<TargetPool> it = pools.values().iterator();
+        while (it.hasNext()) {
+            TargetPool pool = it.next();
+            Iterator<PooledConnector> idleIt = pool.idle.iterator();
+            while (idleIt.hasNext()) {
+                PooledConnector pooled = idleIt.next();
+                if (pooled.broken || pooled.lastUsed < limit) {
+                    idleIt.remove();
+                    pToClose.add(pooled);
+                    evictions++;
+                }
+            }
+            // A pool can only be dropped if nobody uses it anymore, otherwise a second
+            // pool for the same target would be created and the limit would not hold
+            if (pool.size() == 0 && pool.waiters == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    private void closeQuietly(Collection<PooledConnector> pConnectors) {
+        for (PooledConnector pooled : pConnectors) {
+            try {
+                pooled.connector.removeConnectionNotificationListener(pooled);
+            } catch (ListenerNotFoundException e) {
+                // Ok, wasn't registered
+            }
+            try {
+                pooled.connector.close();
+            } catch (IOException e) {
+                // Ignore, we are throwing it away anyway
+            }
+        }
+    }
+
+    // ==================================================================================
+
+    // Key identifying a target
+    private static final class TargetKey {
+        private final String url;
+        private final Map<String,Object> env;
+
+        private TargetKey(String pUrl, Map<String, Object> pEnv) {
+            url = pUrl;
+            env = pEnv != null ? new HashMap<String, Object>(pEnv) : Collections.<String, Object>emptyMap();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TargetKey other = (TargetKey) o;
+            return url.equals(other.url) && env.equals(other.env);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * url.hashCode() + env.hashCode();
+        }
+    }
+
+    // Connectors for a single target
+    private final class TargetPool {
+        // Most recently used connectors first
+        private final LinkedList<PooledConnector> idle = new LinkedList<PooledConnector>();
+        private int active;
+        private int reserved;
+        // Threads waiting for a connector to become free
+        private int waiters;
+
+        private int size() {
+            return idle.size() + active + reserved;
+        }
+
+        // Take the most recently used, still healthy connector.
+        private PooledConnector takeIdle(List<PooledConnector> pToClose) {
+            while (!idle.isEmpty()) {
+                PooledConnector pooled = idle.removeFirst();
+                if (!pooled.broken) {
+                    active++;
+                    return pooled;
+                }
+                evictions++;
+                pToClose.add(pooled);
+            }
+            return null;
+        }
+    }
+
+    // Wrapper around a connector, which is marked as broken as soon as
+    // the connection gets closed or fails
+    private static final class PooledConnector implements NotificationListener {
+        private final JMXConnector connector;
+        private final TargetPool pool;
+        private volatile boolean broken;
+        private long lastUsed;
+
+        private PooledConnector(JMXConnector pConnector, TargetPool pPool) {
+            connector = pConnector;
+            pool = pPool;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        public void handleNotification(Notification pNotification, Object pHandback) {
+            String type = pNotification.getType();
+            if (JMXConnectionNotification.CLOSED.equals(type) || JMXConnectionNotification.FAILED.equals(type)) {
+                broken = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.jolokia.jsr160;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/**
+ * MBean interface for monitoring the {@link JmxConnectorPool}
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public interface JmxConnectorPoolMBean {
+
+    // Name under which the pool gets registered
+    String OBJECT_NAME = "jolokia:type=Jsr160ConnectorPool";
+
+    /**
+     * Number of requests which could reuse an already connected connector
+     *
+     * @return number of pool hits
+     */
+    long getHits();
+
+    /**
+     * Number of requests for which a new connector had to be created
+     *
+     * @return number of pool misses
+     */
+    long getMisses();
+
+    /**
+     * Number of connectors which were closed because they were idle for too long
+     * or because their connection was detected as broken.
+     *
+     * @return number of evictions
+     */
+    long getEvictions();
+
+    /**
+     * Number of connectors currently idle in the pool
+     *
+     * @return idle connectors
+     */
+    int getIdleConnections();
+
+    /**
+     * Number of connectors currently used by a request
+     *
+     * @return active connectors
+     */
+    int getActiveConnections();
+
+    /**
+     * Maximum number of connectors (active and idle) per target
+     *
+     * @return connection limit per target
+     */
+    int getMaxConnectionsPerTarget();
+
+    /**
+     * Time in milliseconds after which an idle connector gets closed
+     *
+     * @return idle timeout in milliseconds
+     */
+    long getIdleTimeout();
+
+    /**
+     * Close all idle connectors and reset the statistics
+     */
+    void reset();
+}
@@ -17,6 +17,8 @@ package org.jolokia.jsr160;
  */
 
 import org.jolokia.JmxRequest;
+import org.jolokia.backend.MBeanInfoCache;
+import org.jolokia.backend.MBeanInfoCacheMBean;
 import org.jolokia.backend.RequestDispatcher;
 import org.jolokia.config.Restrictor;
 import org.jolokia.converter.StringToObjectConverter;
@@ -27,10 +29,10 @@ import org.jolokia.handler.RequestHandlerManager;
 
 import javax.management.*;
 import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 import javax.naming.Context;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 
 /**
@@ -41,14 +43,52 @@ import java.util.*;
  */
 public class Jsr160RequestDispatcher implements RequestDispatcher {
 
+    // Name under which the MBeanInfo cache for remote targets is registered
+    private static final String CACHE_OBJECT_NAME = MBeanInfoCacheMBean.OBJECT_NAME + ",target=jsr160";
+
     private RequestHandlerManager requestHandlerManager;
 
+    // Pool for keeping connections to the targets open
+    private JmxConnectorPool connectorPool;
+
+    // Name under which the pool is registered as MBean (or null if not registered)
+    private ObjectName poolObjectName;
+
+    // Cache for MBeanInfos of the remote targets
+    private MBeanInfoCache mBeanInfoCache;
+
+    // Name under which the cache is registered as MBean (or null if not registered)
+    private ObjectName cacheObjectName;
+
     public Jsr160RequestDispatcher(ObjectToJsonConverter objectToJsonConverter,
                                    StringToObjectConverter stringToObjectConverter,
                                    ServerHandle serverInfo,
                                    Restrictor restrictor) {
+        this(objectToJsonConverter, stringToObjectConverter, serverInfo, restrictor, null);
+    }
+
+    /**
+     * Create a dispatcher whose monitoring MBeans are registered with the given qualifier
+     * appended to their names, so that several agents within the same JVM can coexist
+     *
+     * @param objectToJsonConverter converter for the results
+     * @param stringToObjectConverter converter for arguments
+     * @param serverInfo info about the local server
+     * @param restrictor restrictor for checking access
+     * @param pQualifier qualifier for the names of the monitoring MBeans (can be null)
+     */
+    public Jsr160RequestDispatcher(ObjectToJsonConverter objectToJsonConverter,
+                                   StringToObjectConverter stringToObjectConverter,
+                                   ServerHandle serverInfo,
+                                   Restrictor restrictor,
+                                   String pQualifier) {
+        mBeanInfoCache = createMBeanInfoCache();
         requestHandlerManager = new RequestHandlerManager(
-                objectToJsonConverter, stringToObjectConverter, serverInfo, restrictor);
+                objectToJsonConverter, stringToObjectConverter, serverInfo, restrictor, mBeanInfoCache);
+        connectorPool = createConnectorPool();
+        String suffix = pQualifier != null ? "," + pQualifier : "";
+        poolObjectName = registerMBean(connectorPool, JmxConnectorPoolMBean.OBJECT_NAME + suffix);
+        cacheObjectName = registerMBean(mBeanInfoCache, CACHE_OBJECT_NAME + suffix);
     }
 
     /**
@@ -68,6 +108,7 @@ public class Jsr160RequestDispatcher implements RequestDispatcher {
 
         JsonRequestHandler handler = requestHandlerManager.getRequestHandler(pJmxReq.getType());
         JMXConnector connector = getConnector(pJmxReq);
+        boolean broken = false;
         try {
             MBeanServerConnection connection = connector.getMBeanServerConnection();
             if (handler.handleAllServersAtOnce(pJmxReq)) {
@@ -76,12 +117,15 @@ public class Jsr160RequestDispatcher implements RequestDispatcher {
             } else {
                 return handler.handleRequest(connection,pJmxReq);
             }
+        } catch (IOException exp) {
+            // Don't reuse a connector after an I/O error
+            broken = true;
+            throw exp;
         } finally {
-            releaseConnector(connector);
+            connectorPool.releaseConnector(connector, broken);
         }
     }
 
-    // TODO: Add connector to a pool and release it on demand. For now, simply close it.
     private JMXConnector getConnector(JmxRequest pJmxReq) throws IOException {
         JmxRequest.TargetConfig targetConfig = pJmxReq.getTargetConfig();
         if (targetConfig == null) {
@@ -90,13 +134,67 @@ public class Jsr160RequestDispatcher implements RequestDispatcher {
         String urlS = targetConfig.getUrl();
         JMXServiceURL url = new JMXServiceURL(urlS);
         Map<String,Object> env = prepareEnv(targetConfig.getEnv());
-        JMXConnector ret = JMXConnectorFactory.newJMXConnector(url,env);
-        ret.connect();
-        return ret;
+        return connectorPool.getConnector(url, targetConfig.getEnv(), env);
     }
 
-    private void releaseConnector(JMXConnector pConnector) throws IOException {
-        pConnector.close();
+    /**
+     * Override this if the connector pool should be configured differently
+     *
+     * @return the pool used for caching connections to JSR-160 targets
+     */
+    protected JmxConnectorPool createConnectorPool() {
+        return new JmxConnectorPool();
+    }
+
+    /**
+     * Override this if the MBeanInfo cache should be configured differently, e.g. with
+     * another time to live for the MBeanInfos fetched from remote targets
+     *
+     * @return the cache used for the MBeanInfos of JSR-160 targets
+     */
+    protected MBeanInfoCache createMBeanInfoCache() {
+        return new MBeanInfoCache(MBeanInfoCache.DEFAULT_TTL);
+    }
+
+    // Register a monitoring MBean at the platform MBeanServer. If the name is already
+    // taken (e.g. by another agent without a distinct qualifier), the MBean is not
+    // registered. The foreign MBean is left untouched.
+    private ObjectName registerMBean(Object pMBean, String pName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(pName);
+            server.registerMBean(pMBean, name);
+            return name;
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by someone else
+            return null;
+        } catch (JMException e) {
+            // Monitoring is not essential, so we continue without it
+            return null;
+        }
+    }
+
+    /**
+     * Close all pooled connections and unregister the monitoring MBeans
+     *
+     * @throws JMException if unregistering fails
+     */
+    public void destroy() throws JMException {
+        connectorPool.destroy();
+        requestHandlerManager.destroy();
+        mBeanInfoCache.destroy();
+        poolObjectName = unregisterMBean(poolObjectName);
+        cacheObjectName = unregisterMBean(cacheObjectName);
+    }
+
+    private ObjectName unregisterMBean(ObjectName pName) throws JMException {
+        if (pName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(pName)) {
+                server.unregisterMBean(pName);
+            }
+        }
+        return null;
     }
 
     /**
@@ -0,0 +1,227 @@
+package org.jolokia.jsr160;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.*;
+
+import javax.management.*;
+import javax.management.remote.*;
+import javax.security.auth.Subject;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class JmxConnectorPoolTest {
+
+    private JMXServiceURL url;
+    private List<TestConnector> created;
+    private JmxConnectorPool pool;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:9999/jmxrmi");
+        created = Collections.synchronizedList(new ArrayList<TestConnector>());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (pool != null) {
+            pool.destroy();
+        }
+    }
+
+    @Test
+    public void hitsAndMisses() throws IOException {
+        pool = createPool(5, 60000L, 1000L);
+        JMXConnector c1 = pool.getConnector(url, env("roland"), null);
+        assertEquals(pool.getMisses(), 1);
+        assertEquals(pool.getActiveConnections(), 1);
+        pool.releaseConnector(c1, false);
+        assertEquals(pool.getIdleConnections(), 1);
+
+        JMXConnector c2 = pool.getConnector(url, env("roland"), null);
+        assertSame(c2, c1);
+        assertEquals(pool.getHits(), 1);
+
+        // Other credentials, other target
+        JMXConnector c3 = pool.getConnector(url, env("other"), null);
+        assertNotSame(c3, c1);
+        assertEquals(pool.getMisses(), 2);
+        pool.releaseConnector(c2, false);
+        pool.releaseConnector(c3, false);
+        assertEquals(pool.getIdleConnections(), 2);
+        assertEquals(created.size(), 2);
+    }
+
+    @Test
+    public void maxConnectionsPerTarget() throws Exception {
+        pool = createPool(1, 60000L, 200L);
+        final JMXConnector c1 = pool.getConnector(url, env("roland"), null);
+        long start = System.currentTimeMillis();
+        try {
+            pool.getConnector(url, env("roland"), null);
+            fail("Limit of one connection exceeded");
+        } catch (IOException exp) {
+            assertTrue(System.currentTimeMillis() - start >= 190);
+        }
+
+        // A connector released meanwhile gets handed over
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // Release anyway
+                }
+                pool.releaseConnector(c1, false);
+            }
+        };
+        releaser.start();
+        JMXConnector c2 = pool.getConnector(url, env("roland"), null);
+        releaser.join();
+        assertSame(c2, c1);
+        assertEquals(created.size(), 1);
+    }
+
+    @Test
+    public void idleEviction() throws Exception {
+        pool = createPool(5, 50L, 1000L);
+        JMXConnector c1 = pool.getConnector(url, env("roland"), null);
+        pool.releaseConnector(c1, false);
+        assertEquals(pool.getIdleConnections(), 1);
+
+        // Evicted by the background sweep without any further use of the pool
+        long until = System.currentTimeMillis() + 5000;
+        while (pool.getIdleConnections() > 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(20);
+        }
+        assertEquals(pool.getIdleConnections(), 0);
+        assertEquals(pool.getEvictions(), 1);
+        assertTrue(created.get(0).closed);
+    }
+
+    @Test
+    public void brokenConnection() throws IOException {
+        pool = createPool(5, 60000L, 1000L);
+        JMXConnector c1 = pool.getConnector(url, env("roland"), null);
+        created.get(0).sendNotification(JMXConnectionNotification.FAILED);
+        pool.releaseConnector(c1, false);
+        assertEquals(pool.getIdleConnections(), 0);
+        assertEquals(pool.getEvictions(), 1);
+        assertTrue(created.get(0).closed);
+
+        // An idle connector which breaks is not handed out anymore
+        JMXConnector c2 = pool.getConnector(url, env("roland"), null);
+        assertNotSame(c2, c1);
+        pool.releaseConnector(c2, false);
+        created.get(1).sendNotification(JMXConnectionNotification.CLOSED);
+        JMXConnector c3 = pool.getConnector(url, env("roland"), null);
+        assertNotSame(c3, c2);
+        assertEquals(pool.getMisses(), 3);
+        assertEquals(pool.getHits(), 0);
+    }
+
+    @Test
+    public void destroy() throws IOException {
+        pool = createPool(5, 60000L, 1000L);
+        JMXConnector c1 = pool.getConnector(url, env("roland"), null);
+        JMXConnector c2 = pool.getConnector(url, env("roland"), null);
+        pool.releaseConnector(c2, false);
+        pool.destroy();
+        assertTrue(created.get(0).closed);
+        assertTrue(created.get(1).closed);
+        pool.releaseConnector(c1, false);
+    }
+
+    // ==================================================================================
+
+    private JmxConnectorPool createPool(int pMax, long pIdleTimeout, long pBorrowTimeout) {
+        return new JmxConnectorPool(pMax, pIdleTimeout, pBorrowTimeout) {
+            @Override
+            protected JMXConnector createConnector(JMXServiceURL pUrl, Map<String, Object> pEnv) {
+                TestConnector connector = new TestConnector();
+                created.add(connector);
+                return connector;
+            }
+        };
+    }
+
+    // Environment as given in the target configuration of a request
+    private Map<String, Object> env(String pUser) {
+        Map<String, Object> env = new HashMap<String, Object>();
+        env.put("user", pUser);
+        env.put("password", "secret");
+        return env;
+    }
+
+    // Connector which only records its state
+    private static class TestConnector implements JMXConnector {
+        private NotificationListener listener;
+        private volatile boolean closed;
+        private long sequence;
+
+        public void connect() {
+        }
+
+        public void connect(Map<String, ?> env) {
+        }
+
+        public MBeanServerConnection getMBeanServerConnection() {
+            throw new UnsupportedOperationException();
+        }
+
+        public MBeanServerConnection getMBeanServerConnection(Subject delegationSubject) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            closed = true;
+        }
+
+        public void addConnectionNotificationListener(NotificationListener pListener, NotificationFilter filter, Object handback) {
+            listener = pListener;
+        }
+
+        public void removeConnectionNotificationListener(NotificationListener pListener) throws ListenerNotFoundException {
+            if (listener != pListener) {
+                throw new ListenerNotFoundException();
+            }
+            listener = null;
+        }
+
+        public void removeConnectionNotificationListener(NotificationListener pListener, NotificationFilter f, Object handback)
+                throws ListenerNotFoundException {
+            removeConnectionNotificationListener(pListener);
+        }
+
+        public String getConnectionId() {
+            return "test";
+        }
+
+        void sendNotification(String pType) {
+            listener.handleNotification(
+                    new JMXConnectionNotification(pType, this, "test", sequence++, null, null), null);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.jolokia.jsr160;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.*;
+
+import org.jolokia.converter.StringToObjectConverter;
+import org.jolokia.converter.json.ObjectToJsonConverter;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class Jsr160RequestDispatcherTest {
+
+    @Test
+    public void twoAgentsInOneJvm() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName first = new ObjectName(JmxConnectorPoolMBean.OBJECT_NAME + ",qualifier=first");
+        ObjectName second = new ObjectName(JmxConnectorPoolMBean.OBJECT_NAME + ",qualifier=second");
+
+        Jsr160RequestDispatcher d1 = createDispatcher("qualifier=first");
+        Jsr160RequestDispatcher d2 = createDispatcher("qualifier=second");
+        assertTrue(server.isRegistered(first));
+        assertTrue(server.isRegistered(second));
+
+        // An agent using the same name neither takes over the MBean nor removes it
+        createDispatcher("qualifier=first").destroy();
+        assertTrue(server.isRegistered(first));
+
+        // Undeploying one agent leaves the MBeans of the other
+        d2.destroy();
+        assertFalse(server.isRegistered(second));
+        assertTrue(server.isRegistered(first));
+        d1.destroy();
+        assertFalse(server.isRegistered(first));
+    }
+
+    private Jsr160RequestDispatcher createDispatcher(String pQualifier) {
+        StringToObjectConverter stringConverter = new StringToObjectConverter();
+        return new Jsr160RequestDispatcher(new ObjectToJsonConverter(stringConverter, null), stringConverter,
+                                           null, null, pQualifier);
+    }
+}
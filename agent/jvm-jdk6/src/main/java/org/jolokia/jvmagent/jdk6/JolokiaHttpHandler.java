@@ -1,8 +1,6 @@
 package org.jolokia.jvmagent.jdk6;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.Map;
@@ -17,10 +15,13 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.jolokia.backend.BackendManager;
 import org.jolokia.ConfigKey;
+import org.jolokia.http.BinaryResponseWriter;
+import org.jolokia.http.CompressingOutputStream;
 import org.jolokia.http.HttpRequestHandler;
 import org.jolokia.LogHandler;
 import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
 
 /*
  *  Copyright 2009-2010 Roland Huss
@@ -59,14 +60,23 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
     // Content type matching
     private Pattern contentTypePattern = Pattern.compile(".*;\\s*charset=([^;,]+)\\s*.*");
 
+    // Whether to stream the answer with chunked encoding
+    private boolean streaming;
+
+    // Compression level (0 for no compression) and minimal size of compressed answers
+    private int compressionLevel, compressionThreshold;
+
 
     public JolokiaHttpHandler(Map<ConfigKey,String> pConfig) {
         context = pConfig.get(ConfigKey.AGENT_CONTEXT);
         if (!context.endsWith("/")) {
             context += "/";
         }
+        streaming = Boolean.valueOf(ConfigKey.STREAMING.getValue(pConfig));
+        compressionLevel = Integer.parseInt(ConfigKey.COMPRESSION_LEVEL.getValue(pConfig));
+        compressionThreshold = Integer.parseInt(ConfigKey.COMPRESSION_THRESHOLD.getValue(pConfig));
         backendManager = new BackendManager(pConfig,this);
-        requestHandler = new HttpRequestHandler(backendManager,this);
+        requestHandler = new HttpRequestHandler(backendManager,this,pConfig);
     }
 
     @Override
@@ -78,7 +88,7 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
         try {
             // Check access policy
             InetSocketAddress address = pExchange.getRemoteAddress();
-            requestHandler.checkClientIPAccess(address.getHostName(),address.getAddress().getHostAddress());
+            requestHandler.checkClientIPAccess(address.getAddress().getHostAddress());
             String method = pExchange.getRequestMethod();
 
             // Dispatch for the proper HTTP request method
@@ -97,7 +107,7 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
                     exp instanceof RuntimeMBeanException ? ((RuntimeMBeanException) exp).getTargetException() : exp);
             json = error;
         } finally {
-            sendResponse(pExchange,parsedUri, json.toJSONString());
+            sendResponse(pExchange,parsedUri, json);
         }
     }
 
@@ -120,17 +130,56 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
     }
 
 
-    private void sendResponse(HttpExchange pExchange, ParsedUri pParsedUri, String pJson) throws IOException {
+    private void sendResponse(HttpExchange pExchange, ParsedUri pParsedUri, JSONAware pJson) throws IOException {
         OutputStream out = null;
         String callback = pParsedUri.getParameter(ConfigKey.CALLBACK.getKeyValue());
         try {
             Headers headers = pExchange.getResponseHeaders();
-            headers.set("Content-Type",(callback == null ? "text/plain" : "text/javascript") + "; charset=utf-8");
-            String content = callback == null ? pJson : callback + "(" + pJson + ");";
-            byte[] response = content.getBytes();
-            pExchange.sendResponseHeaders(200,response.length);
-            out = pExchange.getResponseBody();
-            out.write(response);
+            boolean binary = callback == null &&
+                    BinaryResponseWriter.isRequested(pExchange.getRequestHeaders().getFirst("Accept"),
+                                                     pParsedUri.getParameter(ConfigKey.RESPONSE_FORMAT.getKeyValue()));
+            if (binary) {
+                headers.set("Content-Type",BinaryResponseWriter.MIME_TYPE);
+            } else {
+                headers.set("Content-Type",(callback == null ? "text/plain" : "text/javascript") + "; charset=utf-8");
+            }
+            String encoding = getContentEncoding(pExchange, headers);
+            if (encoding != null) {
+                // The answer is streamed into the compressor, which starts the response by itself
+                out = new ExchangeOutputStream(pExchange, headers, encoding);
+                writeResponse(out, binary, callback, pJson);
+            } else if (binary && streaming) {
+                pExchange.sendResponseHeaders(200,0);
+                out = pExchange.getResponseBody();
+                BinaryResponseWriter.write(pJson,out);
+            } else if (binary) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                BinaryResponseWriter.write(pJson,buffer);
+                pExchange.sendResponseHeaders(200,buffer.size());
+                out = pExchange.getResponseBody();
+                buffer.writeTo(out);
+            } else if (streaming && pJson instanceof JSONStreamAware) {
+                // Chunked encoding, the answer is serialized directly into the stream
+                pExchange.sendResponseHeaders(200,0);
+                out = pExchange.getResponseBody();
+                Writer writer = new OutputStreamWriter(out,"UTF-8");
+                if (callback != null) {
+                    writer.write(callback);
+                    writer.write("(");
+                }
+                ((JSONStreamAware) pJson).writeJSONString(writer);
+                if (callback != null) {
+                    writer.write(");");
+                }
+                writer.flush();
+            } else {
+                String json = pJson.toJSONString();
+                String content = callback == null ? json : callback + "(" + json + ");";
+                byte[] response = content.getBytes("UTF-8");
+                pExchange.sendResponseHeaders(200,response.length);
+                out = pExchange.getResponseBody();
+                out.write(response);
+            }
         } finally {
             if (out != null) {
                 // Always close in order to finish the request.
@@ -140,6 +189,59 @@ public class JolokiaHttpHandler implements HttpHandler, LogHandler {
         }
     }
 
+    // Content encoding for compressing the answer or null if it should not be compressed
+    private String getContentEncoding(HttpExchange pExchange, Headers pResponseHeaders) {
+        if (compressionLevel <= 0) {
+            return null;
+        }
+        pResponseHeaders.set("Vary","Accept-Encoding");
+        return CompressingOutputStream.selectEncoding(pExchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    private void writeResponse(OutputStream pOut, boolean pBinary, String pCallback, JSONAware pJson) throws IOException {
+        if (pBinary) {
+            BinaryResponseWriter.write(pJson,pOut);
+            return;
+        }
+        Writer writer = new OutputStreamWriter(pOut,"UTF-8");
+        if (pCallback != null) {
+            writer.write(pCallback);
+            writer.write("(");
+        }
+        if (pJson instanceof JSONStreamAware) {
+            ((JSONStreamAware) pJson).writeJSONString(writer);
+        } else {
+            writer.write(pJson.toJSONString());
+        }
+        if (pCallback != null) {
+            writer.write(");");
+        }
+        writer.flush();
+    }
+
+    // Stream sending the response headers when the content is known to be compressed or not
+    private final class ExchangeOutputStream extends CompressingOutputStream {
+
+        private final HttpExchange exchange;
+        private final Headers headers;
+
+        private ExchangeOutputStream(HttpExchange pExchange, Headers pHeaders, String pEncoding) {
+            super(pEncoding, compressionThreshold, compressionLevel);
+            exchange = pExchange;
+            headers = pHeaders;
+        }
+
+        @Override
+        protected OutputStream startResponse(String pContentEncoding, int pLength) throws IOException {
+            if (pContentEncoding != null) {
+                headers.set("Content-Encoding",pContentEncoding);
+            }
+            // 0 is for chunked encoding, -1 for no content at all
+            exchange.sendResponseHeaders(200,pLength < 0 ? 0 : (pLength == 0 ? -1 : pLength));
+            return exchange.getResponseBody();
+        }
+    }
+
     @Override
     @SuppressWarnings("PMD.SystemPrintln")
     public void debug(String message) {
@@ -29,6 +29,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import static org.easymock.EasyMock.*;
 import static org.testng.Assert.assertEquals;
@@ -53,6 +54,7 @@ public class JolokiaHttpHandlerTest {
 
         // Simple GET method
         expect(exchange.getRequestMethod()).andReturn("GET");
+        expect(exchange.getRequestHeaders()).andReturn(new Headers()).anyTimes();
 
 
         Headers header = new Headers();
@@ -76,7 +78,7 @@ public class JolokiaHttpHandlerTest {
 
         Headers reqHeaders = new Headers();
         reqHeaders.add("Content-Type","text/plain; charset=UTF-8");
-        expect(exchange.getRequestHeaders()).andReturn(reqHeaders);
+        expect(exchange.getRequestHeaders()).andReturn(reqHeaders).anyTimes();
         String req = "{\"timestamp\":1287914327,\"status\":200," +
                 "\"request\":{\"mbean\":\"java.lang:type=Memory\",\"attribute\":\"HeapMemoryUsage\",\"type\":\"read\"}," +
                 "\"value\":{\"max\":\"129957888\",\"committed\":\"85000192\",\"init\":\"0\",\"used\":\"6813824\"}}";
@@ -94,6 +96,27 @@ public class JolokiaHttpHandlerTest {
         assertTrue(result.startsWith("data({"));
     }
 
+    @Test
+    public void testCompressedGet() throws IOException, URISyntaxException {
+        HttpExchange exchange = prepareExchange("http://localhost:8080/jolokia/read/java.lang:type=Runtime/SystemProperties");
+
+        expect(exchange.getRequestMethod()).andReturn("GET");
+        Headers reqHeaders = new Headers();
+        reqHeaders.add("Accept-Encoding","gzip, deflate");
+        expect(exchange.getRequestHeaders()).andReturn(reqHeaders).anyTimes();
+
+        Headers header = new Headers();
+        ByteArrayOutputStream out = prepareResponse(handler, exchange, header);
+
+        handler.handle(exchange);
+
+        assertEquals(header.getFirst("content-encoding"),"gzip");
+        InputStream is = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        String result = new BufferedReader(new InputStreamReader(is,"utf-8")).readLine();
+        assertTrue(result.startsWith("{"));
+        assertTrue(result.contains("java.version"));
+    }
+
     private HttpExchange prepareExchange(String pUri) throws URISyntaxException {
         HttpExchange exchange = EasyMock.createMock(HttpExchange.class);
         URI uri = new URI(pUri);
@@ -69,7 +69,19 @@ public class J4pClient  {
      * @param pHttpClient HTTP client to use for the connecting to the agent
      */
     public J4pClient(String pJ4pServerUrl, HttpClient pHttpClient) {
-        requestHandler = new J4pRequestHandler(pJ4pServerUrl);
+        this(pJ4pServerUrl,pHttpClient,false);
+    }
+
+    /**
+     * Constructor using a given HttpClient, which optionally asks the agent for
+     * answers in the compact binary format instead of JSON.
+     *
+     * @param pJ4pServerUrl the agent URL for how to contact the server.
+     * @param pHttpClient HTTP client to use for the connecting to the agent
+     * @param pBinaryResponses whether to use the binary format for the answers
+     */
+    public J4pClient(String pJ4pServerUrl, HttpClient pHttpClient, boolean pBinaryResponses) {
+        requestHandler = new J4pRequestHandler(pJ4pServerUrl,pBinaryResponses);
         httpClient = pHttpClient;
     }
 
@@ -323,4 +335,9 @@ public class J4pClient  {
     public static J4pClientBuilder socketBufferSize(int pSize) {
         return new J4pClientBuilder().socketBufferSize(pSize);
     }
+
+    /** See {@link org.jolokia.client.J4pClientBuilder#binaryResponses(boolean)} */
+    public static J4pClientBuilder binaryResponses(boolean pUse) {
+        return new J4pClientBuilder().binaryResponses(pUse);
+    }
 }
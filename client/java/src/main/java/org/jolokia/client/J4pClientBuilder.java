@@ -51,6 +51,9 @@ public class J4pClientBuilder {
     // Connection URL to use
     private String url;
 
+    // whether to ask for answers in the binary format
+    private boolean binaryResponses;
+
     /**
      * Package access constructor, user static method on J4pClient for creating
      * the
@@ -192,6 +195,19 @@ public class J4pClientBuilder {
         return this;
     }
 
+    /**
+     * Asks the agent for answers in a compact binary format instead of JSON. This reduces the
+     * size of the answers and the time needed for parsing them, especially for large bulk
+     * requests. Agents which don't know about the binary format still answer with JSON, which
+     * is understood as well.
+     *
+     * @param pUse whether to use the binary format
+     */
+    public final J4pClientBuilder binaryResponses(boolean pUse) {
+        binaryResponses = pUse;
+        return this;
+    }
+
     // =====================================================================================
 
     /**
@@ -202,7 +218,7 @@ public class J4pClientBuilder {
     public J4pClient build() {
         ClientConnectionManager cm = createClientConnectionManager();
         HttpClient httpClient = new DefaultHttpClient(cm, getHttpParams());
-        return new J4pClient(url,httpClient);
+        return new J4pClient(url,httpClient,binaryResponses);
     }
 
     ClientConnectionManager createClientConnectionManager() {
@@ -0,0 +1,185 @@
+package org.jolokia.client.request;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.simple.*;
+
+/**
+ * Decoder for the binary response format of the agent. The decoded answer consists of the
+ * same objects as an answer parsed from JSON, i.e. {@link JSONObject}s, {@link JSONArray}s,
+ * Strings, Booleans, Longs and Doubles. Numbers which the agent sends with arbitrary
+ * precision are decoded as {@link BigInteger}s and {@link BigDecimal}s.
+ *
+ * See <code>org.jolokia.http.BinaryResponseWriter</code> in the agent for a description of the format.
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+class BinaryResponseDecoder {
+
+    /**
+     * Content type of the binary format
+     */
+    static final String MIME_TYPE = "application/x-jolokia-binary";
+
+    private static final int VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte STRING_DEF = 6;
+    private static final byte STRING_REF = 7;
+    private static final byte MAP = 8;
+    private static final byte ARRAY = 9;
+    private static final byte BIG_INTEGER = 10;
+    private static final byte BIG_DECIMAL = 11;
+
+    private final DataInputStream in;
+    private final List<String> dictionary = new ArrayList<String>();
+
+    /**
+     * Decode a complete answer
+     *
+     * @param pIn stream to read from
+     * @return the decoded answer, either a JSONObject or a JSONArray
+     * @throws IOException if reading fails or the content is not valid
+     */
+    static JSONAware decode(InputStream pIn) throws IOException {
+        BinaryResponseDecoder decoder = new BinaryResponseDecoder(new BufferedInputStream(pIn, 8192));
+        decoder.readHeader();
+        Object ret = decoder.readValue();
+        if (!(ret instanceof JSONAware)) {
+            throw new IOException("Invalid binary answer (expected a map or an array but got " + ret + ")");
+        }
+        return (JSONAware) ret;
+    }
+
+    private BinaryResponseDecoder(InputStream pIn) {
+        in = new DataInputStream(pIn);
+    }
+
+    private void readHeader() throws IOException {
+        if (in.readByte() != 'J' || in.readByte() != 'B') {
+            throw new IOException("Invalid binary answer (wrong magic bytes)");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of the binary format");
+        }
+    }
+
+    private Object readValue() throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case LONG:
+                long value = readVarLong();
+                return (value >>> 1) ^ -(value & 1);
+            case DOUBLE:
+                return in.readDouble();
+            case MAP:
+                return readMap();
+            case ARRAY:
+                return readArray();
+            case BIG_INTEGER:
+                return new BigInteger(readDecimal());
+            case BIG_DECIMAL:
+                return new BigDecimal(readDecimal());
+            default:
+                return readString(tag);
+        }
+    }
+
+    private JSONObject readMap() throws IOException {
+        int size = readSize();
+        JSONObject ret = new JSONObject();
+        for (int i = 0; i < size; i++) {
+            String key = readString(in.readByte());
+            ret.put(key, readValue());
+        }
+        return ret;
+    }
+
+    private JSONArray readArray() throws IOException {
+        int size = readSize();
+        JSONArray ret = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            ret.add(readValue());
+        }
+        return ret;
+    }
+
+    private String readString(byte pTag) throws IOException {
+        if (pTag == STRING_REF) {
+            long ref = readVarLong();
+            if (ref < 0 || ref >= dictionary.size()) {
+                throw new IOException("Invalid string reference " + ref + " in binary answer");
+            }
+            return dictionary.get((int) ref);
+        }
+        if (pTag != STRING && pTag != STRING_DEF) {
+            throw new IOException("Invalid tag " + pTag + " in binary answer");
+        }
+        byte[] bytes = new byte[readSize()];
+        in.readFully(bytes);
+        String ret = new String(bytes, "UTF-8");
+        if (pTag == STRING_DEF) {
+            dictionary.add(ret);
+        }
+        return ret;
+    }
+
+    private String readDecimal() throws IOException {
+        byte[] bytes = new byte[readSize()];
+        in.readFully(bytes);
+        return new String(bytes, "US-ASCII");
+    }
+
+    private int readSize() throws IOException {
+        long size = readVarLong();
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Invalid size " + size + " in binary answer");
+        }
+        return (int) size;
+    }
+
+    private long readVarLong() throws IOException {
+        long ret = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            ret |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return ret;
+            }
+        }
+        throw new IOException("Invalid number in binary answer");
+    }
+}
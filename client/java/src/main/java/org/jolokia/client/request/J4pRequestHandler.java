@@ -22,10 +22,13 @@ import java.nio.charset.Charset;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.http.*;
 import org.apache.http.client.methods.*;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.json.simple.*;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -42,12 +45,28 @@ public class J4pRequestHandler {
     // j4p agent URL for the agent server
     private String j4pServerUrl;
 
+    // Whether to ask the agent for answers in the binary format
+    private boolean binaryResponses;
+
     // Escape patterns
     private static final Pattern SLASH_PATTERN = Pattern.compile("/+");
     private static final Pattern ESCAPED_SLASH_PATTERN = Pattern.compile("%2F");
 
     public J4pRequestHandler(String pJ4pServerUrl) {
+        this(pJ4pServerUrl,false);
+    }
+
+    /**
+     * Request handler which can ask for the compact binary format instead of JSON
+     * for the answers. Both formats are understood by {@link #extractJsonResponse(HttpResponse)}
+     * anyway, so that agents not supporting the binary format can still be used.
+     *
+     * @param pJ4pServerUrl agent URL
+     * @param pBinaryResponses whether to ask for answers in the binary format
+     */
+    public J4pRequestHandler(String pJ4pServerUrl, boolean pBinaryResponses) {
         j4pServerUrl = pJ4pServerUrl;
+        binaryResponses = pBinaryResponses;
     }
 
     /**
@@ -76,7 +95,7 @@ public class J4pRequestHandler {
                     requestPath.append(escape(p));
                 }
                 // TODO: Option handling, special escaping
-                return new HttpGet(j4pServerUrl + "/" + requestPath.toString());
+                return accept(new HttpGet(j4pServerUrl + "/" + requestPath.toString()));
             }
         }
 
@@ -86,7 +105,7 @@ public class J4pRequestHandler {
         JSONObject requestContent = pRequest.toJson();
         HttpPost postReq = new HttpPost(j4pServerUrl);
         postReq.setEntity(new StringEntity(requestContent.toJSONString(),"utf-8"));
-        return postReq;
+        return accept(postReq);
     }
 
     /**
@@ -103,7 +122,7 @@ public class J4pRequestHandler {
             bulkRequest.add(requestContent);
         }
         postReq.setEntity(new StringEntity(bulkRequest.toJSONString(),"utf-8"));
-        return postReq;
+        return accept(postReq);
     }
 
 
@@ -120,12 +139,17 @@ public class J4pRequestHandler {
     public JSONAware extractJsonResponse(HttpResponse pHttpResponse) throws IOException, ParseException {
         HttpEntity entity = pHttpResponse.getEntity();
         try {
+            InputStream content = getContent(entity);
+            Header contentType = entity.getContentType();
+            if (contentType != null && contentType.getValue().startsWith(BinaryResponseDecoder.MIME_TYPE)) {
+                return BinaryResponseDecoder.decode(content);
+            }
             JSONParser parser = new JSONParser();
-            Header contentEncoding = entity.getContentEncoding();
-            if (contentEncoding != null) {
-                return (JSONAware) parser.parse(new InputStreamReader(entity.getContent(), Charset.forName(contentEncoding.getValue())));
+            String charset = EntityUtils.getContentCharSet(entity);
+            if (charset != null) {
+                return (JSONAware) parser.parse(new InputStreamReader(content, Charset.forName(charset)));
             } else {
-                return (JSONAware) parser.parse(new InputStreamReader(entity.getContent()));
+                return (JSONAware) parser.parse(new InputStreamReader(content));
             }
         } finally {
             if (entity != null) {
@@ -147,6 +171,30 @@ public class J4pRequestHandler {
         return pRequest.<R>createResponse(pJsonResponse);
     }
 
+    // Get the content of an answer, which is decompressed if the agent has compressed it
+    private InputStream getContent(HttpEntity pEntity) throws IOException {
+        InputStream content = pEntity.getContent();
+        Header contentEncoding = pEntity.getContentEncoding();
+        if (contentEncoding != null) {
+            String encoding = contentEncoding.getValue().trim();
+            if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+                return new GZIPInputStream(content);
+            } else if ("deflate".equalsIgnoreCase(encoding)) {
+                return new InflaterInputStream(content);
+            }
+        }
+        return content;
+    }
+
+    // Add the accept headers for compressed answers and for the binary format if requested
+    private HttpUriRequest accept(HttpUriRequest pRequest) {
+        pRequest.setHeader("Accept-Encoding", "gzip, deflate");
+        if (binaryResponses) {
+            pRequest.setHeader("Accept", BinaryResponseDecoder.MIME_TYPE + ", text/plain;q=0.5");
+        }
+        return pRequest;
+    }
+
     // Escape a part for usage as part of URI path
     private String escape(String pPart) throws UnsupportedEncodingException {
         Matcher matcher = SLASH_PATTERN.matcher(pPart);
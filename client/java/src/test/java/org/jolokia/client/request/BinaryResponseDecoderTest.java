@@ -0,0 +1,118 @@
+package org.jolokia.client.request;
+
+/*
+ *  Copyright 2009-2010 Roland Huss
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.jolokia.http.BinaryResponseWriter;
+import org.json.simple.*;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Round trip tests for the binary answer format
+ *
+ * @author roland
+ * @since Oct 18, 2010
+ */
+public class BinaryResponseDecoderTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        JSONArray bulk = new JSONArray();
+        for (int i = 0; i < 3; i++) {
+            JSONObject request = new JSONObject();
+            request.put("type", "read");
+            request.put("mbean", "java.lang:type=Memory");
+            request.put("attribute", "HeapMemoryUsage");
+            JSONObject value = new JSONObject();
+            value.put("used", (long) i * 1000000000000L);
+            value.put("ratio", 0.5 * i);
+            value.put("negative", -i);
+            value.put("flag", i % 2 == 0);
+            value.put("none", null);
+            JSONObject resp = new JSONObject();
+            resp.put("request", request);
+            resp.put("value", value);
+            resp.put("status", 200);
+            bulk.add(resp);
+        }
+
+        byte[] encoded = encode(bulk);
+        JSONAware decoded = BinaryResponseDecoder.decode(new ByteArrayInputStream(encoded));
+        assertTrue(decoded instanceof JSONArray);
+        JSONArray list = (JSONArray) decoded;
+        assertEquals(list.size(), 3);
+        JSONObject resp = (JSONObject) list.get(2);
+        assertEquals(resp.get("status"), 200L);
+        assertEquals(((JSONObject) resp.get("request")).get("mbean"), "java.lang:type=Memory");
+        JSONObject value = (JSONObject) resp.get("value");
+        assertEquals(value.get("used"), 2000000000000L);
+        assertEquals(value.get("ratio"), 1.0);
+        assertEquals(value.get("negative"), -2L);
+        assertEquals(value.get("flag"), Boolean.TRUE);
+        assertTrue(value.containsKey("none"));
+        assertNull(value.get("none"));
+
+        // Repeated keys are sent only once, so it's smaller than the JSON text
+        assertTrue(encoded.length < bulk.toJSONString().getBytes("UTF-8").length);
+    }
+
+    @Test
+    public void longStrings() throws IOException {
+        StringBuilder trace = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            trace.append("at org.jolokia.Test.method(Test.java:").append(i).append(")\n");
+        }
+        JSONObject error = new JSONObject();
+        error.put("status", 500);
+        error.put("stacktrace", trace.toString());
+        error.put("error", "\u00e4rger");
+        JSONObject decoded = (JSONObject) BinaryResponseDecoder.decode(new ByteArrayInputStream(encode(error)));
+        assertEquals(decoded.get("stacktrace"), trace.toString());
+        assertEquals(decoded.get("error"), "\u00e4rger");
+    }
+
+    @Test
+    public void bigNumbers() throws IOException {
+        BigInteger bigInt = new BigInteger("123456789012345678901234567890");
+        BigDecimal bigDec = new BigDecimal("-0.1234567890123456789012345678901");
+        JSONObject value = new JSONObject();
+        value.put("bigInt", bigInt);
+        value.put("bigDec", bigDec);
+        value.put("scaled", new BigDecimal("1E+400"));
+        JSONObject decoded = (JSONObject) BinaryResponseDecoder.decode(new ByteArrayInputStream(encode(value)));
+        // No digits lost on the way
+        assertEquals(decoded.get("bigInt"), bigInt);
+        assertEquals(decoded.get("bigDec"), bigDec);
+        assertEquals(decoded.get("scaled"), new BigDecimal("1E+400"));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void invalidMagic() throws IOException {
+        BinaryResponseDecoder.decode(new ByteArrayInputStream("{\"status\":200}".getBytes("UTF-8")));
+    }
+
+    private byte[] encode(JSONAware pJson) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResponseWriter.write(pJson, out);
+        return out.toByteArray();
+    }
+}